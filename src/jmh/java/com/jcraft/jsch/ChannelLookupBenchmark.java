@@ -0,0 +1,59 @@
+package com.jcraft.jsch;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Measures {@link Session#getChannelById(int)}, which the session thread calls for every
+ * SSH_MSG_CHANNEL_DATA, WINDOW_ADJUST, EOF and CLOSE it receives, with channels looked up in random
+ * order.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ChannelLookupBenchmark {
+
+  @Param({"1", "100", "10000"})
+  public int channels;
+
+  private Session session;
+  private int[] ids;
+  private int next;
+
+  @Setup(Level.Trial)
+  public void setUp() throws Exception {
+    session = new Session(new JSch(), "bench", "localhost", 22);
+    int[] open = new int[channels];
+    for (int i = 0; i < channels; i++) {
+      Channel channel = new ChannelSession();
+      session.channels.put(channel);
+      open[i] = channel.id;
+    }
+    Random random = new Random(0);
+    ids = new int[4096];
+    for (int i = 0; i < ids.length; i++) {
+      ids[i] = open[random.nextInt(channels)];
+    }
+  }
+
+  @Benchmark
+  public Channel getChannelById() {
+    int id = ids[next++ & (ids.length - 1)];
+    return session.getChannelById(id);
+  }
+}
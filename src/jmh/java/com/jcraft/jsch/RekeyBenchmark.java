@@ -0,0 +1,104 @@
+package com.jcraft.jsch;
+
+import java.io.OutputStream;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Measures how long a writer stays blocked after a key exchange has completed: before each
+ * invocation {@link Session#rekey()} sends SSH_MSG_KEXINIT and a second thread starts writing a
+ * SSH_MSG_CHANNEL_DATA packet, which has to wait for the key exchange. The benchmark then completes
+ * the key exchange, as receiving SSH_MSG_NEWKEYS does, and waits until the packet has been sent.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.SampleTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class RekeyBenchmark {
+
+  private Session session;
+  private Thread writer;
+  private final AtomicInteger requested = new AtomicInteger();
+  private final AtomicInteger written = new AtomicInteger();
+
+  @Setup(Level.Trial)
+  public void setUp() throws Exception {
+    Session.random = new com.jcraft.jsch.jce.Random();
+    Packet.setRandom(Session.random);
+    session = new Session(new JSch(), "bench", "localhost", 22);
+    session.io = new IO();
+    session.io.setOutputStream(new OutputStream() {
+      @Override
+      public void write(int b) {}
+
+      @Override
+      public void write(byte[] b, int off, int len) {}
+    });
+
+    writer = new Thread(this::write, "RekeyBenchmark writer");
+    writer.setDaemon(true);
+    writer.start();
+  }
+
+  @TearDown(Level.Trial)
+  public void tearDown() throws Exception {
+    writer.interrupt();
+    writer.join();
+  }
+
+  @Setup(Level.Invocation)
+  public void startKeyExchange() throws Exception {
+    session.rekey();
+    requested.incrementAndGet();
+    // the writer is parked once it waits for the key exchange
+    while (writer.getState() == Thread.State.RUNNABLE) {
+      Thread.yield();
+    }
+  }
+
+  @Benchmark
+  public int completeKeyExchange() {
+    int expected = requested.get();
+    session.setInKex(false);
+    while (written.get() != expected) {
+      Thread.yield();
+    }
+    return expected;
+  }
+
+  private void write() {
+    Packet packet = new Packet(new Buffer(256));
+    byte[] data = new byte[32];
+    int done = 0;
+    while (!Thread.currentThread().isInterrupted()) {
+      if (requested.get() == done) {
+        Thread.yield();
+        continue;
+      }
+      packet.reset();
+      packet.buffer.putByte((byte) Session.SSH_MSG_CHANNEL_DATA);
+      packet.buffer.putInt(0);
+      packet.buffer.putString(data);
+      try {
+        session.write(packet);
+      } catch (Exception e) {
+        throw new RuntimeException(e);
+      }
+      written.set(++done);
+    }
+  }
+}
@@ -0,0 +1,223 @@
+package com.jcraft.jsch;
+
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Measures the bulk transfer packet path: SSH_MSG_CHANNEL_DATA packets are encoded by one
+ * {@link Session} through {@link Session#write(Packet)} and decoded by a second one through
+ * {@link Session#read(Buffer)}, with both sides connected by an in-memory {@link IO}.
+ *
+ * <p>
+ * Both sessions derive their keys from the same constant hash output, so the client to server keys
+ * of the writer equal the server to client keys of the reader and the packets can be decrypted
+ * again without a real key exchange.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class TransportBenchmark {
+
+  @Param({"aes128-ctr/hmac-sha2-256", "aes128-ctr/hmac-sha2-256-etm@openssh.com",
+      "aes128-ctr/hmac-sha2-512", "aes128-ctr/hmac-sha2-512-etm@openssh.com",
+      "aes128-ctr/hmac-sha1", "aes128-ctr/hmac-sha1-etm@openssh.com", "aes192-ctr/hmac-sha2-256",
+      "aes192-ctr/hmac-sha2-256-etm@openssh.com", "aes256-ctr/hmac-sha2-256",
+      "aes256-ctr/hmac-sha2-256-etm@openssh.com", "aes256-ctr/hmac-sha2-512",
+      "aes256-ctr/hmac-sha2-512-etm@openssh.com", "aes128-gcm@openssh.com/none",
+      "aes256-gcm@openssh.com/none", "chacha20-poly1305@openssh.com/none"})
+  public String algorithms;
+
+  @Param({"1024", "32768"})
+  public int payloadSize;
+
+  private Session writer;
+  private Session reader;
+  private Loopback loopback;
+
+  private Buffer wbuf;
+  private Packet wpacket;
+  private Buffer rbuf;
+  private byte[] payload;
+
+  @Setup(Level.Trial)
+  public void setUp() throws Exception {
+    Packet.setRandom(new com.jcraft.jsch.jce.Random());
+
+    String[] pair = algorithms.split("/", 2);
+    loopback = new Loopback();
+    writer = newSession(pair[0], pair[1]);
+    reader = newSession(pair[0], pair[1]);
+    writer.io.setOutputStream(loopback.out);
+    reader.io.setInputStream(loopback.in);
+
+    payload = new byte[payloadSize];
+    Arrays.fill(payload, (byte) 'x');
+    wbuf = new Buffer(payloadSize + 128);
+    wpacket = new Packet(wbuf);
+    rbuf = new Buffer(payloadSize + 128);
+  }
+
+  /** Encodes and writes a packet without reading it back. */
+  @Benchmark
+  public int encode() throws Exception {
+    fillChannelData();
+    writer.write(wpacket);
+    int written = loopback.available();
+    loopback.clear();
+    return written;
+  }
+
+  /** Encodes and writes a packet, then reads and decodes it on the other side. */
+  @Benchmark
+  public Buffer roundTrip() throws Exception {
+    fillChannelData();
+    writer.write(wpacket);
+    return reader.read(rbuf);
+  }
+
+  private void fillChannelData() {
+    wpacket.reset();
+    wbuf.putByte((byte) Session.SSH_MSG_CHANNEL_DATA);
+    wbuf.putInt(0);
+    wbuf.putString(payload);
+  }
+
+  private static Session newSession(String cipher, String mac) throws Exception {
+    Session session = new Session(new JSch(), "bench", "localhost", 22);
+    String[] guess = new String[KeyExchange.PROPOSAL_MAX];
+    Arrays.fill(guess, "");
+    guess[KeyExchange.PROPOSAL_ENC_ALGS_CTOS] = cipher;
+    guess[KeyExchange.PROPOSAL_ENC_ALGS_STOC] = cipher;
+    guess[KeyExchange.PROPOSAL_MAC_ALGS_CTOS] = mac;
+    guess[KeyExchange.PROPOSAL_MAC_ALGS_STOC] = mac;
+    guess[KeyExchange.PROPOSAL_COMP_ALGS_CTOS] = "none";
+    guess[KeyExchange.PROPOSAL_COMP_ALGS_STOC] = "none";
+    session.guess = guess;
+    session.io = new IO();
+    session.updateKeys(new FixedKeyExchange());
+    return session;
+  }
+
+  /** Supplies fixed K and H values together with a hash that always returns the same digest. */
+  private static class FixedKeyExchange extends KeyExchange {
+    FixedKeyExchange() {
+      K = new byte[32];
+      H = new byte[32];
+      Arrays.fill(K, (byte) 1);
+      Arrays.fill(H, (byte) 2);
+      sha = new ConstantHash();
+    }
+
+    @Override
+    public void init(Session session, byte[] V_S, byte[] V_C, byte[] I_S, byte[] I_C) {}
+
+    @Override
+    public boolean next(Buffer buf) {
+      return false;
+    }
+
+    @Override
+    public int getState() {
+      return STATE_END;
+    }
+  }
+
+  private static class ConstantHash implements HASH {
+    private final byte[] digest = new byte[64];
+
+    ConstantHash() {
+      for (int i = 0; i < digest.length; i++) {
+        digest[i] = (byte) i;
+      }
+    }
+
+    @Override
+    public void init() {}
+
+    @Override
+    public int getBlockSize() {
+      return digest.length;
+    }
+
+    @Override
+    public void update(byte[] foo, int start, int len) {}
+
+    @Override
+    public byte[] digest() {
+      return digest.clone();
+    }
+  }
+
+  /** A single threaded pipe: whatever is written to {@link #out} can be read from {@link #in}. */
+  private static class Loopback {
+    private byte[] buf = new byte[64 * 1024];
+    private int r = 0;
+    private int w = 0;
+
+    final OutputStream out = new OutputStream() {
+      @Override
+      public void write(int b) {
+        write(new byte[] {(byte) b}, 0, 1);
+      }
+
+      @Override
+      public void write(byte[] b, int off, int len) {
+        if (w + len > buf.length) {
+          buf = Arrays.copyOf(buf, Math.max(buf.length * 2, w + len));
+        }
+        System.arraycopy(b, off, buf, w, len);
+        w += len;
+      }
+    };
+
+    final InputStream in = new InputStream() {
+      @Override
+      public int read() {
+        if (r == w) {
+          return -1;
+        }
+        return buf[r++] & 0xff;
+      }
+
+      @Override
+      public int read(byte[] b, int off, int len) {
+        if (r == w) {
+          return -1;
+        }
+        int n = Math.min(len, w - r);
+        System.arraycopy(buf, r, b, off, n);
+        r += n;
+        if (r == w) {
+          clear();
+        }
+        return n;
+      }
+    };
+
+    int available() {
+      return w - r;
+    }
+
+    void clear() {
+      r = 0;
+      w = 0;
+    }
+  }
+}
@@ -0,0 +1,88 @@
+package com.jcraft.jsch;
+
+import java.security.Provider;
+import java.security.Security;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Predicate;
+
+/**
+ * Remembers which algorithm implementations {@link Session#connect()} has found to be available
+ * with the CheckCiphers, CheckMacs, CheckKexes and CheckSignatures configurations, so that they are
+ * instantiated and initialized with dummy keys once per JVM instead of on every connect.
+ *
+ * <p>
+ * Results are kept by the implementation class, so that mapping an algorithm to another class
+ * looks the new class up; as the key exchanges read further classes and settings from the session
+ * while they are initialized, theirs are also kept by the configuration the session overrides. All
+ * results are dropped when {@link JSch#setConfig(String, String)} changes the configuration or the
+ * installed security providers change.
+ */
+class AlgorithmChecks {
+
+  private static final ConcurrentHashMap<String, Boolean> results = new ConcurrentHashMap<>();
+  // the providers installed when results were computed
+  private static volatile Provider[] providers = Security.getProviders();
+
+  private AlgorithmChecks() {}
+
+  static boolean isCipherAvailable(String cipher) {
+    return isAvailable("cipher", cipher, Session::checkCipher);
+  }
+
+  static boolean isMacAvailable(String mac) {
+    return isAvailable("mac", mac, Session::checkMac);
+  }
+
+  static boolean isKexAvailable(Session session, String kex, Map<String, String> overrides) {
+    StringBuilder key = new StringBuilder(kex == null ? "" : kex);
+    if (overrides != null) {
+      for (Map.Entry<String, String> e : new TreeMap<>(overrides).entrySet()) {
+        key.append('\n').append(e.getKey()).append('=').append(e.getValue());
+      }
+    }
+    return isAvailable("kex", kex == null ? null : key.toString(),
+        k -> Session.checkKex(session, kex));
+  }
+
+  static boolean isSignatureAvailable(String signature) {
+    return isAvailable("signature", signature, Session::checkSignature);
+  }
+
+  /** Drops all results, e.g. because the configuration has changed. */
+  static void clear() {
+    results.clear();
+  }
+
+  private static boolean isAvailable(String kind, String key, Predicate<String> check) {
+    if (key == null) {
+      // no implementation configured
+      return false;
+    }
+    Provider[] installed = Security.getProviders();
+    if (!sameProviders(installed, providers)) {
+      results.clear();
+      providers = installed;
+    }
+    String _key = kind + ":" + key;
+    Boolean result = results.get(_key);
+    if (result == null) {
+      result = check.test(key);
+      results.put(_key, result);
+    }
+    return result;
+  }
+
+  private static boolean sameProviders(Provider[] a, Provider[] b) {
+    if (a.length != b.length) {
+      return false;
+    }
+    for (int i = 0; i < a.length; i++) {
+      if (a[i] != b[i]) {
+        return false;
+      }
+    }
+    return true;
+  }
+}
@@ -0,0 +1,296 @@
+package com.jcraft.jsch;
+
+import java.lang.reflect.Constructor;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Creates the algorithm implementations the configuration maps algorithm names to, e.g. the
+ * {@link Cipher} for <code>aes128-ctr</code>.
+ *
+ * <p>
+ * How to create instances of a class is resolved once per class name and kept. The classes JSch
+ * ships with are created by constructor references instead of by reflection, which also lets them
+ * be used in native images without any reflection configuration; other classes, e.g. those
+ * {@link JSch#setConfig(String, String)} maps an algorithm to, are created through their no-arg
+ * constructor found by reflection.
+ */
+class AlgorithmFactory {
+
+  /** Creates an instance of a class. */
+  interface Factory {
+    Object create() throws Exception;
+  }
+
+  private static final ConcurrentHashMap<String, Factory> factories = new ConcurrentHashMap<>();
+
+  private AlgorithmFactory() {}
+
+  /**
+   * Creates an instance of the class named className.
+   *
+   * @throws ClassNotFoundException if there is no such class
+   * @throws ClassCastException if the class is not a type
+   */
+  static <T> T create(String className, Class<T> type) throws Exception {
+    if (className == null) {
+      throw new ClassNotFoundException("null");
+    }
+    Factory factory = factories.get(className);
+    if (factory == null) {
+      factory = builtin(className);
+      if (factory == null) {
+        Constructor<? extends T> c =
+            Class.forName(className).asSubclass(type).getDeclaredConstructor();
+        factory = c::newInstance;
+      }
+      factories.putIfAbsent(className, factory);
+    }
+    return type.cast(factory.create());
+  }
+
+  // each class is only loaded once its case is taken
+  static Factory builtin(String className) {
+    switch (className) {
+      case "com.jcraft.jsch.CipherNone":
+        return CipherNone::new;
+      case "com.jcraft.jsch.DH25519":
+        return DH25519::new;
+      case "com.jcraft.jsch.DH25519MLKEM768":
+        return DH25519MLKEM768::new;
+      case "com.jcraft.jsch.DH25519SNTRUP761":
+        return DH25519SNTRUP761::new;
+      case "com.jcraft.jsch.DH448":
+        return DH448::new;
+      case "com.jcraft.jsch.DHEC256":
+        return DHEC256::new;
+      case "com.jcraft.jsch.DHEC256MLKEM768":
+        return DHEC256MLKEM768::new;
+      case "com.jcraft.jsch.DHEC384":
+        return DHEC384::new;
+      case "com.jcraft.jsch.DHEC384MLKEM1024":
+        return DHEC384MLKEM1024::new;
+      case "com.jcraft.jsch.DHEC521":
+        return DHEC521::new;
+      case "com.jcraft.jsch.DHG1":
+        return DHG1::new;
+      case "com.jcraft.jsch.DHG14":
+        return DHG14::new;
+      case "com.jcraft.jsch.DHG14224":
+        return DHG14224::new;
+      case "com.jcraft.jsch.DHG14256":
+        return DHG14256::new;
+      case "com.jcraft.jsch.DHG15":
+        return DHG15::new;
+      case "com.jcraft.jsch.DHG15256":
+        return DHG15256::new;
+      case "com.jcraft.jsch.DHG15384":
+        return DHG15384::new;
+      case "com.jcraft.jsch.DHG16":
+        return DHG16::new;
+      case "com.jcraft.jsch.DHG16384":
+        return DHG16384::new;
+      case "com.jcraft.jsch.DHG17":
+        return DHG17::new;
+      case "com.jcraft.jsch.DHG18":
+        return DHG18::new;
+      case "com.jcraft.jsch.DHGEX1":
+        return DHGEX1::new;
+      case "com.jcraft.jsch.DHGEX224":
+        return DHGEX224::new;
+      case "com.jcraft.jsch.DHGEX256":
+        return DHGEX256::new;
+      case "com.jcraft.jsch.DHGEX384":
+        return DHGEX384::new;
+      case "com.jcraft.jsch.DHGEX512":
+        return DHGEX512::new;
+      case "com.jcraft.jsch.UserAuthGSSAPIWithMIC":
+        return UserAuthGSSAPIWithMIC::new;
+      case "com.jcraft.jsch.UserAuthKeyboardInteractive":
+        return UserAuthKeyboardInteractive::new;
+      case "com.jcraft.jsch.UserAuthNone":
+        return UserAuthNone::new;
+      case "com.jcraft.jsch.UserAuthPassword":
+        return UserAuthPassword::new;
+      case "com.jcraft.jsch.UserAuthPublicKey":
+        return UserAuthPublicKey::new;
+      case "com.jcraft.jsch.bc.Argon2":
+        return com.jcraft.jsch.bc.Argon2::new;
+      case "com.jcraft.jsch.bc.CAST128CBC":
+        return com.jcraft.jsch.bc.CAST128CBC::new;
+      case "com.jcraft.jsch.bc.CAST128CTR":
+        return com.jcraft.jsch.bc.CAST128CTR::new;
+      case "com.jcraft.jsch.bc.ChaCha20Poly1305":
+        return com.jcraft.jsch.bc.ChaCha20Poly1305::new;
+      case "com.jcraft.jsch.bc.HMACRIPEMD160":
+        return com.jcraft.jsch.bc.HMACRIPEMD160::new;
+      case "com.jcraft.jsch.bc.HMACRIPEMD160ETM":
+        return com.jcraft.jsch.bc.HMACRIPEMD160ETM::new;
+      case "com.jcraft.jsch.bc.HMACRIPEMD160OpenSSH":
+        return com.jcraft.jsch.bc.HMACRIPEMD160OpenSSH::new;
+      case "com.jcraft.jsch.bc.KeyPairGenEdDSA":
+        return com.jcraft.jsch.bc.KeyPairGenEdDSA::new;
+      case "com.jcraft.jsch.bc.MLKEM1024":
+        return com.jcraft.jsch.bc.MLKEM1024::new;
+      case "com.jcraft.jsch.bc.MLKEM768":
+        return com.jcraft.jsch.bc.MLKEM768::new;
+      case "com.jcraft.jsch.bc.SCrypt":
+        return com.jcraft.jsch.bc.SCrypt::new;
+      case "com.jcraft.jsch.bc.SEEDCBC":
+        return com.jcraft.jsch.bc.SEEDCBC::new;
+      case "com.jcraft.jsch.bc.SNTRUP761":
+        return com.jcraft.jsch.bc.SNTRUP761::new;
+      case "com.jcraft.jsch.bc.SignatureEd25519":
+        return com.jcraft.jsch.bc.SignatureEd25519::new;
+      case "com.jcraft.jsch.bc.SignatureEd448":
+        return com.jcraft.jsch.bc.SignatureEd448::new;
+      case "com.jcraft.jsch.bc.Twofish128CBC":
+        return com.jcraft.jsch.bc.Twofish128CBC::new;
+      case "com.jcraft.jsch.bc.Twofish128CTR":
+        return com.jcraft.jsch.bc.Twofish128CTR::new;
+      case "com.jcraft.jsch.bc.Twofish192CBC":
+        return com.jcraft.jsch.bc.Twofish192CBC::new;
+      case "com.jcraft.jsch.bc.Twofish192CTR":
+        return com.jcraft.jsch.bc.Twofish192CTR::new;
+      case "com.jcraft.jsch.bc.Twofish256CBC":
+        return com.jcraft.jsch.bc.Twofish256CBC::new;
+      case "com.jcraft.jsch.bc.Twofish256CTR":
+        return com.jcraft.jsch.bc.Twofish256CTR::new;
+      case "com.jcraft.jsch.bc.XDH":
+        return com.jcraft.jsch.bc.XDH::new;
+      case "com.jcraft.jsch.jbcrypt.JBCrypt":
+        return com.jcraft.jsch.jbcrypt.JBCrypt::new;
+      case "com.jcraft.jsch.jce.AES128CBC":
+        return com.jcraft.jsch.jce.AES128CBC::new;
+      case "com.jcraft.jsch.jce.AES128CTR":
+        return com.jcraft.jsch.jce.AES128CTR::new;
+      case "com.jcraft.jsch.jce.AES128GCM":
+        return com.jcraft.jsch.jce.AES128GCM::new;
+      case "com.jcraft.jsch.jce.AES192CBC":
+        return com.jcraft.jsch.jce.AES192CBC::new;
+      case "com.jcraft.jsch.jce.AES192CTR":
+        return com.jcraft.jsch.jce.AES192CTR::new;
+      case "com.jcraft.jsch.jce.AES256CBC":
+        return com.jcraft.jsch.jce.AES256CBC::new;
+      case "com.jcraft.jsch.jce.AES256CTR":
+        return com.jcraft.jsch.jce.AES256CTR::new;
+      case "com.jcraft.jsch.jce.AES256GCM":
+        return com.jcraft.jsch.jce.AES256GCM::new;
+      case "com.jcraft.jsch.jce.ARCFOUR":
+        return com.jcraft.jsch.jce.ARCFOUR::new;
+      case "com.jcraft.jsch.jce.ARCFOUR128":
+        return com.jcraft.jsch.jce.ARCFOUR128::new;
+      case "com.jcraft.jsch.jce.ARCFOUR256":
+        return com.jcraft.jsch.jce.ARCFOUR256::new;
+      case "com.jcraft.jsch.jce.BlowfishCBC":
+        return com.jcraft.jsch.jce.BlowfishCBC::new;
+      case "com.jcraft.jsch.jce.BlowfishCTR":
+        return com.jcraft.jsch.jce.BlowfishCTR::new;
+      case "com.jcraft.jsch.jce.DH":
+        return com.jcraft.jsch.jce.DH::new;
+      case "com.jcraft.jsch.jce.ECDHN":
+        return com.jcraft.jsch.jce.ECDHN::new;
+      case "com.jcraft.jsch.jce.HMACMD5":
+        return com.jcraft.jsch.jce.HMACMD5::new;
+      case "com.jcraft.jsch.jce.HMACMD596":
+        return com.jcraft.jsch.jce.HMACMD596::new;
+      case "com.jcraft.jsch.jce.HMACMD596ETM":
+        return com.jcraft.jsch.jce.HMACMD596ETM::new;
+      case "com.jcraft.jsch.jce.HMACMD5ETM":
+        return com.jcraft.jsch.jce.HMACMD5ETM::new;
+      case "com.jcraft.jsch.jce.HMACSHA1":
+        return com.jcraft.jsch.jce.HMACSHA1::new;
+      case "com.jcraft.jsch.jce.HMACSHA196":
+        return com.jcraft.jsch.jce.HMACSHA196::new;
+      case "com.jcraft.jsch.jce.HMACSHA196ETM":
+        return com.jcraft.jsch.jce.HMACSHA196ETM::new;
+      case "com.jcraft.jsch.jce.HMACSHA1ETM":
+        return com.jcraft.jsch.jce.HMACSHA1ETM::new;
+      case "com.jcraft.jsch.jce.HMACSHA224SSHCOM":
+        return com.jcraft.jsch.jce.HMACSHA224SSHCOM::new;
+      case "com.jcraft.jsch.jce.HMACSHA256":
+        return com.jcraft.jsch.jce.HMACSHA256::new;
+      case "com.jcraft.jsch.jce.HMACSHA2562SSHCOM":
+        return com.jcraft.jsch.jce.HMACSHA2562SSHCOM::new;
+      case "com.jcraft.jsch.jce.HMACSHA256ETM":
+        return com.jcraft.jsch.jce.HMACSHA256ETM::new;
+      case "com.jcraft.jsch.jce.HMACSHA256SSHCOM":
+        return com.jcraft.jsch.jce.HMACSHA256SSHCOM::new;
+      case "com.jcraft.jsch.jce.HMACSHA384SSHCOM":
+        return com.jcraft.jsch.jce.HMACSHA384SSHCOM::new;
+      case "com.jcraft.jsch.jce.HMACSHA512":
+        return com.jcraft.jsch.jce.HMACSHA512::new;
+      case "com.jcraft.jsch.jce.HMACSHA512ETM":
+        return com.jcraft.jsch.jce.HMACSHA512ETM::new;
+      case "com.jcraft.jsch.jce.HMACSHA512SSHCOM":
+        return com.jcraft.jsch.jce.HMACSHA512SSHCOM::new;
+      case "com.jcraft.jsch.jce.KeyPairGenDSA":
+        return com.jcraft.jsch.jce.KeyPairGenDSA::new;
+      case "com.jcraft.jsch.jce.KeyPairGenECDSA":
+        return com.jcraft.jsch.jce.KeyPairGenECDSA::new;
+      case "com.jcraft.jsch.jce.KeyPairGenEdDSA":
+        return com.jcraft.jsch.jce.KeyPairGenEdDSA::new;
+      case "com.jcraft.jsch.jce.KeyPairGenRSA":
+        return com.jcraft.jsch.jce.KeyPairGenRSA::new;
+      case "com.jcraft.jsch.jce.MD5":
+        return com.jcraft.jsch.jce.MD5::new;
+      case "com.jcraft.jsch.jce.MLKEM1024":
+        return com.jcraft.jsch.jce.MLKEM1024::new;
+      case "com.jcraft.jsch.jce.MLKEM768":
+        return com.jcraft.jsch.jce.MLKEM768::new;
+      case "com.jcraft.jsch.jce.PBKDF2":
+        return com.jcraft.jsch.jce.PBKDF2::new;
+      case "com.jcraft.jsch.jce.Random":
+        return com.jcraft.jsch.jce.Random::new;
+      case "com.jcraft.jsch.jce.SHA1":
+        return com.jcraft.jsch.jce.SHA1::new;
+      case "com.jcraft.jsch.jce.SHA224":
+        return com.jcraft.jsch.jce.SHA224::new;
+      case "com.jcraft.jsch.jce.SHA256":
+        return com.jcraft.jsch.jce.SHA256::new;
+      case "com.jcraft.jsch.jce.SHA384":
+        return com.jcraft.jsch.jce.SHA384::new;
+      case "com.jcraft.jsch.jce.SHA512":
+        return com.jcraft.jsch.jce.SHA512::new;
+      case "com.jcraft.jsch.jce.SignatureDSA":
+        return com.jcraft.jsch.jce.SignatureDSA::new;
+      case "com.jcraft.jsch.jce.SignatureECDSA256":
+        return com.jcraft.jsch.jce.SignatureECDSA256::new;
+      case "com.jcraft.jsch.jce.SignatureECDSA384":
+        return com.jcraft.jsch.jce.SignatureECDSA384::new;
+      case "com.jcraft.jsch.jce.SignatureECDSA521":
+        return com.jcraft.jsch.jce.SignatureECDSA521::new;
+      case "com.jcraft.jsch.jce.SignatureEd25519":
+        return com.jcraft.jsch.jce.SignatureEd25519::new;
+      case "com.jcraft.jsch.jce.SignatureEd448":
+        return com.jcraft.jsch.jce.SignatureEd448::new;
+      case "com.jcraft.jsch.jce.SignatureRSA":
+        return com.jcraft.jsch.jce.SignatureRSA::new;
+      case "com.jcraft.jsch.jce.SignatureRSASHA224SSHCOM":
+        return com.jcraft.jsch.jce.SignatureRSASHA224SSHCOM::new;
+      case "com.jcraft.jsch.jce.SignatureRSASHA256":
+        return com.jcraft.jsch.jce.SignatureRSASHA256::new;
+      case "com.jcraft.jsch.jce.SignatureRSASHA256SSHCOM":
+        return com.jcraft.jsch.jce.SignatureRSASHA256SSHCOM::new;
+      case "com.jcraft.jsch.jce.SignatureRSASHA384SSHCOM":
+        return com.jcraft.jsch.jce.SignatureRSASHA384SSHCOM::new;
+      case "com.jcraft.jsch.jce.SignatureRSASHA512":
+        return com.jcraft.jsch.jce.SignatureRSASHA512::new;
+      case "com.jcraft.jsch.jce.SignatureRSASHA512SSHCOM":
+        return com.jcraft.jsch.jce.SignatureRSASHA512SSHCOM::new;
+      case "com.jcraft.jsch.jce.TripleDESCBC":
+        return com.jcraft.jsch.jce.TripleDESCBC::new;
+      case "com.jcraft.jsch.jce.TripleDESCTR":
+        return com.jcraft.jsch.jce.TripleDESCTR::new;
+      case "com.jcraft.jsch.jce.XDH":
+        return com.jcraft.jsch.jce.XDH::new;
+      case "com.jcraft.jsch.jgss.GSSContextKrb5":
+        return com.jcraft.jsch.jgss.GSSContextKrb5::new;
+      case "com.jcraft.jsch.juz.Compression":
+        return com.jcraft.jsch.juz.Compression::new;
+      case "com.jcraft.jsch.jzlib.Compression":
+        return com.jcraft.jsch.jzlib.Compression::new;
+      default:
+        return null;
+    }
+  }
+}
@@ -29,9 +29,16 @@ package com.jcraft.jsch;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
-import java.io.PipedInputStream;
-import java.io.PipedOutputStream;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
 import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
 
 public abstract class Channel {
 
@@ -46,13 +53,21 @@ public abstract class Channel {
 
   private static final AtomicInteger index = new AtomicInteger();
 
-  int id;
+  final int id;
   volatile int recipient = -1;
   protected byte[] type = Util.str2byte("foo");
   volatile int lwsize_max = 0x100000;
   volatile int lwsize = lwsize_max; // local initial window size
   volatile int lmpsize = 0x4000; // local maximum packet size
 
+  // auto-tuning of the local window, only touched by the session thread
+  private int autotune_max = 0;
+  private long received = 0L; // data received so far
+  private long adjust_time = 0L; // System.nanoTime() of the last window adjustment
+  private long adjust_received = 0L; // data received before the last window adjustment
+  private long adjust_granted = -1L; // data granted before the last window adjustment
+  private long min_rtt = Long.MAX_VALUE;
+
   volatile long rwsize = 0; // remote initial window size
   volatile int rmpsize = 0; // remote maximum packet size
 
@@ -69,12 +84,30 @@ public abstract class Channel {
   volatile int exitstatus = -1;
   volatile String exitsignal = null;
 
-  volatile int reply = 0;
+  // channel requests waiting for SSH_MSG_CHANNEL_SUCCESS or FAILURE, in the order they were sent
+  private final ConcurrentLinkedQueue<CompletableFuture<Void>> replies =
+      new ConcurrentLinkedQueue<>();
+  private final ReentrantLock request_lock = new ReentrantLock();
+  // hands received data over to io, see ChannelInbound
+  final ChannelInbound inbound = new ChannelInbound(this);
+  final Metrics metrics = new Metrics();
+  // completed by the session thread once SSH_MSG_CHANNEL_OPEN_CONFIRMATION or FAILURE arrives
+  private final CompletableFuture<Void> open_reply = new CompletableFuture<>();
   volatile int connectTimeout = 0;
 
   protected Session session;
 
-  int notifyme = 0;
+  // guards close and the remote window; a lock rather than the monitor of the channel, so that
+  // virtual threads waiting for the window or writing to the session do not pin their carrier
+  final ReentrantLock state_lock = new ReentrantLock();
+  // signalled whenever the remote window grows, or the channel is confirmed or closed
+  final Condition state_changed = state_lock.newCondition();
+
+  // set if the channel is a forwarded connection serviced by a ForwardingSelector
+  volatile ForwardingSelector.Link link;
+
+  // how long connect() waits for the channel to be confirmed if no timeout has been given
+  private static final long DEFAULT_OPEN_TIMEOUT = 20000L;
 
   Channel() {
     // OpenSSH 8.0 introduced a bug that rejected channels with an ID that exceeds INT_MAX.
@@ -85,10 +118,14 @@ public abstract class Channel {
     id = index.getAndIncrement() & Integer.MAX_VALUE;
   }
 
-  synchronized void setRecipient(int foo) {
-    this.recipient = foo;
-    if (notifyme > 0)
-      notifyAll();
+  void setRecipient(int foo) {
+    state_lock.lock();
+    try {
+      this.recipient = foo;
+      state_changed.signalAll();
+    } finally {
+      state_lock.unlock();
+    }
   }
 
   int getRecipient() {
@@ -115,6 +152,95 @@ public abstract class Channel {
     }
   }
 
+  /**
+   * Opens this channel without waiting for the server to confirm it.
+   *
+   * @return a future which completes with this channel once it has been opened and started
+   * @see #connectAsync(int)
+   */
+  public CompletableFuture<Channel> connectAsync() {
+    return connectAsync(0);
+  }
+
+  /**
+   * Opens this channel without waiting for the server to confirm it. The SSH_MSG_CHANNEL_OPEN
+   * message is sent right away, so many channels can be opened back to back and confirmed within a
+   * single round trip. Once the confirmation has arrived, the channel is started on a thread of its
+   * own, as starting it may involve further requests to the server.
+   *
+   * @param connectTimeout timeout in milliseconds for the server to confirm the channel, or 0 to
+   *        wait as long as the session is connected
+   * @return a future which completes with this channel once it has been opened and started, or
+   *         fails with a {@link JSchException} if it could not be
+   */
+  public CompletableFuture<Channel> connectAsync(int connectTimeout) {
+    this.connectTimeout = connectTimeout;
+    CompletableFuture<Channel> future = new CompletableFuture<>();
+    Session _session;
+    try {
+      _session = getSession();
+      writeChannelOpen(_session);
+    } catch (Exception e) {
+      failConnect(future, e);
+      return future;
+    }
+
+    if (connectTimeout > 0) {
+      ScheduledFuture<?> timeout = OpenTimeout.timer.schedule(
+          () -> openFailed(new JSchException("channel is not opened.")), connectTimeout,
+          TimeUnit.MILLISECONDS);
+      open_reply.whenComplete((v, t) -> timeout.cancel(false));
+    }
+
+    open_reply.whenComplete((v, t) -> {
+      if (t != null) {
+        failConnect(future, t);
+        return;
+      }
+      startAsync(_session, () -> {
+        try {
+          connected = true;
+          start();
+          future.complete(this);
+        } catch (Exception e) {
+          failConnect(future, e);
+        }
+      });
+    });
+    return future;
+  }
+
+  /**
+   * Runs {@link #start()} for {@link #connectAsync(int)}, on a new thread unless the channel knows
+   * that starting it does not block.
+   */
+  void startAsync(Session _session, Runnable task) {
+    Thread thread = _session.getThreadFactory().newThread(task);
+    thread.setName("Connect thread " + _session.getHost() + " channel " + id);
+    if (_session.daemon_thread) {
+      thread.setDaemon(_session.daemon_thread);
+    }
+    thread.start();
+  }
+
+  private void failConnect(CompletableFuture<Channel> future, Throwable t) {
+    connected = false;
+    disconnect();
+    if (t instanceof JSchException) {
+      future.completeExceptionally(t);
+    } else {
+      future.completeExceptionally(new JSchException(t.toString(), t));
+    }
+  }
+
+  void openConfirmed() {
+    open_reply.complete(null);
+  }
+
+  void openFailed(JSchException e) {
+    open_reply.completeExceptionally(e);
+  }
+
   public void setXForwarding(boolean foo) {}
 
   public void start() throws JSchException {}
@@ -164,10 +290,8 @@ public abstract class Channel {
       max_input_buffer_size = Integer.parseInt(getSession().getConfig("max_input_buffer_size"));
     } catch (Exception e) {
     }
-    PipedInputStream in = new MyPipedInputStream(32 * 1024, // this value should be customizable.
-        max_input_buffer_size);
-    boolean resizable = 32 * 1024 < max_input_buffer_size;
-    io.setOutputStream(new PassiveOutputStream(in, resizable), false);
+    RingBufferInputStream in = new RingBufferInputStream(32 * 1024, max_input_buffer_size);
+    io.setOutputStream(in.getOutputStream(), false);
     return in;
   }
 
@@ -183,10 +307,8 @@ public abstract class Channel {
       max_input_buffer_size = Integer.parseInt(getSession().getConfig("max_input_buffer_size"));
     } catch (Exception e) {
     }
-    PipedInputStream in = new MyPipedInputStream(32 * 1024, // this value should be customizable.
-        max_input_buffer_size);
-    boolean resizable = 32 * 1024 < max_input_buffer_size;
-    io.setExtOutputStream(new PassiveOutputStream(in, resizable), false);
+    RingBufferInputStream in = new RingBufferInputStream(32 * 1024, max_input_buffer_size);
+    io.setExtOutputStream(in.getOutputStream(), false);
     return in;
   }
 
@@ -273,9 +395,12 @@ public abstract class Channel {
         try {
           int foo = dataLen;
           dataLen = 0;
-          synchronized (channel) {
+          channel.state_lock.lock();
+          try {
             if (!channel.close)
               getSession().write(packet, channel, foo);
+          } finally {
+            channel.state_lock.unlock();
           }
         } catch (Exception e) {
           close();
@@ -306,106 +431,6 @@ public abstract class Channel {
     return out;
   }
 
-  static class MyPipedInputStream extends PipedInputStream {
-    private int BUFFER_SIZE = 1024;
-    private int max_buffer_size = BUFFER_SIZE;
-
-    MyPipedInputStream() throws IOException {
-      super();
-    }
-
-    MyPipedInputStream(int size) throws IOException {
-      super();
-      buffer = new byte[size];
-      BUFFER_SIZE = size;
-      max_buffer_size = size;
-    }
-
-    MyPipedInputStream(int size, int max_buffer_size) throws IOException {
-      this(size);
-      this.max_buffer_size = max_buffer_size;
-    }
-
-    MyPipedInputStream(PipedOutputStream out) throws IOException {
-      super(out);
-    }
-
-    MyPipedInputStream(PipedOutputStream out, int size) throws IOException {
-      super(out);
-      buffer = new byte[size];
-      BUFFER_SIZE = size;
-    }
-
-    /*
-     * TODO: We should have our own Piped[I/O]Stream implementation. Before accepting data, JDK's
-     * PipedInputStream will check the existence of reader thread, and if it is not alive, the
-     * stream will be closed. That behavior may cause the problem if multiple threads make access to
-     * it.
-     */
-    public synchronized void updateReadSide() throws IOException {
-      if (available() != 0) { // not empty
-        return;
-      }
-      in = 0;
-      out = 0;
-      buffer[in++] = 0;
-      read();
-    }
-
-    private int freeSpace() {
-      int size = 0;
-      if (out < in) {
-        size = buffer.length - in;
-      } else if (in < out) {
-        if (in == -1)
-          size = buffer.length;
-        else
-          size = out - in;
-      }
-      return size;
-    }
-
-    synchronized void checkSpace(int len) throws IOException {
-      int size = freeSpace();
-      if (size < len) {
-        int datasize = buffer.length - size;
-        int foo = buffer.length;
-        while ((foo - datasize) < len) {
-          foo *= 2;
-        }
-
-        if (foo > max_buffer_size) {
-          foo = max_buffer_size;
-        }
-        if ((foo - datasize) < len)
-          return;
-
-        byte[] tmp = new byte[foo];
-        if (out < in) {
-          System.arraycopy(buffer, 0, tmp, 0, buffer.length);
-        } else if (in < out) {
-          if (in == -1) {
-          } else {
-            System.arraycopy(buffer, 0, tmp, 0, in);
-            System.arraycopy(buffer, out, tmp, tmp.length - (buffer.length - out),
-                (buffer.length - out));
-            out = tmp.length - (buffer.length - out);
-          }
-        } else if (in == out) {
-          System.arraycopy(buffer, 0, tmp, 0, buffer.length);
-          in = buffer.length;
-        }
-        buffer = tmp;
-      } else if (buffer.length == size && size > BUFFER_SIZE) {
-        int i = size / 2;
-        if (i < BUFFER_SIZE)
-          i = BUFFER_SIZE;
-        byte[] tmp = new byte[i];
-        buffer = tmp;
-      }
-    }
-  }
-
   void setLocalWindowSizeMax(int foo) {
     this.lwsize_max = foo;
   }
@@ -418,14 +443,77 @@ public abstract class Channel {
     this.lmpsize = foo;
   }
 
-  synchronized void setRemoteWindowSize(long foo) {
-    this.rwsize = foo;
+  /**
+   * Lets the local window grow up to the given size while data is received faster than one window
+   * per round trip, see {@link #consumeLocalWindow(int)}.
+   */
+  void setLocalWindowAutoTune(int max) {
+    this.autotune_max = max;
+    this.adjust_time = System.nanoTime();
+  }
+
+  /**
+   * Takes len bytes of delivered data off the local window, and returns by how much the window has
+   * to be adjusted, or 0 if no SSH_MSG_CHANNEL_WINDOW_ADJUST is due yet. Called by whichever thread
+   * is delivering the data of this channel, see {@link ChannelInbound}; never concurrently.
+   *
+   * <p>
+   * With auto-tuning, the round trip time is taken as the shortest time between adjusting the
+   * window and receiving the first data that could not have been sent before, and the window is
+   * doubled whenever it is less than twice the amount of data drained in a round trip.
+   */
+  int consumeLocalWindow(int len) {
+    lwsize -= len;
+    if (autotune_max > 0) {
+      received += len;
+      if (adjust_granted >= 0L && received > adjust_granted) {
+        min_rtt = Math.min(min_rtt, System.nanoTime() - adjust_time);
+        adjust_granted = -1L;
+      }
+    }
+    if (lwsize >= lwsize_max / 2) {
+      return 0;
+    }
+    if (autotune_max > 0) {
+      long now = System.nanoTime();
+      long elapsed = Math.max(1L, now - adjust_time);
+      if (min_rtt != Long.MAX_VALUE && lwsize_max < autotune_max) {
+        // bandwidth-delay product: what has been drained per round trip
+        long bdp = (received - adjust_received) * min_rtt / elapsed;
+        if (2 * bdp > lwsize_max) {
+          lwsize_max = (int) Math.min((long) lwsize_max * 2, autotune_max);
+        }
+      }
+      adjust_time = now;
+      adjust_received = received;
+      adjust_granted = received + lwsize;
+    }
+    int adjust = lwsize_max - lwsize;
+    lwsize = lwsize_max;
+    return adjust;
   }
 
-  synchronized void addRemoteWindowSize(long foo) {
-    this.rwsize += foo;
-    if (notifyme > 0)
-      notifyAll();
+  void setRemoteWindowSize(long foo) {
+    state_lock.lock();
+    try {
+      this.rwsize = foo;
+    } finally {
+      state_lock.unlock();
+    }
+  }
+
+  void addRemoteWindowSize(long foo) {
+    state_lock.lock();
+    try {
+      this.rwsize += foo;
+      state_changed.signalAll();
+    } finally {
+      state_lock.unlock();
+    }
+    ForwardingSelector.Link _link = link;
+    if (_link != null) {
+      _link.windowOpened();
+    }
   }
 
   void setRemotePacketSize(int foo) {
@@ -452,6 +540,48 @@ public abstract class Channel {
     }
   }
 
+  /**
+   * Writes received data like {@link #write(byte[], int, int)} or
+   * {@link #write_ext(byte[], int, int)}, but only if that does not block.
+   *
+   * @return false if nothing has been written, see {@link ChannelInbound.Offerable}, which is also
+   *         the case if the channel has no output
+   */
+  boolean offer(byte[] foo, int s, int l, boolean ext) throws IOException {
+    IO _io = io;
+    if (_io == null) {
+      return false;
+    }
+    return ext ? _io.offer_ext(foo, s, l) : _io.offer(foo, s, l);
+  }
+
+  /**
+   * Gives len bytes of data handed over to the application back to the local window, and sends
+   * SSH_MSG_CHANNEL_WINDOW_ADJUST if due.
+   */
+  void dataDelivered(int len) {
+    int adjust = consumeLocalWindow(len);
+    if (adjust <= 0) {
+      return;
+    }
+    try {
+      Buffer buf = new Buffer(100);
+      Packet packet = new Packet(buf);
+      packet.reset();
+      buf.putByte((byte) Session.SSH_MSG_CHANNEL_WINDOW_ADJUST);
+      buf.putInt(getRecipient());
+      buf.putInt(adjust);
+      state_lock.lock();
+      try {
+        if (!close)
+          getSession().write(packet);
+      } finally {
+        state_lock.unlock();
+      }
+    } catch (Exception e) {
+    }
+  }
+
   void eof_remote() {
     eof_remote = true;
     try {
@@ -475,9 +605,12 @@ public abstract class Channel {
       packet.reset();
       buf.putByte((byte) Session.SSH_MSG_CHANNEL_EOF);
       buf.putInt(i);
-      synchronized (this) {
+      state_lock.lock();
+      try {
         if (!close)
           getSession().write(packet);
+      } finally {
+        state_lock.unlock();
       }
     } catch (Exception e) {
       // System.err.println("Channel.eof");
@@ -521,6 +654,13 @@ public abstract class Channel {
       return;
     close = true;
     eof_local = eof_remote = true;
+    state_lock.lock();
+    try {
+      // wake up writers waiting for the remote window
+      state_changed.signalAll();
+    } finally {
+      state_lock.unlock();
+    }
 
     int i = getRecipient();
     if (i == -1)
@@ -532,8 +672,11 @@ public abstract class Channel {
       packet.reset();
       buf.putByte((byte) Session.SSH_MSG_CHANNEL_CLOSE);
       buf.putInt(i);
-      synchronized (this) {
+      state_lock.lock();
+      try {
         getSession().write(packet);
+      } finally {
+        state_lock.unlock();
       }
     } catch (Exception e) {
       // e.printStackTrace();
@@ -544,18 +687,36 @@ public abstract class Channel {
     return close;
   }
 
+  /**
+   * Returns the transport measurements of this channel so far, see
+   * {@link Session#getMetrics()}.
+   *
+   * @return a snapshot of the measurements
+   */
+  public TransportMetrics getMetrics() {
+    return metrics.snapshot(inbound.queued(), 0);
+  }
+
   public void disconnect() {
     // System.err.println(this+":disconnect "+io+" "+connected);
     // Thread.dumpStack();
 
+    openFailed(new JSchException("channel is not opened."));
+
     try {
 
-      synchronized (this) {
+      state_lock.lock();
+      try {
         if (!connected) {
           return;
         }
         connected = false;
+        state_changed.signalAll();
+      } finally {
+        state_lock.unlock();
       }
+      dropReplies();
+      JfrEvents.channelClosed(this);
 
       close();
 
@@ -572,6 +733,11 @@ public abstract class Channel {
       }
       // io=null;
     } finally {
+      inbound.clear();
+      ForwardingSelector.Link _link = link;
+      if (_link != null) {
+        _link.close();
+      }
       Session _session = this.session;
       if (_session != null) {
         _session.delChannel(this);
@@ -587,6 +753,51 @@ public abstract class Channel {
     return false;
   }
 
+  /**
+   * Sends a channel request with want-reply set. The returned future is completed by the session
+   * thread once the reply has arrived, or once the channel is gone, and fails if the request has
+   * been declined. As the peer replies in the order the requests were sent, several requests may be
+   * sent before waiting for the first reply.
+   */
+  CompletableFuture<Void> sendRequest(Packet packet) throws Exception {
+    CompletableFuture<Void> future = new CompletableFuture<>();
+    Session _session = getSession();
+    request_lock.lock();
+    try {
+      replies.add(future);
+      _session.write(packet);
+    } catch (Exception e) {
+      replies.remove(future);
+      throw e;
+    } finally {
+      request_lock.unlock();
+    }
+    if (!isConnected()) {
+      dropReplies();
+    }
+    return future;
+  }
+
+  void receiveReply(boolean success) {
+    CompletableFuture<Void> future = replies.poll();
+    if (future == null) {
+      return;
+    }
+    if (success) {
+      future.complete(null);
+    } else {
+      future.completeExceptionally(new JSchException("failed to send channel request"));
+    }
+  }
+
+  // as before, requests still waiting when the channel goes away are not reported as failed
+  private void dropReplies() {
+    CompletableFuture<Void> future;
+    while ((future = replies.poll()) != null) {
+      future.complete(null);
+    }
+  }
+
   public void sendSignal(String signal) throws Exception {
     RequestSignal request = new RequestSignal();
     request.setSignal(signal);
@@ -603,55 +814,6 @@ public abstract class Channel {
    * run(){c.output_thread();} }
    */
 
-  static class PassiveInputStream extends MyPipedInputStream {
-    PipedOutputStream os;
-
-    PassiveInputStream(PipedOutputStream out, int size) throws IOException {
-      super(out, size);
-      this.os = out;
-    }
-
-    PassiveInputStream(PipedOutputStream out) throws IOException {
-      super(out);
-      this.os = out;
-    }
-
-    @Override
-    public void close() throws IOException {
-      if (this.os != null) {
-        this.os.close();
-      }
-      this.os = null;
-    }
-  }
-
-  static class PassiveOutputStream extends PipedOutputStream {
-    private MyPipedInputStream _sink = null;
-
-    PassiveOutputStream(PipedInputStream in, boolean resizable_buffer) throws IOException {
-      super(in);
-      if (resizable_buffer && (in instanceof MyPipedInputStream)) {
-        this._sink = (MyPipedInputStream) in;
-      }
-    }
-
-    @Override
-    public void write(int b) throws IOException {
-      if (_sink != null) {
-        _sink.checkSpace(1);
-      }
-      super.write(b);
-    }
-
-    @Override
-    public void write(byte[] b, int off, int len) throws IOException {
-      if (_sink != null) {
-        _sink.checkSpace(len);
-      }
-      super.write(b, off, len);
-    }
-  }
-
   void setExitStatus(int status) {
     exitstatus = status;
   }
@@ -730,46 +892,82 @@ public abstract class Channel {
 
   protected void sendChannelOpen() throws Exception {
     Session _session = getSession();
+    writeChannelOpen(_session);
+
+    long timeout = connectTimeout;
+    if (timeout == 0L) {
+      timeout = DEFAULT_OPEN_TIMEOUT;
+    }
+    try {
+      await(open_reply, timeout, "channel is not opened.");
+    } catch (JSchException e) {
+      if (!_session.isConnected()) {
+        throw new JSchException("session is down");
+      }
+      throw e;
+    }
     if (!_session.isConnected()) {
       throw new JSchException("session is down");
     }
+    connected = true;
+  }
 
+  private void writeChannelOpen(Session _session) throws Exception {
+    if (!_session.isConnected()) {
+      throw new JSchException("session is down");
+    }
     Packet packet = genChannelOpenPacket();
+    Object event = JfrEvents.beginChannelOpen();
     _session.write(packet);
+    if (event != null) {
+      open_reply.whenComplete((r, e) -> JfrEvents.endChannelOpen(event, this, e == null));
+    }
+  }
 
-    int retry = 2000;
-    long start = System.currentTimeMillis();
-    long timeout = connectTimeout;
-    if (timeout != 0L)
-      retry = 1;
-    synchronized (this) {
-      while (this.getRecipient() == -1 && _session.isConnected() && retry > 0) {
-        if (timeout > 0L) {
-          if ((System.currentTimeMillis() - start) > timeout) {
-            retry = 0;
-            continue;
-          }
-        }
+  /**
+   * Waits for a reply from the session thread, up to timeout milliseconds if timeout is positive,
+   * and returns it. Interrupts do not stop the wait, but are passed on to the caller.
+   */
+  static <T> T await(CompletableFuture<T> future, long timeout, String message)
+      throws JSchException {
+    long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(timeout);
+    boolean interrupted = false;
+    try {
+      while (true) {
         try {
-          long t = timeout == 0L ? 10L : timeout;
-          this.notifyme = 1;
-          wait(t);
+          if (timeout > 0L) {
+            return future.get(Math.max(0L, deadline - System.nanoTime()), TimeUnit.NANOSECONDS);
+          }
+          return future.get();
         } catch (InterruptedException e) {
-        } finally {
-          this.notifyme = 0;
+          interrupted = true;
+        } catch (TimeoutException e) {
+          throw new JSchException(message);
+        } catch (ExecutionException e) {
+          Throwable cause = e.getCause();
+          if (cause instanceof JSchException) {
+            throw (JSchException) cause;
+          }
+          throw new JSchException(cause.toString(), cause);
         }
-        retry--;
+      }
+    } finally {
+      if (interrupted) {
+        Thread.currentThread().interrupt();
       }
     }
-    if (!_session.isConnected()) {
-      throw new JSchException("session is down");
-    }
-    if (this.getRecipient() == -1) { // timeout
-      throw new JSchException("channel is not opened.");
-    }
-    if (this.open_confirmation == false) { // SSH_MSG_CHANNEL_OPEN_FAILURE
-      throw new JSchException("channel is not opened.");
+  }
+
+  // connectAsync() timeouts, the thread is only created once the first one is scheduled
+  private static class OpenTimeout {
+    static final ScheduledThreadPoolExecutor timer = new ScheduledThreadPoolExecutor(1, r -> {
+      Thread thread = new Thread(r, "Channel open timeout");
+      thread.setDaemon(true);
+      return thread;
+    });
+
+    static {
+      timer.setRemoveOnCancelPolicy(true);
     }
-    connected = true;
   }
 }
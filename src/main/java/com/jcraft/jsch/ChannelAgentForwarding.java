@@ -88,6 +88,12 @@ class ChannelAgentForwarding extends Channel {
     }
   }
 
+  @Override
+  boolean offer(byte[] foo, int s, int l, boolean ext) {
+    // write() may block, so leave it to ChannelInbound
+    return false;
+  }
+
   @Override
   void write(byte[] foo, int s, int l) throws IOException {
 
@@ -85,11 +85,38 @@ public class ChannelDirectTCPIP extends Channel {
     }
   }
 
+  // called by connectAsync() once the channel has been opened
+  @Override
+  public void start() throws JSchException {
+    if (link != null) {
+      link.start();
+    } else if (io.in != null) {
+      Session _session = getSession();
+      thread = _session.getThreadFactory().newThread(this::run);
+      thread.setName("DirectTCPIP thread " + _session.getHost());
+      if (_session.daemon_thread) {
+        thread.setDaemon(_session.daemon_thread);
+      }
+      thread.start();
+    }
+  }
+
+  @Override
+  void startAsync(Session _session, Runnable task) {
+    if (link != null) {
+      task.run();
+    } else {
+      super.startAsync(_session, task);
+    }
+  }
+
   @Override
   void run() {
 
     try {
-      sendChannelOpen();
+      if (!connected) {
+        sendChannelOpen();
+      }
 
       Buffer buf = new Buffer(rmpsize);
       Packet packet = new Packet(buf);
@@ -107,10 +134,13 @@ public class ChannelDirectTCPIP extends Channel {
         buf.putInt(recipient);
         buf.putInt(i);
         buf.skip(i);
-        synchronized (this) {
+        state_lock.lock();
+        try {
           if (close)
             break;
           _session.write(packet, this, i);
+        } finally {
+          state_lock.unlock();
         }
       }
     } catch (Exception e) {
@@ -26,7 +26,6 @@
 
 package com.jcraft.jsch;
 
-import java.io.PipedOutputStream;
 import java.net.Socket;
 import java.util.Vector;
 
@@ -53,6 +52,41 @@ public class ChannelForwardedTCPIP extends Channel {
     connected = true;
   }
 
+  /**
+   * Hands the connection to the target over to the forwarding selector of the session if the
+   * {@code use_nio_forwarding} config is enabled, in which case no thread has to be started for this
+   * channel. Daemons and targets with their own socket factory keep a thread of their own.
+   */
+  boolean startOnSelector() {
+    if (!(config instanceof ConfigLHost) || ((ConfigLHost) config).factory != null) {
+      return false;
+    }
+    try {
+      Session _session = getSession();
+      if (!_session.getConfig("use_nio_forwarding").equals("yes")) {
+        return false;
+      }
+      ConfigLHost _config = (ConfigLHost) config;
+      _session.getForwardingSelector().connect(this, _config.target, _config.lport, TIMEOUT);
+    } catch (Exception e) {
+      connectFailed();
+    }
+    return true;
+  }
+
+  // called by the forwarding selector once the connection to the target has been established
+  void connected(ForwardingSelector.Link link) throws Exception {
+    io.setOutputStream(link.out);
+    sendOpenConfirmation();
+  }
+
+  // called by the forwarding selector if the target could not be connected to
+  void connectFailed() {
+    sendOpenFailure(SSH_OPEN_ADMINISTRATIVELY_PROHIBITED);
+    close = true;
+    disconnect();
+  }
+
   @Override
   public void run() {
     try {
@@ -62,10 +96,10 @@ public class ChannelForwardedTCPIP extends Channel {
             Class.forName(_config.target).asSubclass(ForwardedTCPIPDaemon.class);
         daemon = c.getDeclaredConstructor().newInstance();
 
-        PipedOutputStream out = new PipedOutputStream();
-        io.setInputStream(new PassiveInputStream(out, 32 * 1024), false);
+        RingBufferInputStream in = new RingBufferInputStream(32 * 1024);
+        io.setInputStream(in, false);
 
-        daemon.setChannel(this, getInputStream(), out);
+        daemon.setChannel(this, getInputStream(), in.getOutputStream());
         daemon.setArg(_config.arg);
         getSession().getThreadFactory().newThread(daemon).start();
       } else {
@@ -102,10 +136,13 @@ public class ChannelForwardedTCPIP extends Channel {
         buf.putInt(recipient);
         buf.putInt(i);
         buf.skip(i);
-        synchronized (this) {
+        state_lock.lock();
+        try {
           if (close)
             break;
           _session.write(packet, this, i);
+        } finally {
+          state_lock.unlock();
         }
       }
     } catch (Exception e) {
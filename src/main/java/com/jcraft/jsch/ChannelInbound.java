@@ -0,0 +1,210 @@
+package com.jcraft.jsch;
+
+import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Hands what the session thread receives for a channel over to the application, without letting a
+ * slow reader hold up the session thread and with it all the other channels.
+ *
+ * <p>
+ * As long as nothing is queued and the channel's output can take the data right away (see
+ * {@link Offerable}), the session thread delivers it itself. Otherwise the data is copied into the
+ * queue of the channel, which a thread of the session's inbound executor delivers in order;
+ * SSH_MSG_CHANNEL_EOF and SSH_MSG_CHANNEL_CLOSE are queued behind the data. The local window is
+ * only given back to the peer once the data has been delivered, so the queue never holds more than
+ * the local window.
+ */
+class ChannelInbound {
+
+  /** An output stream that can tell whether a write would block. */
+  interface Offerable {
+    /**
+     * Writes len bytes if that can be done without blocking.
+     *
+     * @return false if nothing has been written because the write would have blocked
+     */
+    boolean offer(byte[] b, int off, int len) throws IOException;
+  }
+
+  private static final int DATA = 0;
+  private static final int EXTENDED_DATA = 1;
+  private static final int EOF = 2;
+  private static final int CLOSE = 3;
+
+  private final Channel channel;
+
+  private final ReentrantLock lock = new ReentrantLock();
+  // guarded by lock; only the session thread adds to the queue
+  private final ArrayDeque<Entry> queue = new ArrayDeque<>();
+  // whether a thread of the inbound executor is delivering, guarded by lock
+  private boolean draining = false;
+  private boolean closed = false;
+
+  ChannelInbound(Channel channel) {
+    this.channel = channel;
+  }
+
+  /** Called by the session thread for SSH_MSG_CHANNEL_DATA and SSH_MSG_CHANNEL_EXTENDED_DATA. */
+  void data(byte[] b, int off, int len, boolean ext) {
+    long received = System.nanoTime();
+    Session session = channel.session;
+    if (session != null) {
+      session.recordDataReceived(channel, len);
+    }
+    if (!isDraining()) {
+      // nobody else is delivering, and only this thread could start doing so
+      boolean offered;
+      try {
+        offered = channel.offer(b, off, len, ext);
+      } catch (Exception e) {
+        channel.disconnect();
+        return;
+      }
+      if (offered) {
+        delivered(received, len);
+        return;
+      }
+    }
+    byte[] data = Arrays.copyOfRange(b, off, off + len);
+    enqueue(new Entry(ext ? EXTENDED_DATA : DATA, data, received));
+  }
+
+  /** Called by the session thread for SSH_MSG_CHANNEL_EOF. */
+  void eof() {
+    if (isDraining()) {
+      enqueue(new Entry(EOF, null, 0L));
+    } else {
+      channel.eof_remote();
+    }
+  }
+
+  /** Called by the session thread for SSH_MSG_CHANNEL_CLOSE. */
+  void close() {
+    if (isDraining()) {
+      enqueue(new Entry(CLOSE, null, 0L));
+    } else {
+      channel.disconnect();
+    }
+  }
+
+  /** Drops whatever has not been delivered yet, once the channel has been disconnected. */
+  void clear() {
+    lock.lock();
+    try {
+      closed = true;
+      queue.clear();
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  int queued() {
+    lock.lock();
+    try {
+      int n = 0;
+      for (Entry entry : queue) {
+        if (entry.data != null) {
+          n += entry.data.length;
+        }
+      }
+      return n;
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  private boolean isDraining() {
+    lock.lock();
+    try {
+      return draining;
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  private void enqueue(Entry entry) {
+    lock.lock();
+    try {
+      if (closed) {
+        return;
+      }
+      queue.add(entry);
+      if (draining) {
+        return;
+      }
+      draining = true;
+    } finally {
+      lock.unlock();
+    }
+    try {
+      channel.getSession().getInboundExecutor().execute(this::drain);
+    } catch (Exception e) {
+      channel.disconnect();
+    }
+  }
+
+  private void drain() {
+    while (true) {
+      Entry entry;
+      lock.lock();
+      try {
+        entry = queue.poll();
+        if (entry == null) {
+          draining = false;
+          return;
+        }
+      } finally {
+        lock.unlock();
+      }
+      deliver(entry);
+    }
+  }
+
+  private void deliver(Entry entry) {
+    switch (entry.type) {
+      case DATA:
+      case EXTENDED_DATA:
+        try {
+          if (entry.type == DATA) {
+            channel.write(entry.data, 0, entry.data.length);
+          } else {
+            channel.write_ext(entry.data, 0, entry.data.length);
+          }
+        } catch (Exception e) {
+          channel.disconnect();
+          return;
+        }
+        delivered(entry.received, entry.data.length);
+        break;
+      case EOF:
+        channel.eof_remote();
+        break;
+      default:
+        channel.disconnect();
+        break;
+    }
+  }
+
+  private void delivered(long received, int len) {
+    Session session = channel.session;
+    if (session != null) {
+      session.recordDataDelivered(channel, System.nanoTime() - received);
+    }
+    channel.dataDelivered(len);
+  }
+
+  private static class Entry {
+    final int type;
+    final byte[] data;
+    final long received;
+
+    Entry(int type, byte[] data, long received) {
+      this.type = type;
+      this.data = data;
+      this.received = received;
+    }
+  }
+}
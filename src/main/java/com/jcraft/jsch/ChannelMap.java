@@ -0,0 +1,128 @@
+package com.jcraft.jsch;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * The channels of a {@link Session} by their local channel id.
+ *
+ * <p>
+ * The session thread looks up a channel for almost every packet it receives, so {@link #get(int)}
+ * takes no lock: the channels are kept in an open addressing table, keyed by {@link Channel#id},
+ * which is only changed while holding the monitor of this map and republished through a volatile
+ * field afterwards. Removed channels leave a marker behind, so that lookups of other channels do
+ * not stop early; the markers are dropped when the table is rebuilt.
+ */
+class ChannelMap {
+  private static final int MIN_CAPACITY = 16;
+  private static final Object REMOVED = new Object();
+
+  private volatile Object[] table = new Object[MIN_CAPACITY];
+  private int size = 0;
+  private int used = 0;
+
+  Channel get(int id) {
+    Object[] t = table;
+    int mask = t.length - 1;
+    for (int i = hash(id) & mask;; i = (i + 1) & mask) {
+      Object o = t[i];
+      if (o == null) {
+        return null;
+      }
+      if (o != REMOVED && ((Channel) o).id == id) {
+        return (Channel) o;
+      }
+    }
+  }
+
+  synchronized void put(Channel channel) {
+    if ((used + 1) * 4 > table.length * 3) {
+      rebuild(Math.max(MIN_CAPACITY, Integer.highestOneBit((size + 1) * 4)));
+    }
+    Object[] t = table;
+    int mask = t.length - 1;
+    int free = -1;
+    for (int i = hash(channel.id) & mask;; i = (i + 1) & mask) {
+      Object o = t[i];
+      if (o == null) {
+        if (free == -1) {
+          free = i;
+          used++;
+        }
+        break;
+      }
+      if (o == REMOVED) {
+        if (free == -1) {
+          free = i;
+        }
+      } else if (((Channel) o).id == channel.id) {
+        t[i] = channel;
+        table = t;
+        return;
+      }
+    }
+    t[free] = channel;
+    size++;
+    table = t;
+  }
+
+  synchronized boolean remove(Channel channel) {
+    Object[] t = table;
+    int mask = t.length - 1;
+    for (int i = hash(channel.id) & mask;; i = (i + 1) & mask) {
+      Object o = t[i];
+      if (o == null) {
+        return false;
+      }
+      if (o == channel) {
+        t[i] = REMOVED;
+        size--;
+        table = t;
+        return true;
+      }
+    }
+  }
+
+  synchronized List<Channel> values() {
+    List<Channel> values = new ArrayList<>(size);
+    for (Object o : table) {
+      if (o != null && o != REMOVED) {
+        values.add((Channel) o);
+      }
+    }
+    return values;
+  }
+
+  synchronized int size() {
+    return size;
+  }
+
+  synchronized void clear() {
+    table = new Object[MIN_CAPACITY];
+    size = 0;
+    used = 0;
+  }
+
+  // must be called with the monitor held
+  private void rebuild(int capacity) {
+    Object[] t = new Object[capacity];
+    int mask = capacity - 1;
+    for (Object o : table) {
+      if (o != null && o != REMOVED) {
+        int i = hash(((Channel) o).id) & mask;
+        while (t[i] != null) {
+          i = (i + 1) & mask;
+        }
+        t[i] = o;
+      }
+    }
+    used = size;
+    table = t;
+  }
+
+  // channel ids are handed out in sequence, spread them over the table
+  private static int hash(int id) {
+    int h = id * 0x9e3779b9;
+    return h ^ (h >>> 16);
+  }
+}
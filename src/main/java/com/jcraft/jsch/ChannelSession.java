@@ -26,8 +26,11 @@
 
 package com.jcraft.jsch;
 
+import java.util.ArrayList;
 import java.util.Enumeration;
 import java.util.Hashtable;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
 
 class ChannelSession extends Channel {
   private static byte[] _session = Util.str2byte("session");
@@ -183,15 +186,21 @@ class ChannelSession extends Channel {
 
   protected void sendRequests() throws Exception {
     Session _session = getSession();
+    // send all requests first, then wait for their replies, which arrive in the same order
+    List<CompletableFuture<Void>> replies = new ArrayList<>();
     Request request;
     if (agent_forwarding) {
       request = new RequestAgentForwarding();
+      request.setPipelined(true);
       request.request(_session, this);
+      replies.add(request.getReplyFuture());
     }
 
     if (xforwading) {
       request = new RequestX11();
+      request.setPipelined(true);
       request.request(_session, this);
+      replies.add(request.getReplyFuture());
     }
 
     if (pty) {
@@ -201,7 +210,9 @@ class ChannelSession extends Channel {
       if (terminal_mode != null) {
         ((RequestPtyReq) request).setTerminalMode(terminal_mode);
       }
+      request.setPipelined(true);
       request.request(_session, this);
+      replies.add(request.getReplyFuture());
     }
 
     if (env != null) {
@@ -210,9 +221,20 @@ class ChannelSession extends Channel {
         byte[] value = env.get(name);
         request = new RequestEnv();
         ((RequestEnv) request).setEnv(toByteArray(name), toByteArray(value));
+        request.setPipelined(true);
         request.request(_session, this);
+        replies.add(request.getReplyFuture());
       }
     }
+
+    long deadline = System.currentTimeMillis() + connectTimeout;
+    for (CompletableFuture<Void> reply : replies) {
+      long timeout = 0L;
+      if (connectTimeout > 0) {
+        timeout = Math.max(1L, deadline - System.currentTimeMillis());
+      }
+      Request.awaitReply(reply, timeout);
+    }
   }
 
   private byte[] toByteArray(Object o) {
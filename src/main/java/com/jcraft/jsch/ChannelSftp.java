@@ -32,10 +32,9 @@ import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
-import java.io.PipedInputStream;
-import java.io.PipedOutputStream;
 import java.nio.charset.Charset;
 import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
 import java.util.Hashtable;
 import java.util.Vector;
 
@@ -123,6 +122,8 @@ public class ChannelSftp extends ChannelSession {
   private boolean interactive = false;
   private int seq = 1;
   private int[] ackid = new int[1];
+  // requests recorded by JfrEvents, by id; null until one has been recorded
+  private HashMap<Integer, TracedRequest> traced_requests = null;
 
   private Buffer buf;
   private Packet packet;
@@ -212,9 +213,8 @@ public class ChannelSftp extends ChannelSession {
   public void start() throws JSchException {
     try {
 
-      PipedOutputStream pos = new PipedOutputStream();
-      io.setOutputStream(pos);
-      PipedInputStream pis = new MyPipedInputStream(pos, rq.size() * rmpsize);
+      RingBufferInputStream pis = new RingBufferInputStream(rq.size() * rmpsize);
+      io.setOutputStream(pis.getOutputStream());
       io.setInputStream(pis);
 
       io_in = io.in;
@@ -322,8 +322,6 @@ public class ChannelSftp extends ChannelSession {
 
   public void cd(String path) throws SftpException {
     try {
-      ((MyPipedInputStream) io_in).updateReadSide();
-
       path = remoteAbsolutePath(path);
       path = isUnique(path);
 
@@ -370,8 +368,6 @@ public class ChannelSftp extends ChannelSession {
       throws SftpException {
 
     try {
-      ((MyPipedInputStream) io_in).updateReadSide();
-
       src = localAbsolutePath(src);
       dst = remoteAbsolutePath(dst);
 
@@ -484,8 +480,6 @@ public class ChannelSftp extends ChannelSession {
   public void put(InputStream src, String dst, SftpProgressMonitor monitor, int mode)
       throws SftpException {
     try {
-      ((MyPipedInputStream) io_in).updateReadSide();
-
       dst = remoteAbsolutePath(dst);
 
       Vector<String> v = glob_remote(dst);
@@ -521,8 +515,6 @@ public class ChannelSftp extends ChannelSession {
   public void _put(InputStream src, String dst, SftpProgressMonitor monitor, int mode)
       throws SftpException {
     try {
-      ((MyPipedInputStream) io_in).updateReadSide();
-
       byte[] dstb = Util.str2byte(dst, fEncoding);
       long skip = 0;
       if (mode == RESUME || mode == APPEND) {
@@ -667,8 +659,6 @@ public class ChannelSftp extends ChannelSession {
   public OutputStream put(String dst, final SftpProgressMonitor monitor, final int mode,
       long offset) throws SftpException {
     try {
-      ((MyPipedInputStream) io_in).updateReadSide();
-
       dst = remoteAbsolutePath(dst);
       dst = isUnique(dst);
 
@@ -853,8 +843,6 @@ public class ChannelSftp extends ChannelSession {
     boolean _dstExist = false;
     String _dst = null;
     try {
-      ((MyPipedInputStream) io_in).updateReadSide();
-
       src = remoteAbsolutePath(src);
       dst = localAbsolutePath(dst);
 
@@ -956,8 +944,6 @@ public class ChannelSftp extends ChannelSession {
       throws SftpException {
     // System.err.println("get: "+src+", "+dst);
     try {
-      ((MyPipedInputStream) io_in).updateReadSide();
-
       src = remoteAbsolutePath(src);
       src = isUnique(src);
 
@@ -1253,8 +1239,6 @@ public class ChannelSftp extends ChannelSession {
       throws SftpException {
 
     try {
-      ((MyPipedInputStream) io_in).updateReadSide();
-
       src = remoteAbsolutePath(src);
       src = isUnique(src);
 
@@ -1527,8 +1511,6 @@ public class ChannelSftp extends ChannelSession {
   public void ls(String path, LsEntrySelector selector) throws SftpException {
     // System.out.println("ls: "+path);
     try {
-      ((MyPipedInputStream) io_in).updateReadSide();
-
       path = remoteAbsolutePath(path);
       byte[] pattern = null;
       Vector<LsEntry> v = new Vector<>();
@@ -1693,8 +1675,6 @@ public class ChannelSftp extends ChannelSession {
             "The remote sshd is too old to support symlink operation.");
       }
 
-      ((MyPipedInputStream) io_in).updateReadSide();
-
       path = remoteAbsolutePath(path);
 
       path = isUnique(path);
@@ -1741,8 +1721,6 @@ public class ChannelSftp extends ChannelSession {
     }
 
     try {
-      ((MyPipedInputStream) io_in).updateReadSide();
-
       String _oldpath = remoteAbsolutePath(oldpath);
       newpath = remoteAbsolutePath(newpath);
 
@@ -1789,8 +1767,6 @@ public class ChannelSftp extends ChannelSession {
     }
 
     try {
-      ((MyPipedInputStream) io_in).updateReadSide();
-
       String _oldpath = remoteAbsolutePath(oldpath);
       newpath = remoteAbsolutePath(newpath);
 
@@ -1838,8 +1814,6 @@ public class ChannelSftp extends ChannelSession {
     }
 
     try {
-      ((MyPipedInputStream) io_in).updateReadSide();
-
       oldpath = remoteAbsolutePath(oldpath);
       newpath = remoteAbsolutePath(newpath);
 
@@ -1884,8 +1858,6 @@ public class ChannelSftp extends ChannelSession {
 
   public void rm(String path) throws SftpException {
     try {
-      ((MyPipedInputStream) io_in).updateReadSide();
-
       path = remoteAbsolutePath(path);
 
       Vector<String> v = glob_remote(path);
@@ -1941,8 +1913,6 @@ public class ChannelSftp extends ChannelSession {
 
   public void chgrp(int gid, String path) throws SftpException {
     try {
-      ((MyPipedInputStream) io_in).updateReadSide();
-
       path = remoteAbsolutePath(path);
 
       Vector<String> v = glob_remote(path);
@@ -1965,8 +1935,6 @@ public class ChannelSftp extends ChannelSession {
 
   public void chown(int uid, String path) throws SftpException {
     try {
-      ((MyPipedInputStream) io_in).updateReadSide();
-
       path = remoteAbsolutePath(path);
 
       Vector<String> v = glob_remote(path);
@@ -1989,8 +1957,6 @@ public class ChannelSftp extends ChannelSession {
 
   public void chmod(int permissions, String path) throws SftpException {
     try {
-      ((MyPipedInputStream) io_in).updateReadSide();
-
       path = remoteAbsolutePath(path);
 
       Vector<String> v = glob_remote(path);
@@ -2013,8 +1979,6 @@ public class ChannelSftp extends ChannelSession {
 
   public void setMtime(String path, int mtime) throws SftpException {
     try {
-      ((MyPipedInputStream) io_in).updateReadSide();
-
       path = remoteAbsolutePath(path);
 
       Vector<String> v = glob_remote(path);
@@ -2037,8 +2001,6 @@ public class ChannelSftp extends ChannelSession {
 
   public void rmdir(String path) throws SftpException {
     try {
-      ((MyPipedInputStream) io_in).updateReadSide();
-
       path = remoteAbsolutePath(path);
 
       Vector<String> v = glob_remote(path);
@@ -2074,8 +2036,6 @@ public class ChannelSftp extends ChannelSession {
 
   public void mkdir(String path) throws SftpException {
     try {
-      ((MyPipedInputStream) io_in).updateReadSide();
-
       path = remoteAbsolutePath(path);
 
       sendMKDIR(Util.str2byte(path, fEncoding), null);
@@ -2104,8 +2064,6 @@ public class ChannelSftp extends ChannelSession {
 
   public SftpATTRS stat(String path) throws SftpException {
     try {
-      ((MyPipedInputStream) io_in).updateReadSide();
-
       path = remoteAbsolutePath(path);
       path = isUnique(path);
 
@@ -2153,8 +2111,6 @@ public class ChannelSftp extends ChannelSession {
 
   public SftpStatVFS statVFS(String path) throws SftpException {
     try {
-      ((MyPipedInputStream) io_in).updateReadSide();
-
       path = remoteAbsolutePath(path);
       path = isUnique(path);
 
@@ -2207,8 +2163,6 @@ public class ChannelSftp extends ChannelSession {
 
   public SftpATTRS lstat(String path) throws SftpException {
     try {
-      ((MyPipedInputStream) io_in).updateReadSide();
-
       path = remoteAbsolutePath(path);
       path = isUnique(path);
 
@@ -2280,8 +2234,6 @@ public class ChannelSftp extends ChannelSession {
 
   public void setStat(String path, SftpATTRS attr) throws SftpException {
     try {
-      ((MyPipedInputStream) io_in).updateReadSide();
-
       path = remoteAbsolutePath(path);
 
       Vector<String> v = glob_remote(path);
@@ -2337,8 +2289,6 @@ public class ChannelSftp extends ChannelSession {
   public String getHome() throws SftpException {
     if (home == null) {
       try {
-        ((MyPipedInputStream) io_in).updateReadSide();
-
         byte[] _home = _realpath("");
         home = Util.byte2str(_home, fEncoding);
       } catch (Exception e) {
@@ -2596,6 +2546,16 @@ public class ChannelSftp extends ChannelSession {
     buf.putInt(length + 4);
     buf.putInt(length);
     buf.putByte(type);
+    if (type != SSH_FXP_INIT) {
+      // the id of the request follows
+      Object event = JfrEvents.beginSftpRequest();
+      if (event != null) {
+        if (traced_requests == null) {
+          traced_requests = new HashMap<>();
+        }
+        traced_requests.put(seq, new TracedRequest(event, type, length));
+      }
+    }
   }
 
   private void putHEAD(byte type, int length) throws Exception {
@@ -2963,9 +2923,28 @@ public class ChannelSftp extends ChannelSession {
     header.length = buf.getInt() - 5;
     header.type = buf.getByte() & 0xff;
     header.rid = buf.getInt();
+    if (traced_requests != null && header.type != SSH_FXP_VERSION) {
+      TracedRequest request = traced_requests.remove(header.rid);
+      if (request != null) {
+        JfrEvents.endSftpRequest(request.event, this, request.type, request.length,
+            header.length);
+      }
+    }
     return header;
   }
 
+  private static class TracedRequest {
+    final Object event;
+    final int type;
+    final int length;
+
+    TracedRequest(Object event, int type, int length) {
+      this.event = event;
+      this.type = type;
+      this.length = length;
+    }
+  }
+
   private String remoteAbsolutePath(String path) throws SftpException {
     if (path.charAt(0) == '/')
       return path;
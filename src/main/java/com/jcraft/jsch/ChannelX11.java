@@ -183,6 +183,12 @@ class ChannelX11 extends Channel {
     return cache;
   }
 
+  @Override
+  boolean offer(byte[] foo, int s, int l, boolean ext) {
+    // write() may block, so leave it to ChannelInbound
+    return false;
+  }
+
   @Override
   void write(byte[] foo, int s, int l) throws IOException {
     // if(eof_local)return;
@@ -58,8 +58,7 @@ abstract class DHECN extends KeyExchange {
     this.I_C = I_C;
 
     try {
-      Class<? extends HASH> c = Class.forName(session.getConfig(sha_name)).asSubclass(HASH.class);
-      sha = c.getDeclaredConstructor().newInstance();
+      sha = AlgorithmFactory.create(session.getConfig(sha_name), HASH.class);
       sha.init();
     } catch (Exception e) {
       throw new JSchException(e.toString(), e);
@@ -72,9 +71,7 @@ abstract class DHECN extends KeyExchange {
     buf.putByte((byte) SSH_MSG_KEX_ECDH_INIT);
 
     try {
-      Class<? extends ECDH> c =
-          Class.forName(session.getConfig("ecdh-sha2-nistp")).asSubclass(ECDH.class);
-      ecdh = c.getDeclaredConstructor().newInstance();
+      ecdh = AlgorithmFactory.create(session.getConfig("ecdh-sha2-nistp"), ECDH.class);
       ecdh.init(key_size);
 
       Q_C = ecdh.getQ();
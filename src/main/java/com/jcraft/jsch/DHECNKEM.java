@@ -63,8 +63,7 @@ abstract class DHECNKEM extends KeyExchange {
     this.I_C = I_C;
 
     try {
-      Class<? extends HASH> c = Class.forName(session.getConfig(sha_name)).asSubclass(HASH.class);
-      sha = c.getDeclaredConstructor().newInstance();
+      sha = AlgorithmFactory.create(session.getConfig(sha_name), HASH.class);
       sha.init();
     } catch (Exception e) {
       throw new JSchException(e.toString(), e);
@@ -79,13 +78,10 @@ abstract class DHECNKEM extends KeyExchange {
     buf.putByte((byte) SSH_MSG_KEX_HYBRID_INIT);
 
     try {
-      Class<? extends KEM> k = Class.forName(session.getConfig(kem_name)).asSubclass(KEM.class);
-      kem = k.getDeclaredConstructor().newInstance();
+      kem = AlgorithmFactory.create(session.getConfig(kem_name), KEM.class);
       kem.init();
 
-      Class<? extends ECDH> c =
-          Class.forName(session.getConfig("ecdh-sha2-nistp")).asSubclass(ECDH.class);
-      ecdh = c.getDeclaredConstructor().newInstance();
+      ecdh = AlgorithmFactory.create(session.getConfig("ecdh-sha2-nistp"), ECDH.class);
       ecdh.init(ecdh_key_size);
 
       byte[] kem_public_key_C = kem.getPublicKey();
@@ -66,8 +66,7 @@ abstract class DHGEX extends KeyExchange {
     this.I_C = I_C;
 
     try {
-      Class<? extends HASH> c = Class.forName(session.getConfig(hash)).asSubclass(HASH.class);
-      sha = c.getDeclaredConstructor().newInstance();
+      sha = AlgorithmFactory.create(session.getConfig(hash), HASH.class);
       sha.init();
     } catch (Exception e) {
       throw new JSchException(e.toString(), e);
@@ -77,7 +76,6 @@ abstract class DHGEX extends KeyExchange {
     packet = new Packet(buf);
 
     try {
-      Class<? extends DH> c = Class.forName(session.getConfig("dh")).asSubclass(DH.class);
       min = Integer.parseInt(session.getConfig("dhgex_min"));
       max = Integer.parseInt(session.getConfig("dhgex_max"));
       preferred = Integer.parseInt(session.getConfig("dhgex_preferred"));
@@ -85,7 +83,7 @@ abstract class DHGEX extends KeyExchange {
         throw new JSchException(
             "Invalid DHGEX sizes: min=" + min + " max=" + max + " preferred=" + preferred);
       }
-      dh = c.getDeclaredConstructor().newInstance();
+      dh = AlgorithmFactory.create(session.getConfig("dh"), DH.class);
       dh.init();
     } catch (Exception e) {
       throw new JSchException(e.toString(), e);
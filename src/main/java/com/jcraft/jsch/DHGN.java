@@ -60,8 +60,7 @@ abstract class DHGN extends KeyExchange {
     this.I_C = I_C;
 
     try {
-      Class<? extends HASH> c = Class.forName(session.getConfig(sha_name())).asSubclass(HASH.class);
-      sha = c.getDeclaredConstructor().newInstance();
+      sha = AlgorithmFactory.create(session.getConfig(sha_name()), HASH.class);
       sha.init();
     } catch (Exception e) {
       throw new JSchException(e.toString(), e);
@@ -71,8 +70,7 @@ abstract class DHGN extends KeyExchange {
     packet = new Packet(buf);
 
     try {
-      Class<? extends DH> c = Class.forName(session.getConfig("dh")).asSubclass(DH.class);
-      dh = c.getDeclaredConstructor().newInstance();
+      dh = AlgorithmFactory.create(session.getConfig("dh"), DH.class);
       dh.init();
     } catch (Exception e) {
       throw new JSchException(e.toString(), e);
@@ -59,8 +59,7 @@ abstract class DHXEC extends KeyExchange {
     this.I_C = I_C;
 
     try {
-      Class<? extends HASH> c = Class.forName(session.getConfig(sha_name)).asSubclass(HASH.class);
-      sha = c.getDeclaredConstructor().newInstance();
+      sha = AlgorithmFactory.create(session.getConfig(sha_name), HASH.class);
       sha.init();
     } catch (Exception e) {
       throw new JSchException(e.toString(), e);
@@ -73,8 +72,7 @@ abstract class DHXEC extends KeyExchange {
     buf.putByte((byte) SSH_MSG_KEX_ECDH_INIT);
 
     try {
-      Class<? extends XDH> c = Class.forName(session.getConfig("xdh")).asSubclass(XDH.class);
-      xdh = c.getDeclaredConstructor().newInstance();
+      xdh = AlgorithmFactory.create(session.getConfig("xdh"), XDH.class);
       xdh.init(curve_name, key_len);
 
       Q_C = xdh.getQ();
@@ -63,8 +63,7 @@ abstract class DHXECKEM extends KeyExchange {
     this.I_C = I_C;
 
     try {
-      Class<? extends HASH> c = Class.forName(session.getConfig(sha_name)).asSubclass(HASH.class);
-      sha = c.getDeclaredConstructor().newInstance();
+      sha = AlgorithmFactory.create(session.getConfig(sha_name), HASH.class);
       sha.init();
     } catch (Exception e) {
       throw new JSchException(e.toString(), e);
@@ -79,12 +78,10 @@ abstract class DHXECKEM extends KeyExchange {
     buf.putByte((byte) SSH_MSG_KEX_ECDH_INIT);
 
     try {
-      Class<? extends KEM> k = Class.forName(session.getConfig(kem_name)).asSubclass(KEM.class);
-      kem = k.getDeclaredConstructor().newInstance();
+      kem = AlgorithmFactory.create(session.getConfig(kem_name), KEM.class);
       kem.init();
 
-      Class<? extends XDH> c = Class.forName(session.getConfig("xdh")).asSubclass(XDH.class);
-      xdh = c.getDeclaredConstructor().newInstance();
+      xdh = AlgorithmFactory.create(session.getConfig("xdh"), XDH.class);
       xdh.init(curve_name, xec_key_len);
 
       byte[] kem_public_key_C = kem.getPublicKey();
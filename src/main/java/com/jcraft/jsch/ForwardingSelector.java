@@ -0,0 +1,615 @@
+package com.jcraft.jsch;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.nio.ByteBuffer;
+import java.nio.channels.CancelledKeyException;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Services the port forwardings of a {@link Session} on a single thread, enabled with the
+ * {@code use_nio_forwarding} config.
+ *
+ * <p>
+ * The listening sockets of local forwardings, the connections they accept and the connections made
+ * for remote forwardings are all registered with one {@link Selector}.
+ * Data read from a connection is sent as SSH_MSG_CHANNEL_DATA as long as the remote window allows;
+ * once it is used up, the connection is not read from until SSH_MSG_CHANNEL_WINDOW_ADJUST arrives.
+ * This thread never waits for a key exchange: while one is in progress, the connections are not
+ * read from, and the messages this thread would send, like the SSH_MSG_CHANNEL_OPEN of an accepted
+ * connection, are held back until it has ended.
+ * Data received for a channel is written to its connection by the session thread as far as the
+ * socket takes it, and the rest is left to this thread; the session thread only waits if more than
+ * a window of data is pending, which is where a blocking socket would have made it wait anyway.
+ * Connections to the targets of remote forwardings are made without blocking as well, and the
+ * channel is only confirmed once the connection has been established.
+ */
+class ForwardingSelector {
+  private final Session session;
+  private final Selector selector;
+  private final ConcurrentLinkedQueue<Runnable> tasks = new ConcurrentLinkedQueue<>();
+  private volatile boolean closed = false;
+
+  // used by the selector thread only
+  private Buffer buf = new Buffer(0);
+  private final Packet packet = new Packet(buf);
+  private final List<Link> connecting = new ArrayList<>();
+  private final List<Link> kex_paused = new ArrayList<>();
+  // tasks which send messages, held back until the key exchange in progress has ended
+  private final ArrayDeque<Runnable> kex_deferred = new ArrayDeque<>();
+
+  private ForwardingSelector(Session session, Selector selector) {
+    this.session = session;
+    this.selector = selector;
+  }
+
+  static ForwardingSelector open(Session session) throws IOException {
+    ForwardingSelector fs = new ForwardingSelector(session, Selector.open());
+    Thread thread = session.getThreadFactory().newThread(fs::run);
+    thread.setName("Forwarding thread " + session.getHost() + " session");
+    if (session.daemon_thread) {
+      thread.setDaemon(session.daemon_thread);
+    }
+    thread.start();
+    return fs;
+  }
+
+  /** Starts accepting connections on the server socket channel of the given port watcher. */
+  void register(PortWatcher pw) {
+    execute(() -> {
+      try {
+        ServerSocketChannel ssc = pw.ss.getChannel();
+        ssc.configureBlocking(false);
+        ssc.register(selector, SelectionKey.OP_ACCEPT, pw);
+      } catch (IOException e) {
+        pw.delete();
+      }
+    });
+  }
+
+  /**
+   * Called by the session once a key exchange has ended, sends what has been held back and resumes
+   * reading from the connections.
+   */
+  void kexDone() {
+    execute(this::kexEnded);
+  }
+
+  /** Makes the selector pick up port watchers which have been closed in the meantime. */
+  void wakeup() {
+    selector.wakeup();
+  }
+
+  void close() {
+    closed = true;
+    selector.wakeup();
+  }
+
+  /**
+   * Connects a forwarded-tcpip channel to the target of its remote forwarding, and confirms or
+   * rejects the channel once the connection has been established or has failed.
+   *
+   * @param timeout connect timeout in milliseconds
+   */
+  void connect(ChannelForwardedTCPIP channel, String host, int port, int timeout) {
+    execute(() -> {
+      SocketChannel sc = null;
+      try {
+        sc = SocketChannel.open();
+        sc.configureBlocking(false);
+        sc.socket().setTcpNoDelay(true);
+        Link link = new Link(sc, channel);
+        channel.link = link;
+        if (sc.connect(new InetSocketAddress(host, port))) {
+          send(link::connected);
+        } else {
+          link.deadline = System.currentTimeMillis() + timeout;
+          link.key = sc.register(selector, SelectionKey.OP_CONNECT, link);
+          connecting.add(link);
+        }
+      } catch (Exception e) {
+        if (sc != null) {
+          try {
+            sc.close();
+          } catch (IOException ee) {
+          }
+        }
+        send(channel::connectFailed);
+      }
+    });
+  }
+
+  private void execute(Runnable task) {
+    tasks.add(task);
+    selector.wakeup();
+  }
+
+  private void run() {
+    try {
+      while (!closed) {
+        selector.select(expireConnects());
+        Runnable task;
+        while ((task = tasks.poll()) != null) {
+          runTask(task);
+        }
+        Iterator<SelectionKey> keys = selector.selectedKeys().iterator();
+        while (keys.hasNext()) {
+          SelectionKey key = keys.next();
+          keys.remove();
+          try {
+            select(key);
+          } catch (CancelledKeyException e) {
+            // the link has been closed by another thread in the meantime
+          } catch (Exception e) {
+            log("Forwarding failed: " + e, e);
+            key.cancel();
+            if (key.attachment() instanceof Link) {
+              send(((Link) key.attachment()).channel::disconnect);
+            }
+          }
+        }
+      }
+    } catch (Exception e) {
+      log("Forwarding selector failed: " + e, e);
+    }
+    for (SelectionKey key : selector.keys()) {
+      if (key.attachment() instanceof PortWatcher) {
+        ((PortWatcher) key.attachment()).delete();
+      } else if (key.attachment() instanceof Link) {
+        ((Link) key.attachment()).channel.disconnect();
+      }
+    }
+    try {
+      selector.close();
+    } catch (IOException e) {
+    }
+  }
+
+  // selector thread
+  private void select(SelectionKey key) {
+    if (!key.isValid()) {
+      return;
+    }
+    if (key.attachment() instanceof PortWatcher) {
+      accept((PortWatcher) key.attachment(), (ServerSocketChannel) key.channel());
+      return;
+    }
+    Link link = (Link) key.attachment();
+    if (key.isConnectable()) {
+      link.finishConnect();
+      return;
+    }
+    if (key.isWritable()) {
+      link.writeSocket();
+    }
+    if (key.isValid() && key.isReadable()) {
+      link.readSocket();
+    }
+  }
+
+  // selector thread
+  private void runTask(Runnable task) {
+    try {
+      task.run();
+    } catch (CancelledKeyException e) {
+      // the link has been closed by another thread in the meantime
+    } catch (Exception e) {
+      log("Forwarding task failed: " + e, e);
+    }
+  }
+
+  // selector thread; runs a task which sends messages to the server right away, unless a key
+  // exchange is in progress or tasks are still held back from the last one
+  private void send(Runnable task) {
+    if (!kex_deferred.isEmpty() || !session.runUnlessInKex(() -> runTask(task))) {
+      kex_deferred.add(task);
+    }
+  }
+
+  // selector thread
+  private void kexEnded() {
+    while (!kex_deferred.isEmpty()) {
+      Runnable task = kex_deferred.peek();
+      if (!session.runUnlessInKex(() -> runTask(task))) {
+        // the next key exchange has started already
+        return;
+      }
+      kex_deferred.poll();
+    }
+    for (Link link : kex_paused) {
+      link.setInterest(SelectionKey.OP_READ, true);
+    }
+    kex_paused.clear();
+  }
+
+  private void log(String message, Exception e) {
+    if (closed) {
+      return;
+    }
+    if (session.getLogger().isEnabled(Logger.ERROR)) {
+      session.getLogger().log(Logger.ERROR, message, e);
+    }
+  }
+
+  // fails the connects which have timed out, and returns how long to wait for the next one
+  private long expireConnects() {
+    long now = System.currentTimeMillis();
+    long next = 0L;
+    for (Iterator<Link> i = connecting.iterator(); i.hasNext();) {
+      Link link = i.next();
+      long remaining = link.deadline - now;
+      if (remaining <= 0L) {
+        i.remove();
+        link.close();
+        send(((ChannelForwardedTCPIP) link.channel)::connectFailed);
+      } else if (next == 0L || remaining < next) {
+        next = remaining;
+      }
+    }
+    return next;
+  }
+
+  private void accept(PortWatcher pw, ServerSocketChannel ssc) {
+    SocketChannel sc;
+    try {
+      sc = ssc.accept();
+      if (sc == null) {
+        return;
+      }
+    } catch (IOException e) {
+      pw.delete();
+      return;
+    }
+    try {
+      Socket socket = sc.socket();
+      socket.setTcpNoDelay(true);
+      sc.configureBlocking(false);
+      ChannelDirectTCPIP channel = pw.openChannel(socket);
+      if (channel == null) {
+        return;
+      }
+      Link link = new Link(sc, channel);
+      channel.link = link;
+      channel.setOutputStream(link.out);
+      send(() -> channel.connectAsync(pw.connectTimeout));
+    } catch (Exception e) {
+      try {
+        sc.close();
+      } catch (IOException ee) {
+      }
+    }
+  }
+
+  /** A forwarded connection and its channel. */
+  class Link {
+    private final SocketChannel socket;
+    final Channel channel;
+    private SelectionKey key;
+    private long deadline;
+
+    // data received for the channel, guarded by pending_lock
+    private final ReentrantLock pending_lock = new ReentrantLock();
+    private final Condition drained = pending_lock.newCondition();
+    private final ArrayDeque<ByteBuffer> pending = new ArrayDeque<>();
+    private int pending_bytes = 0;
+    private boolean output_closed = false;
+    private boolean closed = false;
+
+    // set by the selector thread while the remote window is used up
+    private volatile boolean window_exhausted = false;
+
+    final OutputStream out = new Output();
+
+    Link(SocketChannel socket, Channel channel) {
+      this.socket = socket;
+      this.channel = channel;
+    }
+
+    /** Called once the channel has been opened, starts reading from the connection. */
+    void start() {
+      execute(this::enable);
+    }
+
+    // selector thread
+    private void enable() {
+      pending_lock.lock();
+      try {
+        if (closed) {
+          return;
+        }
+        int ops = SelectionKey.OP_READ;
+        if (!pending.isEmpty()) {
+          ops |= SelectionKey.OP_WRITE;
+        }
+        if (key == null) {
+          key = socket.register(selector, ops, this);
+        } else {
+          key.interestOps(ops);
+        }
+      } catch (IOException e) {
+        send(channel::disconnect);
+      } finally {
+        pending_lock.unlock();
+      }
+    }
+
+    // selector thread, once the connection of a remote forwarding is ready
+    private void finishConnect() {
+      connecting.remove(this);
+      try {
+        if (!socket.finishConnect()) {
+          connecting.add(this);
+          return;
+        }
+        key.interestOps(0);
+      } catch (Exception e) {
+        close();
+        send(((ChannelForwardedTCPIP) channel)::connectFailed);
+        return;
+      }
+      send(this::connected);
+    }
+
+    // selector thread, confirms the channel of a remote forwarding once connected to its target
+    private void connected() {
+      try {
+        ((ChannelForwardedTCPIP) channel).connected(this);
+      } catch (Exception e) {
+        close();
+        ((ChannelForwardedTCPIP) channel).connectFailed();
+        return;
+      }
+      enable();
+    }
+
+    /** Called by the session thread when the remote window has been adjusted. */
+    void windowOpened() {
+      if (window_exhausted) {
+        window_exhausted = false;
+        execute(() -> setInterest(SelectionKey.OP_READ, true));
+      }
+    }
+
+    // selector thread; never waits for the key exchange or the remote window, so as not to hold up
+    // the other forwardings
+    private void readSocket() {
+      // kexEnded() only runs after a key exchange seen in progress here has ended
+      if (session.isInKex() || !kex_deferred.isEmpty()) {
+        pauseForKex();
+        return;
+      }
+      long window = channel.rwsize;
+      if (window <= 0) {
+        window_exhausted = true;
+        setInterest(SelectionKey.OP_READ, false);
+        // the window may have been adjusted right before the flag was set
+        if (channel.rwsize > 0) {
+          window_exhausted = false;
+          setInterest(SelectionKey.OP_READ, true);
+        }
+        return;
+      }
+      int size = channel.rmpsize;
+      if (buf.buffer.length < size) {
+        buf = new Buffer(size);
+        packet.buffer = buf;
+      }
+      int max = buf.buffer.length - 14 - session.getBufferMargin();
+      int len = (int) Math.min(max, window);
+      int i;
+      try {
+        i = socket.read(ByteBuffer.wrap(buf.buffer, 14, len));
+      } catch (IOException e) {
+        i = -1;
+      }
+      if (i == 0) {
+        return;
+      }
+      if (i < 0) {
+        send(() -> {
+          channel.eof();
+          channel.disconnect();
+        });
+        return;
+      }
+      int n = i;
+      if (!session.runUnlessInKex(() -> sendData(n))) {
+        // a key exchange has started since the check above
+        byte[] data = Arrays.copyOfRange(buf.buffer, 14, 14 + n);
+        kex_deferred.add(() -> {
+          System.arraycopy(data, 0, buf.buffer, 14, n);
+          sendData(n);
+        });
+        pauseForKex();
+      }
+    }
+
+    // selector thread, sends the len bytes read into buf; the window has been checked before
+    // reading, and nothing but this thread takes from it
+    private void sendData(int len) {
+      if (channel.close) {
+        return;
+      }
+      packet.reset();
+      buf.putByte((byte) Session.SSH_MSG_CHANNEL_DATA);
+      buf.putInt(channel.getRecipient());
+      buf.putInt(len);
+      buf.skip(len);
+      try {
+        session.write(packet, channel, len);
+      } catch (Exception e) {
+        channel.disconnect();
+      }
+    }
+
+    // selector thread; reads are resumed by kexEnded()
+    private void pauseForKex() {
+      setInterest(SelectionKey.OP_READ, false);
+      kex_paused.add(this);
+    }
+
+    // session thread, or the thread delivering the channel's data; if block is false, returns
+    // false instead of waiting for the pending data to drain
+    private boolean writeChannelData(byte[] b, int off, int len, boolean block)
+        throws IOException {
+      pending_lock.lock();
+      try {
+        if (closed || output_closed) {
+          throw new IOException("Socket closed");
+        }
+        if (!block && !pending.isEmpty() && pending_bytes + len > channel.lwsize_max) {
+          return false;
+        }
+        if (pending.isEmpty()) {
+          ByteBuffer bb = ByteBuffer.wrap(b, off, len);
+          socket.write(bb);
+          if (!bb.hasRemaining()) {
+            return true;
+          }
+          off = bb.position();
+          len = bb.remaining();
+        }
+        ByteBuffer copy = ByteBuffer.allocate(len);
+        copy.put(b, off, len);
+        copy.flip();
+        pending.add(copy);
+        pending_bytes += len;
+        if (pending.size() == 1) {
+          execute(() -> setInterest(SelectionKey.OP_WRITE, true));
+        }
+        while (pending_bytes > channel.lwsize_max && !closed) {
+          drained.awaitUninterruptibly();
+        }
+        if (closed) {
+          throw new InterruptedIOException("Socket closed");
+        }
+        return true;
+      } finally {
+        pending_lock.unlock();
+      }
+    }
+
+    // selector thread
+    private void writeSocket() {
+      pending_lock.lock();
+      try {
+        ByteBuffer bb;
+        while ((bb = pending.peek()) != null) {
+          pending_bytes -= socket.write(bb);
+          if (bb.hasRemaining()) {
+            break;
+          }
+          pending.poll();
+        }
+        drained.signalAll();
+        if (pending.isEmpty()) {
+          setInterest(SelectionKey.OP_WRITE, false);
+          if (output_closed) {
+            shutdownOutput();
+          }
+        }
+      } catch (IOException e) {
+        pending.clear();
+        pending_bytes = 0;
+        drained.signalAll();
+        send(channel::disconnect);
+      } finally {
+        pending_lock.unlock();
+      }
+    }
+
+    // session thread, on SSH_MSG_CHANNEL_EOF
+    private void closeOutput() {
+      pending_lock.lock();
+      try {
+        if (output_closed) {
+          return;
+        }
+        output_closed = true;
+        if (pending.isEmpty()) {
+          shutdownOutput();
+        }
+      } finally {
+        pending_lock.unlock();
+      }
+    }
+
+    private void shutdownOutput() {
+      try {
+        socket.shutdownOutput();
+      } catch (IOException e) {
+      }
+    }
+
+    /** Closes the connection, called once the channel has been disconnected. */
+    void close() {
+      pending_lock.lock();
+      try {
+        if (closed) {
+          return;
+        }
+        closed = true;
+        pending.clear();
+        pending_bytes = 0;
+        drained.signalAll();
+      } finally {
+        pending_lock.unlock();
+      }
+      try {
+        socket.close();
+      } catch (IOException e) {
+      }
+      selector.wakeup();
+    }
+
+    // selector thread
+    private void setInterest(int op, boolean on) {
+      SelectionKey k = key;
+      if (k == null || !k.isValid()) {
+        return;
+      }
+      try {
+        int ops = k.interestOps();
+        k.interestOps(on ? ops | op : ops & ~op);
+      } catch (CancelledKeyException e) {
+        // the link has been closed by another thread in the meantime
+      }
+    }
+
+    private class Output extends OutputStream implements ChannelInbound.Offerable {
+      @Override
+      public void write(int b) throws IOException {
+        write(new byte[] {(byte) b}, 0, 1);
+      }
+
+      @Override
+      public void write(byte[] b, int off, int len) throws IOException {
+        writeChannelData(b, off, len, true);
+      }
+
+      @Override
+      public boolean offer(byte[] b, int off, int len) throws IOException {
+        return writeChannelData(b, off, len, false);
+      }
+
+      @Override
+      public void close() {
+        closeOutput();
+      }
+    }
+  }
+}
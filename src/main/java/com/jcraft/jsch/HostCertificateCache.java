@@ -0,0 +1,113 @@
+package com.jcraft.jsch;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Remembers the host certificates {@link OpenSshCertificateHostKeyVerifier} has accepted, so that
+ * reconnecting to the same hosts neither verifies their CA signatures again nor looks up their CAs
+ * and revoked keys in the known hosts again.
+ *
+ * <p>
+ * Certificates are told apart by a digest of their signed data and signature, which includes the
+ * CA key. An entry is dropped once the certificate expires, at the latest after
+ * {@link #MAX_AGE_MILLIS}. The signature stays verified as long as the entry is kept; whether the
+ * CA is trusted and neither key has been revoked is only taken from the entry for the same host and
+ * {@link KnownHosts} whose <code>@cert-authority</code> and <code>@revoked</code> entries have not
+ * changed since.
+ */
+class HostCertificateCache {
+
+  private static final int MAX_ENTRIES = 256;
+  private static final long MAX_AGE_MILLIS = 60 * 60 * 1000L;
+
+  private final LinkedHashMap<String, Accepted> entries =
+      new LinkedHashMap<String, Accepted>(16, 0.75f, true) {
+        private static final long serialVersionUID = 1L;
+
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, Accepted> eldest) {
+          return size() > MAX_ENTRIES;
+        }
+      };
+
+  /** Returns the key of certificate in this cache, or null if it cannot be computed. */
+  static String keyOf(OpenSshCertificate certificate) {
+    byte[] message = certificate.getMessage();
+    byte[] signature = certificate.getSignature();
+    if (message == null || signature == null) {
+      return null;
+    }
+    try {
+      HASH sha = AlgorithmFactory.create(JSch.getConfig("sha-256"), HASH.class);
+      sha.init();
+      sha.update(message, 0, message.length);
+      sha.update(signature, 0, signature.length);
+      return Util.toHex(sha.digest());
+    } catch (Exception e) {
+      return null;
+    }
+  }
+
+  /** Whether the signature of the certificate with key has been verified. */
+  boolean isVerified(String key) {
+    return get(key) != null;
+  }
+
+  /**
+   * Whether the certificate with key has been accepted for host, with its CA trusted and neither key
+   * revoked by repository as it is now.
+   */
+  boolean isTrusted(String key, HostKeyRepository repository, String host) {
+    Accepted entry = get(key);
+    return entry != null && entry.repository == repository && repository instanceof KnownHosts
+        && entry.generation == ((KnownHosts) repository).getMarkedGeneration()
+        && host.equals(entry.host);
+  }
+
+  /** Remembers that the certificate with key has been accepted for host by repository. */
+  void put(String key, OpenSshCertificate certificate, HostKeyRepository repository,
+      String host) {
+    long now = System.currentTimeMillis();
+    long expires = now + MAX_AGE_MILLIS;
+    long validBefore = certificate.getValidBefore();
+    // valid_before is unsigned, all bits set meaning forever
+    if (Long.compareUnsigned(validBefore, expires / 1000L) < 0) {
+      expires = validBefore * 1000L;
+    }
+    long generation = repository instanceof KnownHosts
+        ? ((KnownHosts) repository).getMarkedGeneration()
+        : 0L;
+    synchronized (entries) {
+      entries.put(key, new Accepted(expires, repository, generation, host));
+    }
+  }
+
+  private Accepted get(String key) {
+    if (key == null) {
+      return null;
+    }
+    synchronized (entries) {
+      Accepted entry = entries.get(key);
+      if (entry != null && System.currentTimeMillis() >= entry.expires) {
+        entries.remove(key);
+        return null;
+      }
+      return entry;
+    }
+  }
+
+  private static class Accepted {
+    final long expires;
+    final HostKeyRepository repository;
+    final long generation;
+    final String host;
+
+    Accepted(long expires, HostKeyRepository repository, long generation, String host) {
+      this.expires = expires;
+      this.repository = repository;
+      this.generation = generation;
+      this.host = host;
+    }
+  }
+}
@@ -121,8 +121,7 @@ public class HostKey {
     HASH hash = null;
     try {
       String _c = JSch.getConfig("FingerprintHash").toLowerCase(Locale.ROOT);
-      Class<? extends HASH> c = Class.forName(JSch.getConfig(_c)).asSubclass(HASH.class);
-      hash = c.getDeclaredConstructor().newInstance();
+      hash = AlgorithmFactory.create(JSch.getConfig(_c), HASH.class);
     } catch (Exception e) {
       if (jsch.getInstanceLogger().isEnabled(Logger.ERROR)) {
         jsch.getInstanceLogger().log(Logger.ERROR, "getFingerPrint: " + e.getMessage(), e);
@@ -72,6 +72,15 @@ class IO {
     out.flush();
   }
 
+  /** Writes a packet without flushing, see {@link #flush()}. */
+  void write(Packet p) throws IOException {
+    out.write(p.buffer.buffer, 0, p.buffer.index);
+  }
+
+  void flush() throws IOException {
+    out.flush();
+  }
+
   void put(byte[] array, int begin, int length) throws IOException {
     out.write(array, begin, length);
     out.flush();
@@ -82,6 +91,27 @@ class IO {
     out_ext.flush();
   }
 
+  /**
+   * Writes like {@link #put(byte[], int, int)} if out can take the data without blocking.
+   *
+   * @return false if nothing has been written, also if there is no out
+   */
+  boolean offer(byte[] array, int begin, int length) throws IOException {
+    return offer(out, array, begin, length);
+  }
+
+  boolean offer_ext(byte[] array, int begin, int length) throws IOException {
+    return offer(out_ext, array, begin, length);
+  }
+
+  private static boolean offer(OutputStream out, byte[] array, int begin, int length)
+      throws IOException {
+    if (out instanceof ChannelInbound.Offerable) {
+      return ((ChannelInbound.Offerable) out).offer(array, begin, length);
+    }
+    return false;
+  }
+
   int getByte() throws IOException {
     return in.read();
   }
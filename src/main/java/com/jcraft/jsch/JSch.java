@@ -243,6 +243,7 @@ public class JSch {
 
     config.put("StrictHostKeyChecking", "ask");
     config.put("HashKnownHosts", "no");
+    config.put("known_hosts_fsync", Util.getSystemProperty("jsch.known_hosts_fsync", "no"));
 
     config.put("PreferredAuthentications", Util.getSystemProperty("jsch.preferred_authentications",
         "gssapi-with-mic,publickey,keyboard-interactive,password"));
@@ -255,6 +256,16 @@ public class JSch {
     config.put("enable_auth_none", Util.getSystemProperty("jsch.enable_auth_none", "yes"));
     config.put("use_sftp_write_flush_workaround",
         Util.getSystemProperty("jsch.use_sftp_write_flush_workaround", "yes"));
+    config.put("use_nio_transport", Util.getSystemProperty("jsch.use_nio_transport", "no"));
+    config.put("use_nio_forwarding", Util.getSystemProperty("jsch.use_nio_forwarding", "no"));
+    config.put("use_virtual_threads", Util.getSystemProperty("jsch.use_virtual_threads", "no"));
+    config.put("write_buffer_size", Util.getSystemProperty("jsch.write_buffer_size", "0"));
+    config.put("write_coalesce_delay", Util.getSystemProperty("jsch.write_coalesce_delay", "0"));
+    config.put("use_writer_thread", Util.getSystemProperty("jsch.use_writer_thread", "no"));
+    config.put("channel_window_autotune",
+        Util.getSystemProperty("jsch.channel_window_autotune", "no"));
+    config.put("channel_window_autotune_max",
+        Util.getSystemProperty("jsch.channel_window_autotune_max", "16777216"));
 
     config.put("CheckCiphers",
         Util.getSystemProperty("jsch.check_ciphers", "chacha20-poly1305@openssh.com"));
@@ -266,6 +277,7 @@ public class JSch {
     config.put("FingerprintHash", Util.getSystemProperty("jsch.fingerprint_hash", "sha256"));
 
     config.put("MaxAuthTries", Util.getSystemProperty("jsch.max_auth_tries", "6"));
+    config.put("RekeyLimit", Util.getSystemProperty("jsch.rekey_limit", "default none"));
     config.put("ClearAllForwardings", "no");
     /*
      * host_certificate_to_key_fallback: Controls behavior when host certificate validation fails. -
@@ -280,8 +292,12 @@ public class JSch {
 
   final InstanceLogger instLogger = new InstanceLogger();
 
+  final HostCertificateCache hostCertificateCache = new HostCertificateCache();
+
   private Vector<Session> sessionPool = new Vector<>();
 
+  private SessionPool pooledSessions = null;
+
   private IdentityRepository defaultIdentityRepository = new LocalIdentityRepository(instLogger);
 
   private IdentityRepository identityRepository = defaultIdentityRepository;
@@ -384,6 +400,21 @@ public class JSch {
     return s;
   }
 
+  /**
+   * Returns the pool of authenticated sessions of this <code>JSch</code>, which opens channels on
+   * sessions already connected rather than connecting a new session for each. Once the pool has
+   * been closed, a new one is returned.
+   *
+   * @return the session pool
+   * @see SessionPool
+   */
+  public synchronized SessionPool getSessionPool() {
+    if (pooledSessions == null || pooledSessions.isClosed()) {
+      pooledSessions = new SessionPool(this);
+    }
+    return pooledSessions;
+  }
+
   protected void addSession(Session session) {
     synchronized (sessionPool) {
       sessionPool.addElement(session);
@@ -684,6 +715,7 @@ public class JSch {
         config.put(key, newconf.get(newkey));
       }
     }
+    AlgorithmChecks.clear();
   }
 
   /**
@@ -698,6 +730,17 @@ public class JSch {
     } else {
       config.put(key, value);
     }
+    AlgorithmChecks.clear();
+  }
+
+  /**
+   * Checks which of the algorithms listed in the CheckCiphers, CheckMacs, CheckKexes and
+   * CheckSignatures configurations are available, e.g. at startup. The results are kept for the
+   * following connects, which would otherwise have to check them on first use, until the
+   * configuration or the installed security providers change.
+   */
+  public static void checkAlgorithms() throws JSchException {
+    new Session(new JSch(), null, null, 0).checkAlgorithms();
   }
 
   /**
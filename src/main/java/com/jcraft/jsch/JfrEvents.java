@@ -0,0 +1,64 @@
+package com.jcraft.jsch;
+
+/**
+ * Emits JDK Flight Recorder events. This variant is for runtimes without JFR and does nothing; the
+ * one in the java11 source set emits the events while a recording that enables them is running.
+ *
+ * <p>
+ * An event is started by one of the {@code begin} methods, which return {@code null} unless the
+ * event is enabled, and committed by the matching {@code end} method, which does nothing for
+ * {@code null}.
+ */
+final class JfrEvents {
+
+  private JfrEvents() {}
+
+  static Object beginConnectPhase() {
+    return null;
+  }
+
+  /** Ends a phase of {@link Session#connect()}: {@code socket} or {@code version exchange}. */
+  static void endConnectPhase(Object event, Session session, String phase) {}
+
+  static Object beginKex() {
+    return null;
+  }
+
+  /** Ends a key exchange, the initial one or a rekey. */
+  static void endKex(Object event, Session session, boolean initial) {}
+
+  static Object beginUserAuth() {
+    return null;
+  }
+
+  /** Ends an attempt of an authentication method, with its result. */
+  static void endUserAuth(Object event, Session session, String method, String result) {}
+
+  static Object beginChannelOpen() {
+    return null;
+  }
+
+  /** Ends a channel open, from SSH_MSG_CHANNEL_OPEN to its confirmation or failure. */
+  static void endChannelOpen(Object event, Channel channel, boolean opened) {}
+
+  /** Records that a channel has been closed. */
+  static void channelClosed(Channel channel) {}
+
+  static Object beginSftpRequest() {
+    return null;
+  }
+
+  /** Ends an SFTP request, from sending it to reading the header of its response. */
+  static void endSftpRequest(Object event, Channel channel, int type, int requestBytes,
+      int responseBytes) {}
+
+  static Object beginWriteStall() {
+    return null;
+  }
+
+  /**
+   * Ends a wait of a writer, either for the remote window of a channel or for a key exchange, in
+   * which case channel is {@code null}.
+   */
+  static void endWriteStall(Object event, Session session, Channel channel, String cause) {}
+}
@@ -166,17 +166,15 @@ public abstract class KeyExchange {
     boolean _s2cAEAD = false;
     boolean _c2sAEAD = false;
     try {
-      Class<? extends Cipher> _s2cclazz =
-          Class.forName(session.getConfig(guess[PROPOSAL_ENC_ALGS_STOC])).asSubclass(Cipher.class);
-      Cipher _s2ccipher = _s2cclazz.getDeclaredConstructor().newInstance();
+      Cipher _s2ccipher =
+          AlgorithmFactory.create(session.getConfig(guess[PROPOSAL_ENC_ALGS_STOC]), Cipher.class);
       _s2cAEAD = _s2ccipher.isAEAD();
       if (_s2cAEAD) {
         guess[PROPOSAL_MAC_ALGS_STOC] = null;
       }
 
-      Class<? extends Cipher> _c2sclazz =
-          Class.forName(session.getConfig(guess[PROPOSAL_ENC_ALGS_CTOS])).asSubclass(Cipher.class);
-      Cipher _c2scipher = _c2sclazz.getDeclaredConstructor().newInstance();
+      Cipher _c2scipher =
+          AlgorithmFactory.create(session.getConfig(guess[PROPOSAL_ENC_ALGS_CTOS]), Cipher.class);
       _c2sAEAD = _c2scipher.isAEAD();
       if (_c2sAEAD) {
         guess[PROPOSAL_MAC_ALGS_CTOS] = null;
@@ -206,8 +204,7 @@ public abstract class KeyExchange {
     HASH hash = null;
     try {
       String _c = session.getConfig("FingerprintHash").toLowerCase(Locale.ROOT);
-      Class<? extends HASH> c = Class.forName(session.getConfig(_c)).asSubclass(HASH.class);
-      hash = c.getDeclaredConstructor().newInstance();
+      hash = AlgorithmFactory.create(session.getConfig(_c), HASH.class);
     } catch (Exception e) {
       if (session.getLogger().isEnabled(Logger.ERROR)) {
         session.getLogger().log(Logger.ERROR, "getFingerPrint: " + e.getMessage(), e);
@@ -442,9 +439,7 @@ public abstract class KeyExchange {
       Buffer buf = new Buffer(sig_of_H);
       String foo = Util.byte2str(buf.getString());
       try {
-        Class<? extends SignatureRSA> c =
-            Class.forName(session.getConfig(foo)).asSubclass(SignatureRSA.class);
-        sig = c.getDeclaredConstructor().newInstance();
+        sig = AlgorithmFactory.create(session.getConfig(foo), SignatureRSA.class);
         sig.init();
       } catch (Exception e) {
         throw new JSchException(e.toString(), e);
@@ -497,9 +492,7 @@ public abstract class KeyExchange {
 
       SignatureDSA sig = null;
       try {
-        Class<? extends SignatureDSA> c =
-            Class.forName(session.getConfig("signature.dss")).asSubclass(SignatureDSA.class);
-        sig = c.getDeclaredConstructor().newInstance();
+        sig = AlgorithmFactory.create(session.getConfig("signature.dss"), SignatureDSA.class);
         sig.init();
       } catch (Exception e) {
         throw new JSchException(e.toString(), e);
@@ -542,9 +535,7 @@ public abstract class KeyExchange {
 
       SignatureECDSA sig = null;
       try {
-        Class<? extends SignatureECDSA> c =
-            Class.forName(session.getConfig(alg)).asSubclass(SignatureECDSA.class);
-        sig = c.getDeclaredConstructor().newInstance();
+        sig = AlgorithmFactory.create(session.getConfig(alg), SignatureECDSA.class);
         sig.init();
       } catch (Exception e) {
         throw new JSchException(e.toString(), e);
@@ -575,9 +566,7 @@ public abstract class KeyExchange {
 
       SignatureEdDSA sig = null;
       try {
-        Class<? extends SignatureEdDSA> c =
-            Class.forName(session.getConfig(alg)).asSubclass(SignatureEdDSA.class);
-        sig = c.getDeclaredConstructor().newInstance();
+        sig = AlgorithmFactory.create(session.getConfig(alg), SignatureEdDSA.class);
         sig.init();
       } catch (Exception | LinkageError e) {
         throw new JSchException(e.toString(), e);
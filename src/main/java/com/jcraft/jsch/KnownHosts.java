@@ -26,23 +26,64 @@
 
 package com.jcraft.jsch;
 
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.FileNotFoundException;
 import java.io.FileOutputStream;
+import java.io.FilterInputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
+import java.io.RandomAccessFile;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Locale;
 import java.util.Vector;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
 
 class KnownHosts implements HostKeyRepository {
   private JSch jsch = null;
   private String known_hosts = null;
   private Vector<HostKey> pool = null;
 
+  // what check() looks at instead of scanning the pool: the entries with plain host names by host
+  // name and key type, and the entries with hashed host names, guarded by index_lock
+  private final ReentrantReadWriteLock index_lock = new ReentrantReadWriteLock();
+  private final HashMap<String, List<HostKey>> plain_index = new HashMap<>();
+  private final List<HashedHostKey> hashed_index = new ArrayList<>();
+  // the entries with hashed host names each host name has matched; filled in while holding the
+  // read lock of index_lock and cleared while holding its write lock
+  private final ConcurrentHashMap<String, List<HashedHostKey>> hashed_matches =
+      new ConcurrentHashMap<>();
+  private static final int MAX_HASHED_MATCHES = 1024;
+  // changed whenever an entry with a marker, e.g. @cert-authority or @revoked, may have been added
+  // or removed, see HostCertificateCache; written while holding the write lock of index_lock
+  private volatile long marked_generation = 0L;
+
   MAC hmacsha1;
+  // per thread, an instance of the class of hmacsha1, so that hashed host names can be matched in
+  // parallel
+  private final ThreadLocal<ThreadMAC> thread_hmacsha1 = new ThreadLocal<>();
+
+  // how much of the known_hosts file has been read, and when it has been modified then, to pick up
+  // what other processes append to it; the last bytes read tell an append from a rewrite. -1 if
+  // the pool has not been read from the file, guarded by this
+  private long loaded_length = -1L;
+  private long loaded_modified = 0L;
+  private byte[] loaded_tail = new byte[0];
+  private static final int TAIL_LENGTH = 64;
+  // the length and modification time of the file when it has been found rewritten, which is only
+  // read once it has stayed the same until the next reload, guarded by this
+  private long rewritten_length = -1L;
+  private long rewritten_modified = 0L;
+  // when to look at the known_hosts file again
+  volatile long next_reload = 0L;
+  private static final long RELOAD_INTERVAL = 1000L;
 
   KnownHosts(JSch jsch) {
     super();
@@ -52,17 +93,41 @@ class KnownHosts implements HostKeyRepository {
   }
 
   void setKnownHosts(String filename) throws JSchException {
-    try {
+    synchronized (this) {
       known_hosts = filename;
-      InputStream fis = new FileInputStream(Util.checkTilde(filename));
-      setKnownHosts(fis);
-    } catch (FileNotFoundException e) {
-      // The non-existing file should be allowed.
+      File file = new File(Util.checkTilde(filename));
+      long modified = file.lastModified();
+      long length = 0L;
+      try {
+        CountingInputStream fis = new CountingInputStream(new FileInputStream(file));
+        setKnownHosts(fis);
+        length = fis.count;
+      } catch (FileNotFoundException e) {
+        // The non-existing file should be allowed.
+      }
+      loaded(file, length, modified);
+      next_reload = System.currentTimeMillis() + RELOAD_INTERVAL;
     }
   }
 
   void setKnownHosts(InputStream input) throws JSchException {
-    pool.removeAllElements();
+    List<HostKey> entries = parse(input);
+    // check() sees either the old entries or the new ones, never a pool being filled in
+    index_lock.writeLock().lock();
+    try {
+      synchronized (pool) {
+        pool.removeAllElements();
+        clearIndex();
+        addToPool(entries);
+      }
+    } finally {
+      index_lock.writeLock().unlock();
+    }
+  }
+
+  /** Returns the entries read from input. */
+  private List<HostKey> parse(InputStream input) throws JSchException {
+    List<HostKey> entries = new ArrayList<>();
     StringBuilder sb = new StringBuilder();
     byte i;
     int j;
@@ -107,13 +172,13 @@ class KnownHosts implements HostKeyRepository {
             continue;
           }
           if (i == '#') {
-            addInvalidLine(Util.byte2str(buf, 0, bufl));
+            entries.add(invalidLine(Util.byte2str(buf, 0, bufl)));
             continue loop;
           }
           break;
         }
         if (j >= bufl) {
-          addInvalidLine(Util.byte2str(buf, 0, bufl));
+          entries.add(invalidLine(Util.byte2str(buf, 0, bufl)));
           continue loop;
         }
 
@@ -127,7 +192,7 @@ class KnownHosts implements HostKeyRepository {
         }
         host = sb.toString();
         if (j >= bufl || host.length() == 0) {
-          addInvalidLine(Util.byte2str(buf, 0, bufl));
+          entries.add(invalidLine(Util.byte2str(buf, 0, bufl)));
           continue loop;
         }
 
@@ -154,7 +219,7 @@ class KnownHosts implements HostKeyRepository {
           }
           host = sb.toString();
           if (j >= bufl || host.length() == 0) {
-            addInvalidLine(Util.byte2str(buf, 0, bufl));
+            entries.add(invalidLine(Util.byte2str(buf, 0, bufl)));
             continue loop;
           }
 
@@ -184,7 +249,7 @@ class KnownHosts implements HostKeyRepository {
           j = bufl;
         }
         if (j >= bufl) {
-          addInvalidLine(Util.byte2str(buf, 0, bufl));
+          entries.add(invalidLine(Util.byte2str(buf, 0, bufl)));
           continue loop;
         }
 
@@ -213,7 +278,7 @@ class KnownHosts implements HostKeyRepository {
         }
         key = sb.toString();
         if (key.length() == 0) {
-          addInvalidLine(Util.byte2str(buf, 0, bufl));
+          entries.add(invalidLine(Util.byte2str(buf, 0, bufl)));
           continue loop;
         }
 
@@ -253,17 +318,18 @@ class KnownHosts implements HostKeyRepository {
         // System.err.println("|"+key+"|");
 
         if (revokedCertificate) {
-          addRevokedCertificateHostKey(Util.byte2str(buf, 0, bufl), marker, host, keyType, key,
-              comment);
+          entries.add(revokedCertificateHostKey(Util.byte2str(buf, 0, bufl), marker, host,
+              keyType, key, comment));
           continue loop;
         }
 
         byte[] keyData = Util.fromBase64(Util.str2byte(key), 0, key.length());
-        pool.addElement(new HashedHostKey(marker, host, type, keyData, comment));
+        entries.add(new HashedHostKey(marker, host, type, keyData, comment));
       }
       if (error) {
         throw new JSchException("KnownHosts: invalid format");
       }
+      return entries;
     } catch (Exception e) {
       if (e instanceof JSchException)
         throw (JSchException) e;
@@ -271,15 +337,14 @@ class KnownHosts implements HostKeyRepository {
     }
   }
 
-  private void addInvalidLine(String line) throws JSchException {
-    HostKey hk = new HostKey(line, HostKey.UNKNOWN, null);
-    pool.addElement(hk);
+  private static HostKey invalidLine(String line) throws JSchException {
+    return new HostKey(line, HostKey.UNKNOWN, null);
   }
 
   // Unnamed catch variables require Java 22, but this source set targets Java 8.
   @SuppressWarnings("java:S7467")
-  private void addRevokedCertificateHostKey(String line, String marker, String host, String keyType,
-      String key, String comment) throws JSchException {
+  private HostKey revokedCertificateHostKey(String line, String marker, String host,
+      String keyType, String key, String comment) throws JSchException {
     byte[] keyData;
     int type;
     try {
@@ -291,11 +356,189 @@ class KnownHosts implements HostKeyRepository {
         throw new JSchException("Certificate key type does not match known_hosts key type");
       }
     } catch (JSchException | RuntimeException ignored) {
-      addInvalidLine(line);
+      return invalidLine(line);
+    }
+
+    return new HashedHostKey(marker, host, type, keyData, comment);
+  }
+
+  /**
+   * Picks up the changes made to the known_hosts file by others, at most every
+   * {@link #RELOAD_INTERVAL} milliseconds: reads what has been appended to it, or all of it again
+   * if it has been rewritten. A rewritten file may still be being written, and is only read once it
+   * has not changed until the next reload.
+   */
+  private void reload() {
+    if (known_hosts == null || System.currentTimeMillis() < next_reload) {
+      return;
+    }
+    synchronized (this) {
+      if (System.currentTimeMillis() < next_reload) {
+        return;
+      }
+      try {
+        reloadNow();
+      } catch (Exception e) {
+        jsch.getInstanceLogger().log(Logger.ERROR,
+            "unable to reload known host file " + known_hosts, e);
+      }
+      next_reload = System.currentTimeMillis() + RELOAD_INTERVAL;
+    }
+  }
+
+  // called while holding this
+  private void reloadNow() throws Exception {
+    if (known_hosts == null || loaded_length < 0L) {
+      return;
+    }
+    File file = new File(Util.checkTilde(known_hosts));
+    long modified = file.lastModified();
+    long length = file.length();
+    if (modified == loaded_modified && length == loaded_length) {
+      return;
+    }
+    if (length < loaded_length || !Arrays.equals(loaded_tail, readTail(file, loaded_length))) {
+      if (length != rewritten_length || modified != rewritten_modified) {
+        rewritten_length = length;
+        rewritten_modified = modified;
+        return;
+      }
+      byte[] data = new byte[(int) Math.min(length, Integer.MAX_VALUE)];
+      try (RandomAccessFile raf = new RandomAccessFile(file, "r")) {
+        raf.readFully(data);
+        if (raf.length() != length) {
+          // changed again while being read
+          return;
+        }
+      }
+      setKnownHosts(new ByteArrayInputStream(data));
+      loaded(file, length, modified);
+      return;
+    }
+    byte[] appended = new byte[(int) Math.min(length - loaded_length, Integer.MAX_VALUE)];
+    int n;
+    try (RandomAccessFile raf = new RandomAccessFile(file, "r")) {
+      raf.seek(loaded_length);
+      n = raf.read(appended, 0, appended.length);
+    }
+    // a line still being written is read next time
+    int end = n;
+    while (end > 0 && appended[end - 1] != 0x0a) {
+      end--;
+    }
+    if (end == 0) {
       return;
     }
+    addToPool(parse(new ByteArrayInputStream(appended, 0, end)));
+    loaded(file, loaded_length + end, modified);
+  }
+
+  // called while holding this
+  private void loaded(File file, long length, long modified) {
+    loaded_length = length;
+    loaded_modified = modified;
+    rewritten_length = -1L;
+    try {
+      loaded_tail = readTail(file, length);
+    } catch (IOException e) {
+      // the next reload reads the file again
+      loaded_tail = null;
+    }
+  }
+
+  private static byte[] readTail(File file, long length) throws IOException {
+    int n = (int) Math.min(length, TAIL_LENGTH);
+    byte[] tail = new byte[n];
+    if (n == 0) {
+      return tail;
+    }
+    try (RandomAccessFile raf = new RandomAccessFile(file, "r")) {
+      raf.seek(length - n);
+      raf.readFully(tail);
+    }
+    return tail;
+  }
+
+  private void addToPool(HostKey hk) {
+    index_lock.writeLock().lock();
+    try {
+      pool.addElement(hk);
+      index(hk);
+    } finally {
+      index_lock.writeLock().unlock();
+    }
+  }
 
-    pool.addElement(new HashedHostKey(marker, host, type, keyData, comment));
+  private void addToPool(List<HostKey> entries) {
+    index_lock.writeLock().lock();
+    try {
+      synchronized (pool) {
+        for (HostKey hk : entries) {
+          pool.addElement(hk);
+          index(hk);
+        }
+      }
+    } finally {
+      index_lock.writeLock().unlock();
+    }
+  }
+
+  // called while holding the write lock of index_lock
+  private void index(HostKey hk) {
+    if (!"".equals(hk.getMarker())) {
+      marked_generation++;
+    }
+    if (hk.type == HostKey.UNKNOWN) {
+      return;
+    }
+    if (hk instanceof HashedHostKey && ((HashedHostKey) hk).isHashed()) {
+      hashed_index.add((HashedHostKey) hk);
+      hashed_matches.clear();
+      return;
+    }
+    // the same comma separated names HostKey.isMatched() compares against
+    String hosts = hk.getHost();
+    int i = 0;
+    while (i <= hosts.length()) {
+      int j = hosts.indexOf(',', i);
+      if (j == -1) {
+        j = hosts.length();
+      }
+      plain_index.computeIfAbsent(indexKey(hosts.substring(i, j), hk.type), k -> new ArrayList<>())
+          .add(hk);
+      i = j + 1;
+    }
+  }
+
+  // called while holding the write lock of index_lock
+  private void clearIndex() {
+    marked_generation++;
+    plain_index.clear();
+    hashed_index.clear();
+    hashed_matches.clear();
+  }
+
+  private void rebuildIndex() {
+    index_lock.writeLock().lock();
+    try {
+      clearIndex();
+      synchronized (pool) {
+        for (int i = 0; i < pool.size(); i++) {
+          index(pool.elementAt(i));
+        }
+      }
+    } finally {
+      index_lock.writeLock().unlock();
+    }
+  }
+
+  long getMarkedGeneration() {
+    reload();
+    return marked_generation;
+  }
+
+  private static String indexKey(String host, int type) {
+    return type + " " + host.toLowerCase(Locale.ROOT);
   }
 
   private static int getCertificateBaseType(String keyType) {
@@ -322,6 +565,8 @@ class KnownHosts implements HostKeyRepository {
       return result;
     }
 
+    reload();
+
     HostKey hk = null;
     try {
       hk = new HostKey(host, HostKey.GUESS, key);
@@ -331,20 +576,27 @@ class KnownHosts implements HostKeyRepository {
       return result;
     }
 
-    synchronized (pool) {
-      for (int i = 0; i < pool.size(); i++) {
-        HostKey _hk = pool.elementAt(i);
-        String marker = _hk.getMarker();
-        if (_hk.isMatched(host) && _hk.type == hk.type
-            && ("".equals(marker) || "@revoked".equals(marker))) {
-          if (Util.array_equals(_hk.key, key)) {
+    index_lock.readLock().lock();
+    try {
+      List<HostKey> plain = plain_index.get(indexKey(host, hk.type));
+      if (plain != null) {
+        for (HostKey _hk : plain) {
+          result = check(_hk, key, result);
+          if (result == OK) {
             return OK;
           }
-          if ("".equals(marker)) {
-            result = CHANGED;
+        }
+      }
+      for (HashedHostKey _hk : getHashedMatches(host)) {
+        if (_hk.type == hk.type) {
+          result = check(_hk, key, result);
+          if (result == OK) {
+            return OK;
           }
         }
       }
+    } finally {
+      index_lock.readLock().unlock();
     }
 
     if (result == NOT_INCLUDED && host.startsWith("[") && host.indexOf("]:") > 1) {
@@ -354,40 +606,67 @@ class KnownHosts implements HostKeyRepository {
     return result;
   }
 
-  @Override
-  public void add(HostKey hostkey, UserInfo userinfo) {
-    int type = hostkey.type;
-    String host = hostkey.getHost();
-    // byte[] key=hostkey.key;
+  private static int check(HostKey hk, byte[] key, int result) {
+    String marker = hk.getMarker();
+    if ("".equals(marker) || "@revoked".equals(marker)) {
+      if (Util.array_equals(hk.key, key)) {
+        return OK;
+      }
+      if ("".equals(marker)) {
+        return CHANGED;
+      }
+    }
+    return result;
+  }
 
-    HostKey hk = null;
-    synchronized (pool) {
-      for (int i = 0; i < pool.size(); i++) {
-        hk = pool.elementAt(i);
-        if (hk.isMatched(host) && hk.type == type) {
-          /*
-           * if(Util.array_equals(hk.key, key)){ return; } if(hk.host.equals(host)){ hk.key=key;
-           * return; } else{ hk.host=deleteSubString(hk.host, host); break; }
-           */
-        }
+  /**
+   * Returns the entries with hashed host names which match host, computing the HMACs only the first
+   * time a host name is looked up. Called while holding the read lock of index_lock.
+   */
+  private List<HashedHostKey> getHashedMatches(String host) {
+    List<HashedHostKey> matches = hashed_matches.get(host);
+    if (matches != null) {
+      return matches;
+    }
+    matches = new ArrayList<>();
+    for (HashedHostKey hk : hashed_index) {
+      if (hk.isMatched(host)) {
+        matches.add(hk);
       }
     }
+    if (hashed_matches.size() >= MAX_HASHED_MATCHES) {
+      hashed_matches.clear();
+    }
+    hashed_matches.put(host, matches);
+    return matches;
+  }
 
-    hk = hostkey;
+  @Override
+  public void add(HostKey hostkey, UserInfo userinfo) {
+    reload();
 
-    pool.addElement(hk);
+    addToPool(hostkey);
 
-    syncKnownHostsFile(userinfo);
+    syncKnownHostsFile(userinfo, hostkey);
   }
 
   void syncKnownHostsFile(UserInfo userinfo) {
+    syncKnownHostsFile(userinfo, null);
+  }
+
+  /**
+   * Writes the pool to the known_hosts file, asking whether to create it if it does not exist; if
+   * it does exist and <code>added</code> is the only entry added since, only appends it.
+   */
+  void syncKnownHostsFile(UserInfo userinfo, HostKey added) {
     String khFilename = getKnownHostsRepositoryID();
     if (khFilename == null) {
       return;
     }
     boolean doSync = true;
     File goo = new File(Util.checkTilde(khFilename));
-    if (!goo.exists()) {
+    boolean exists = goo.exists();
+    if (!exists) {
       doSync = false;
       if (userinfo != null) {
         doSync = userinfo
@@ -414,7 +693,11 @@ class KnownHosts implements HostKeyRepository {
       return;
     }
     try {
-      sync(khFilename);
+      if (exists && added != null) {
+        append(khFilename, added);
+      } else {
+        sync(khFilename);
+      }
     } catch (Exception e) {
       jsch.getInstanceLogger().log(Logger.ERROR, "unable to sync known host file " + goo.getPath(),
           e);
@@ -428,6 +711,12 @@ class KnownHosts implements HostKeyRepository {
 
   @Override
   public HostKey[] getHostKey(String host, String type) {
+    reload();
+    return findHostKey(host, type);
+  }
+
+  // does not reload, which would take this and index_lock while holding pool
+  private HostKey[] findHostKey(String host, String type) {
     synchronized (pool) {
       List<HostKey> v = new ArrayList<>();
       for (int i = 0; i < pool.size(); i++) {
@@ -443,7 +732,7 @@ class KnownHosts implements HostKeyRepository {
         foo[i] = v.get(i);
       }
       if (host != null && host.startsWith("[") && host.indexOf("]:") > 1) {
-        HostKey[] tmp = getHostKey(host.substring(1, host.indexOf("]:")), type);
+        HostKey[] tmp = findHostKey(host.substring(1, host.indexOf("]:")), type);
         if (tmp.length > 0) {
           HostKey[] bar = new HostKey[foo.length + tmp.length];
           System.arraycopy(foo, 0, bar, 0, foo.length);
@@ -483,6 +772,7 @@ class KnownHosts implements HostKeyRepository {
       }
     }
     if (sync) {
+      rebuildIndex();
       try {
         sync();
       } catch (Exception e) {
@@ -498,11 +788,54 @@ class KnownHosts implements HostKeyRepository {
   synchronized void sync(String foo) throws IOException {
     if (foo == null)
       return;
-    try (FileOutputStream fos = new FileOutputStream(Util.checkTilde(foo))) {
+    File file = new File(Util.checkTilde(foo));
+    long length;
+    try (FileOutputStream fos = new FileOutputStream(file)) {
       dump(fos);
+      if (isFsync()) {
+        fos.getFD().sync();
+      }
+      length = fos.getChannel().position();
+    }
+    if (foo.equals(known_hosts)) {
+      loaded(file, length, file.lastModified());
     }
   }
 
+  /** Appends hk to the file foo, rather than writing all the pool to it. */
+  synchronized void append(String foo, HostKey hk) throws IOException {
+    File file = new File(Util.checkTilde(foo));
+    boolean own = foo.equals(known_hosts);
+    if (own) {
+      // what others have appended must not be taken for what is appended here
+      try {
+        reloadNow();
+      } catch (Exception e) {
+        jsch.getInstanceLogger().log(Logger.ERROR, "unable to reload known host file " + foo, e);
+      }
+    }
+    long start = file.length();
+    ByteArrayOutputStream line = new ByteArrayOutputStream();
+    byte[] last = readTail(file, start);
+    if (last.length > 0 && last[last.length - 1] != 0x0a) {
+      line.write(lf);
+    }
+    dumpHostKey(line, hk);
+    try (FileOutputStream fos = new FileOutputStream(file, true)) {
+      line.writeTo(fos);
+      if (isFsync()) {
+        fos.getFD().sync();
+      }
+    }
+    if (own && start == loaded_length && file.length() == start + line.size()) {
+      loaded(file, start + line.size(), file.lastModified());
+    }
+  }
+
+  private static boolean isFsync() {
+    return "yes".equals(JSch.getConfig("known_hosts_fsync"));
+  }
+
   private static final byte[] space = {(byte) 0x20};
   private static final byte[] lf = Util.str2byte("\n");
 
@@ -578,8 +911,7 @@ class KnownHosts implements HostKeyRepository {
 
   MAC createHMAC(String hmacClassname) throws IllegalArgumentException {
     try {
-      Class<? extends MAC> c = Class.forName(hmacClassname).asSubclass(MAC.class);
-      return c.getDeclaredConstructor().newInstance();
+      return AlgorithmFactory.create(hmacClassname, MAC.class);
     } catch (Exception e) {
       jsch.getInstanceLogger().log(Logger.ERROR,
           "unable to instantiate HMAC-class " + hmacClassname, e);
@@ -588,12 +920,87 @@ class KnownHosts implements HostKeyRepository {
     }
   }
 
+  /** Computes the HMAC of host with salt as the key, see {@link #thread_hmacsha1}. */
+  byte[] hmac(byte[] salt, String host) throws Exception {
+    MAC shared = hmacsha1;
+    ThreadMAC mac = thread_hmacsha1.get();
+    if (mac == null || mac.shared != shared) {
+      mac = new ThreadMAC(shared);
+      thread_hmacsha1.set(mac);
+    }
+    if (mac.own == null) {
+      synchronized (shared) {
+        return hmac(shared, salt, host);
+      }
+    }
+    return hmac(mac.own, salt, host);
+  }
+
+  private static byte[] hmac(MAC mac, byte[] salt, String host) throws Exception {
+    mac.init(salt);
+    byte[] foo = Util.str2byte(host);
+    mac.update(foo, 0, foo.length);
+    byte[] bar = new byte[mac.getBlockSize()];
+    mac.doFinal(bar, 0);
+    return bar;
+  }
+
+  private static class ThreadMAC {
+    final MAC shared;
+    // null if the class of shared cannot be instantiated, which is then used by all threads
+    final MAC own;
+
+    ThreadMAC(MAC shared) {
+      this.shared = shared;
+      MAC mac = null;
+      try {
+        mac = AlgorithmFactory.create(shared.getClass().getName(), MAC.class);
+      } catch (Exception e) {
+        // e.g. no constructor without arguments
+      }
+      this.own = mac;
+    }
+  }
+
   HostKey createHashedHostKey(String host, byte[] key) throws JSchException {
     HashedHostKey hhk = new HashedHostKey(host, key);
     hhk.hash();
     return hhk;
   }
 
+  private static class CountingInputStream extends FilterInputStream {
+    long count = 0L;
+
+    CountingInputStream(InputStream in) {
+      super(in);
+    }
+
+    @Override
+    public int read() throws IOException {
+      int b = super.read();
+      if (b != -1) {
+        count++;
+      }
+      return b;
+    }
+
+    @Override
+    public int read(byte[] b, int off, int len) throws IOException {
+      int n = super.read(b, off, len);
+      if (n > 0) {
+        count += n;
+      }
+      return n;
+    }
+
+    @Override
+    public long skip(long n) throws IOException {
+      long skipped = super.skip(n);
+      count += skipped;
+      return skipped;
+    }
+  }
+
   class HashedHostKey extends HostKey {
     private static final String HASH_MAGIC = "|1|";
     private static final String HASH_DELIM = "|";
@@ -636,14 +1043,7 @@ class KnownHosts implements HostKeyRepository {
         return super.isMatched(_host);
       }
       try {
-        synchronized (hmacsha1) {
-          hmacsha1.init(salt);
-          byte[] foo = Util.str2byte(_host);
-          hmacsha1.update(foo, 0, foo.length);
-          byte[] bar = new byte[hmacsha1.getBlockSize()];
-          hmacsha1.doFinal(bar, 0);
-          return Util.array_equals(hash, bar);
-        }
+        return Util.array_equals(hash, hmac(salt, _host));
       } catch (Exception e) {
         jsch.getInstanceLogger().log(Logger.ERROR,
             "an error occurred while trying to check hash for host " + _host, e);
@@ -666,13 +1066,7 @@ class KnownHosts implements HostKeyRepository {
         }
       }
       try {
-        synchronized (hmacsha1) {
-          hmacsha1.init(salt);
-          byte[] foo = Util.str2byte(host);
-          hmacsha1.update(foo, 0, foo.length);
-          hash = new byte[hmacsha1.getBlockSize()];
-          hmacsha1.doFinal(hash, 0);
-        }
+        hash = hmac(salt, host);
       } catch (Exception e) {
         jsch.getInstanceLogger().log(Logger.ERROR,
             "an error occurred while trying to calculate the hash for host " + host, e);
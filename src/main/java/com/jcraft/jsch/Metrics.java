@@ -0,0 +1,26 @@
+package com.jcraft.jsch;
+
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * The counters behind {@link Session#getMetrics()} and {@link Channel#getMetrics()}. They are
+ * updated on the I/O paths, by several threads at once, hence LongAdders.
+ */
+class Metrics {
+  final LongAdder bytes_in = new LongAdder();
+  final LongAdder bytes_out = new LongAdder();
+  final LongAdder packets_in = new LongAdder();
+  final LongAdder packets_out = new LongAdder();
+  final LongAdder window_waits = new LongAdder();
+  final LongAdder window_wait_nanos = new LongAdder();
+  final LongAdder kex_count = new LongAdder();
+  final LongAdder kex_nanos = new LongAdder();
+  final LongAdder deliveries = new LongAdder();
+  final LongAdder delivery_nanos = new LongAdder();
+
+  TransportMetrics snapshot(long inbound_queued, int open_channels) {
+    return new TransportMetrics(bytes_in.sum(), bytes_out.sum(), packets_in.sum(),
+        packets_out.sum(), window_waits.sum(), window_wait_nanos.sum(), kex_count.sum(),
+        kex_nanos.sum(), deliveries.sum(), delivery_nanos.sum(), inbound_queued, open_channels);
+  }
+}
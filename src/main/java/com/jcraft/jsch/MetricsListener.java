@@ -0,0 +1,46 @@
+package com.jcraft.jsch;
+
+/**
+ * Receives the transport measurements of a session and its channels as they are taken, e.g. to
+ * feed them into a monitoring system, see {@link Session#setMetricsListener(MetricsListener)}. The
+ * same measurements are summed up by JSch itself, see {@link Session#getMetrics()} and
+ * {@link Channel#getMetrics()}.
+ *
+ * <p>
+ * The methods are called on the I/O paths, from any thread, and must return quickly.
+ */
+public interface MetricsListener {
+
+  /** Called for each packet sent, with its size on the wire. */
+  public default void packetSent(Session session, int bytes) {}
+
+  /** Called for each packet received, with its size on the wire. */
+  public default void packetReceived(Session session, int bytes) {}
+
+  /** Called for each SSH_MSG_CHANNEL_DATA sent, with the size of the data. */
+  public default void channelDataSent(Channel channel, int bytes) {}
+
+  /**
+   * Called for each SSH_MSG_CHANNEL_DATA or SSH_MSG_CHANNEL_EXTENDED_DATA received, with the size
+   * of the data.
+   */
+  public default void channelDataReceived(Channel channel, int bytes) {}
+
+  /**
+   * Called once received channel data has been handed over to the application, with the time since
+   * it has been received.
+   */
+  public default void channelDataDelivered(Channel channel, long nanos) {}
+
+  /** Called once a write has waited for the peer to open the remote window of the channel. */
+  public default void windowWaited(Channel channel, long nanos) {}
+
+  /** Called once a key exchange has completed, with the time it took. */
+  public default void kexCompleted(Session session, long nanos) {}
+
+  /** Called when a channel is added to the session. */
+  public default void channelOpened(Channel channel) {}
+
+  /** Called when a channel is removed from the session. */
+  public default void channelClosed(Channel channel) {}
+}
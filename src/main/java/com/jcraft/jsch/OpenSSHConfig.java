@@ -72,6 +72,7 @@ import java.util.stream.Stream;
  * <li>RemoteForward</li>
  * <li>ClearAllForwardings</li>
  * <li>CASignatureAlgorithms</li>
+ * <li>RekeyLimit</li>
  * </ul>
  *
  * @see ConfigRepository
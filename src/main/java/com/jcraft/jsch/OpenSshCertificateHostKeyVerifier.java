@@ -56,24 +56,32 @@ class OpenSshCertificateHostKeyVerifier {
 
     HostKeyRepository repository = session.getHostKeyRepository();
 
-    // Check revocation before CA trust, matching OpenSSH's check_key_not_revoked() order
-    // which checks the host key first, then the CA signing key.
-
-    // 1. Check if the certificate's own public key has been revoked
-    byte[] certPublicKey = certificate.getCertificatePublicKey();
-    if (certPublicKey != null
-        && OpenSshCertificateUtil.isCertificateKeyRevoked(repository, certPublicKey)) {
-      throw new JSchRevokedHostKeyException("Rejected certificate '" + certificate.getId()
-          + "': host certificate public key is marked as revoked for " + lookupHost);
-    }
-
-    // 2. Check if the CA is trusted (also throws JSchRevokedHostKeyException if CA is revoked)
-    boolean caFound = OpenSshCertificateUtil.isCertificateSignedByTrustedCA(repository, lookupHost,
-        caPublicKeyByteArray);
-
-    if (!caFound) {
-      throw new JSchUnknownCAKeyException("Rejected certificate '" + certificate.getId() + "': "
-          + "Certification Authority not in the known hosts or revoked for " + lookupHost);
+    // A certificate accepted before needs neither its CA looked up nor its signature verified
+    // again, as long as the known hosts still trust it
+    HostCertificateCache cache = session.jsch.hostCertificateCache;
+    String cacheKey = HostCertificateCache.keyOf(certificate);
+    boolean trusted = cache.isTrusted(cacheKey, repository, lookupHost);
+
+    if (!trusted) {
+      // Check revocation before CA trust, matching OpenSSH's check_key_not_revoked() order
+      // which checks the host key first, then the CA signing key.
+
+      // 1. Check if the certificate's own public key has been revoked
+      byte[] certPublicKey = certificate.getCertificatePublicKey();
+      if (certPublicKey != null
+          && OpenSshCertificateUtil.isCertificateKeyRevoked(repository, certPublicKey)) {
+        throw new JSchRevokedHostKeyException("Rejected certificate '" + certificate.getId()
+            + "': host certificate public key is marked as revoked for " + lookupHost);
+      }
+
+      // 2. Check if the CA is trusted (also throws JSchRevokedHostKeyException if CA is revoked)
+      boolean caFound = OpenSshCertificateUtil.isCertificateSignedByTrustedCA(repository,
+          lookupHost, caPublicKeyByteArray);
+
+      if (!caFound) {
+        throw new JSchUnknownCAKeyException("Rejected certificate '" + certificate.getId() + "': "
+            + "Certification Authority not in the known hosts or revoked for " + lookupHost);
+      }
     }
 
     Buffer caPublicKeyBuffer = new Buffer(caPublicKeyByteArray);
@@ -92,7 +100,12 @@ class OpenSshCertificateHostKeyVerifier {
               + certificateId);
     }
 
-    checkSignature(certificate, caPublicKeyAlgorithm, session);
+    if (cache.isVerified(cacheKey)) {
+      // the signature algorithms allowed may differ between sessions
+      checkSignatureAlgorithm(certificate, caPublicKeyAlgorithm, session);
+    } else {
+      checkSignature(certificate, caPublicKeyAlgorithm, session);
+    }
 
     Collection<String> principals = certificate.getPrincipals();
     // For principal matching, use hostKeyAlias if set, otherwise raw hostname (no port).
@@ -117,6 +130,10 @@ class OpenSshCertificateHostKeyVerifier {
       throw new JSchInvalidHostCertificateException(
           "rejected HostKey: unrecognized critical options " + certificate.getCriticalOptions());
     }
+
+    if (cacheKey != null) {
+      cache.put(cacheKey, certificate, repository, lookupHost);
+    }
   }
 
   /**
@@ -171,6 +188,25 @@ class OpenSshCertificateHostKeyVerifier {
    */
   static SignatureWrapper getSignatureWrapper(OpenSshCertificate certificate,
       String caPublicKeyAlgorithm, Session session) throws JSchException {
+    String signatureAlgorithm =
+        checkSignatureAlgorithm(certificate, caPublicKeyAlgorithm, session);
+    return new SignatureWrapper(signatureAlgorithm, session);
+  }
+
+  /**
+   * Checks that the signature algorithm of the certificate matches the algorithm of the signing
+   * CA's key, and is allowed and available according to the {@code ca_signature_algorithms}
+   * configuration.
+   *
+   * @param certificate the OpenSSH certificate.
+   * @param caPublicKeyAlgorithm the expected public key algorithm of the CA.
+   * @param session the current session.
+   * @return the signature algorithm.
+   * @throws JSchException if the signature algorithm does not match the CA's key algorithm, is not
+   *         in the allowed CA signature algorithms list or is not available at runtime.
+   */
+  static String checkSignatureAlgorithm(OpenSshCertificate certificate,
+      String caPublicKeyAlgorithm, Session session) throws JSchException {
     byte[] certificateSignature = certificate.getSignature();
     Buffer signatureBuffer = new Buffer(certificateSignature);
     String signatureAlgorithm = Util.byte2str(signatureBuffer.getString());
@@ -184,7 +220,7 @@ class OpenSshCertificateHostKeyVerifier {
     // Validate that the CA signature algorithm is allowed and available at runtime
     session.checkCASignatureAlgorithm(signatureAlgorithm);
 
-    return new SignatureWrapper(signatureAlgorithm, session);
+    return signatureAlgorithm;
   }
 
   /**
@@ -29,9 +29,11 @@ package com.jcraft.jsch;
 import java.io.InputStream;
 import java.io.OutputStream;
 import java.net.InetAddress;
+import java.net.InetSocketAddress;
 import java.net.ServerSocket;
 import java.net.Socket;
 import java.net.UnknownHostException;
+import java.nio.channels.ServerSocketChannel;
 import java.util.Vector;
 
 class PortWatcher {
@@ -59,6 +61,7 @@ class PortWatcher {
   ServerSocket ss;
   int connectTimeout = 0;
   private String socketPath;
+  private volatile ForwardingSelector selector;
 
   PortWatcher(Session session, String address, int lport, String socketPath,
       ServerSocketFactory ssf) throws JSchException {
@@ -72,8 +75,13 @@ class PortWatcher {
       throws JSchException {
     try {
       boundaddress = InetAddress.getByName(address);
-      ss = (ssf == null) ? new ServerSocket(lport, 0, boundaddress)
-          : ssf.createServerSocket(lport, 0, boundaddress);
+      if (ssf == null && session.getConfig("use_nio_forwarding").equals("yes")) {
+        ss = ServerSocketChannel.open().socket();
+        ss.bind(new InetSocketAddress(boundaddress, lport), 0);
+      } else {
+        ss = (ssf == null) ? new ServerSocket(lport, 0, boundaddress)
+            : ssf.createServerSocket(lport, 0, boundaddress);
+      }
     } catch (Exception e) {
       String message = "PortForwardingL: local port " + address + ":" + lport + " cannot be bound.";
       throw new JSchException(message, e);
@@ -195,6 +203,19 @@ class PortWatcher {
     return pw;
   }
 
+  /**
+   * Lets the given selector accept the connections, instead of a thread running {@link #run()}.
+   * The server socket must have been bound with the {@code use_nio_forwarding} config.
+   */
+  void start(ForwardingSelector selector) {
+    this.selector = selector;
+    selector.register(this);
+  }
+
+  boolean isNio() {
+    return ss.getChannel() != null;
+  }
+
   void run() {
     thread = this::run;
     try {
@@ -203,51 +224,11 @@ class PortWatcher {
         socket.setTcpNoDelay(true);
         InputStream in = socket.getInputStream();
         OutputStream out = socket.getOutputStream();
-        if (socketPath != null && socketPath.length() > 0) {
-          ChannelDirectStreamLocal channel =
-              (ChannelDirectStreamLocal) session.openChannel("direct-streamlocal@openssh.com");
-          if (channel != null) {
-            channel.setInputStream(in);
-            channel.setOutputStream(out);
-            channel.setSocketPath(socketPath);
-            channel.setOrgIPAddress(socket.getInetAddress().getHostAddress());
-            channel.setOrgPort(socket.getPort());
-            channel.connect(connectTimeout);
-          } else {
-            try {
-              socket.close();
-            } catch (Exception ignore) {
-              // Ignore close exceptions
-            } finally {
-              if (session.getLogger().isEnabled(Logger.DEBUG)) {
-                session.getLogger().log(Logger.DEBUG,
-                    "Failed to add DirectStreamLocal channel for socket path: " + socketPath
-                        + " - session may be disconnecting");
-              }
-            }
-          }
-        } else {
-          ChannelDirectTCPIP channel = (ChannelDirectTCPIP) session.openChannel("direct-tcpip");
-          if (channel != null) {
-            channel.setInputStream(in);
-            channel.setOutputStream(out);
-            channel.setHost(host);
-            channel.setPort(rport);
-            channel.setOrgIPAddress(socket.getInetAddress().getHostAddress());
-            channel.setOrgPort(socket.getPort());
-            channel.connect(connectTimeout);
-          } else {
-            try {
-              socket.close();
-            } catch (Exception ignore) {
-              // Ignore close exceptions
-            } finally {
-              if (session.getLogger().isEnabled(Logger.DEBUG)) {
-                session.getLogger().log(Logger.DEBUG, "Failed to add DirectTCPIP channel to " + host
-                    + ":" + rport + " - session may be disconnecting");
-              }
-            }
-          }
+        ChannelDirectTCPIP channel = openChannel(socket);
+        if (channel != null) {
+          channel.setInputStream(in);
+          channel.setOutputStream(out);
+          channel.connect(connectTimeout);
         }
       }
     } catch (Exception e) {
@@ -256,6 +237,54 @@ class PortWatcher {
     delete();
   }
 
+  /**
+   * Opens a channel for an accepted connection, which is left to the caller to connect, or closes
+   * the connection and returns null if the session is going away.
+   */
+  ChannelDirectTCPIP openChannel(Socket socket) throws JSchException {
+    if (socketPath != null && socketPath.length() > 0) {
+      ChannelDirectStreamLocal channel =
+          (ChannelDirectStreamLocal) session.openChannel("direct-streamlocal@openssh.com");
+      if (channel != null) {
+        channel.setSocketPath(socketPath);
+        channel.setOrgIPAddress(socket.getInetAddress().getHostAddress());
+        channel.setOrgPort(socket.getPort());
+      } else {
+        try {
+          socket.close();
+        } catch (Exception ignore) {
+          // Ignore close exceptions
+        } finally {
+          if (session.getLogger().isEnabled(Logger.DEBUG)) {
+            session.getLogger().log(Logger.DEBUG,
+                "Failed to add DirectStreamLocal channel for socket path: " + socketPath
+                    + " - session may be disconnecting");
+          }
+        }
+      }
+      return channel;
+    }
+    ChannelDirectTCPIP channel = (ChannelDirectTCPIP) session.openChannel("direct-tcpip");
+    if (channel != null) {
+      channel.setHost(host);
+      channel.setPort(rport);
+      channel.setOrgIPAddress(socket.getInetAddress().getHostAddress());
+      channel.setOrgPort(socket.getPort());
+    } else {
+      try {
+        socket.close();
+      } catch (Exception ignore) {
+        // Ignore close exceptions
+      } finally {
+        if (session.getLogger().isEnabled(Logger.DEBUG)) {
+          session.getLogger().log(Logger.DEBUG, "Failed to add DirectTCPIP channel to " + host
+              + ":" + rport + " - session may be disconnecting");
+        }
+      }
+    }
+    return channel;
+  }
+
   void delete() {
     thread = null;
     try {
@@ -264,6 +293,11 @@ class PortWatcher {
       ss = null;
     } catch (Exception e) {
     }
+    ForwardingSelector _selector = selector;
+    if (_selector != null) {
+      // the port is only released by the next select
+      _selector.wakeup();
+    }
   }
 
   void setConnectTimeout(int connectTimeout) {
@@ -26,8 +26,14 @@
 
 package com.jcraft.jsch;
 
+import java.util.concurrent.CompletableFuture;
+
 abstract class Request {
+  private static final CompletableFuture<Void> NO_REPLY = CompletableFuture.completedFuture(null);
+
   private boolean reply = false;
+  private boolean pipelined = false;
+  private CompletableFuture<Void> future = NO_REPLY;
   private Session session = null;
   private Channel channel = null;
 
@@ -47,28 +53,38 @@ abstract class Request {
     this.reply = reply;
   }
 
+  /**
+   * If set, {@link #write(Packet)} returns as soon as the request has been sent, and the reply has
+   * to be awaited through {@link #getReplyFuture()}.
+   */
+  void setPipelined(boolean pipelined) {
+    this.pipelined = pipelined;
+  }
+
+  /**
+   * Returns the reply to the last request sent, which has already completed if no reply has been
+   * asked for.
+   */
+  CompletableFuture<Void> getReplyFuture() {
+    return future;
+  }
+
   void write(Packet packet) throws Exception {
-    if (reply) {
-      channel.reply = -1;
+    if (!reply) {
+      future = NO_REPLY;
+      session.write(packet);
+      return;
     }
-    session.write(packet);
-    if (reply) {
-      long start = System.currentTimeMillis();
-      long timeout = channel.connectTimeout;
-      while (channel.isConnected() && channel.reply == -1) {
-        try {
-          Thread.sleep(10);
-        } catch (Exception ee) {
-        }
-        if (timeout > 0L && (System.currentTimeMillis() - start) > timeout) {
-          channel.reply = 0;
-          throw new JSchException("channel request: timeout");
-        }
-      }
-
-      if (channel.reply == 0) {
-        throw new JSchException("failed to send channel request");
-      }
+    future = channel.sendRequest(packet);
+    if (!pipelined) {
+      awaitReply(future, channel.connectTimeout);
     }
   }
+
+  /**
+   * Waits for the reply to a channel request, up to timeout milliseconds if timeout is positive.
+   */
+  static void awaitReply(CompletableFuture<Void> future, long timeout) throws JSchException {
+    Channel.await(future, timeout, "channel request: timeout");
+  }
 }
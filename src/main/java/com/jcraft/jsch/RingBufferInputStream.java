@@ -0,0 +1,300 @@
+package com.jcraft.jsch;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.util.concurrent.locks.LockSupport;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * A pipe between one writing and one reading thread, used to hand the data received for a channel
+ * from the session thread over to the application.
+ *
+ * <p>
+ * Unlike {@link java.io.PipedInputStream}, the two sides do not share a lock and do not poll: the
+ * data is kept in a ring buffer, indexed by the total number of bytes written and read so far, and
+ * a side that has to wait parks until the other one unparks it. The buffer starts small and is
+ * doubled by the writer while it is full, up to the given maximum size; after that the writer
+ * waits. Since only the writer replaces the buffer, and it copies the unread data over before the
+ * new buffer is published, the reader may keep using the buffer it has picked up.
+ *
+ * <p>
+ * Reads from several threads, or writes from several threads, are serialized against each other,
+ * but never against the other side. Either side parks while holding its lock, which is why the
+ * locks are not monitors: a virtual thread parked inside a monitor would pin its carrier.
+ */
+class RingBufferInputStream extends InputStream {
+  private volatile byte[] buffer;
+  private final int max_buffer_size;
+
+  private volatile long head = 0L; // bytes read so far
+  private volatile long tail = 0L; // bytes written so far
+
+  private volatile boolean closedByWriter = false;
+  private volatile boolean closedByReader = false;
+
+  private volatile Thread reader = null;
+  private volatile Thread writer = null;
+
+  private final ReentrantLock read_lock = new ReentrantLock();
+  private final ReentrantLock write_lock = new ReentrantLock();
+
+  private final Sink sink = new Sink();
+  private final byte[] one = new byte[1];
+
+  RingBufferInputStream(int size) {
+    this(size, size);
+  }
+
+  RingBufferInputStream(int size, int max_buffer_size) {
+    int capacity = capacity(size);
+    this.buffer = new byte[capacity];
+    this.max_buffer_size = Math.max(capacity, capacity(max_buffer_size));
+  }
+
+  /** Returns the writing side of this pipe. */
+  OutputStream getOutputStream() {
+    return sink;
+  }
+
+  @Override
+  public int read() throws IOException {
+    read_lock.lock();
+    try {
+      int i = read(one, 0, 1);
+      return i < 0 ? -1 : one[0] & 0xff;
+    } finally {
+      read_lock.unlock();
+    }
+  }
+
+  @Override
+  public int read(byte[] b, int off, int len) throws IOException {
+    if (off < 0 || len < 0 || len > b.length - off) {
+      throw new IndexOutOfBoundsException();
+    }
+    read_lock.lock();
+    try {
+      return doRead(b, off, len);
+    } finally {
+      read_lock.unlock();
+    }
+  }
+
+  private int doRead(byte[] b, int off, int len) throws IOException {
+    if (closedByReader) {
+      throw new IOException("Pipe closed");
+    }
+    if (len == 0) {
+      return 0;
+    }
+
+    long h = head;
+    long t = tail;
+    if (t == h) {
+      reader = Thread.currentThread();
+      try {
+        while ((t = tail) == h) {
+          if (closedByWriter) {
+            // the writer may have written more right before closing
+            if ((t = tail) != h) {
+              break;
+            }
+            return -1;
+          }
+          if (closedByReader) {
+            throw new IOException("Pipe closed");
+          }
+          LockSupport.park(this);
+          if (Thread.interrupted()) {
+            throw new InterruptedIOException();
+          }
+        }
+      } finally {
+        reader = null;
+      }
+    }
+
+    // the buffer has to be picked up after tail, see Sink.grow()
+    byte[] buf = buffer;
+    int n = (int) Math.min(len, t - h);
+    int i = (int) (h & (buf.length - 1));
+    int first = Math.min(n, buf.length - i);
+    System.arraycopy(buf, i, b, off, first);
+    if (first < n) {
+      System.arraycopy(buf, 0, b, off + first, n - first);
+    }
+    head = h + n;
+
+    Thread w = writer;
+    if (w != null) {
+      LockSupport.unpark(w);
+    }
+    return n;
+  }
+
+  @Override
+  public int available() throws IOException {
+    if (closedByReader) {
+      throw new IOException("Pipe closed");
+    }
+    return (int) (tail - head);
+  }
+
+  @Override
+  public void close() throws IOException {
+    closedByReader = true;
+    Thread w = writer;
+    if (w != null) {
+      LockSupport.unpark(w);
+    }
+  }
+
+  private static int capacity(int size) {
+    if (size <= 1024) {
+      return 1024;
+    }
+    if (size >= 1 << 30) {
+      return 1 << 30;
+    }
+    return Integer.highestOneBit(size - 1) << 1;
+  }
+
+  private class Sink extends OutputStream implements ChannelInbound.Offerable {
+    private final byte[] one = new byte[1];
+
+    @Override
+    public void write(int b) throws IOException {
+      write_lock.lock();
+      try {
+        one[0] = (byte) b;
+        write(one, 0, 1);
+      } finally {
+        write_lock.unlock();
+      }
+    }
+
+    @Override
+    public void write(byte[] b, int off, int len) throws IOException {
+      if (off < 0 || len < 0 || len > b.length - off) {
+        throw new IndexOutOfBoundsException();
+      }
+      write_lock.lock();
+      try {
+        doWrite(b, off, len);
+      } finally {
+        write_lock.unlock();
+      }
+    }
+
+    @Override
+    public boolean offer(byte[] b, int off, int len) throws IOException {
+      if (off < 0 || len < 0 || len > b.length - off) {
+        throw new IndexOutOfBoundsException();
+      }
+      write_lock.lock();
+      try {
+        long t = tail;
+        while (free(t) < len && buffer.length < max_buffer_size) {
+          grow(t);
+        }
+        if (free(t) < len && !closedByWriter && !closedByReader) {
+          return false;
+        }
+        doWrite(b, off, len);
+        return true;
+      } finally {
+        write_lock.unlock();
+      }
+    }
+
+    private void doWrite(byte[] b, int off, int len) throws IOException {
+      if (closedByWriter) {
+        throw new IOException("Pipe closed");
+      }
+      while (len > 0) {
+        long t = tail;
+        int free = free(t);
+        if (free == 0 && buffer.length < max_buffer_size) {
+          grow(t);
+          free = free(t);
+        }
+        if (free == 0) {
+          writer = Thread.currentThread();
+          try {
+            while ((free = free(t)) == 0) {
+              if (closedByReader || closedByWriter) {
+                throw new IOException("Pipe closed");
+              }
+              LockSupport.park(this);
+              if (Thread.interrupted()) {
+                throw new InterruptedIOException();
+              }
+            }
+          } finally {
+            writer = null;
+          }
+        }
+        if (closedByReader) {
+          throw new IOException("Pipe closed");
+        }
+
+        byte[] buf = buffer;
+        int n = Math.min(len, free);
+        int i = (int) (t & (buf.length - 1));
+        int first = Math.min(n, buf.length - i);
+        System.arraycopy(b, off, buf, i, first);
+        if (first < n) {
+          System.arraycopy(b, off + first, buf, 0, n - first);
+        }
+        tail = t + n;
+        off += n;
+        len -= n;
+
+        Thread r = reader;
+        if (r != null) {
+          LockSupport.unpark(r);
+        }
+      }
+    }
+
+    /** Closes the pipe for writing; a write still waiting for the reader fails. */
+    @Override
+    public void close() {
+      closedByWriter = true;
+      Thread r = reader;
+      if (r != null) {
+        LockSupport.unpark(r);
+      }
+      Thread w = writer;
+      if (w != null) {
+        LockSupport.unpark(w);
+      }
+    }
+
+    private int free(long t) {
+      return buffer.length - (int) (t - head);
+    }
+
+    /**
+     * Doubles the buffer. The data not read yet is copied to the same positions of the new buffer,
+     * before the new buffer is published, and the new buffer is published before tail is advanced
+     * beyond what the old buffer holds; so whatever tail the reader sees, the buffer it picks up
+     * afterwards has the data up to there.
+     */
+    private void grow(long t) {
+      byte[] old = buffer;
+      byte[] buf = new byte[old.length * 2];
+      long p = head;
+      while (p < t) {
+        int i = (int) (p & (old.length - 1));
+        int j = (int) (p & (buf.length - 1));
+        int n = (int) Math.min(t - p, Math.min(old.length - i, buf.length - j));
+        System.arraycopy(old, i, buf, j, n);
+        p += n;
+      }
+      buffer = buf;
+    }
+  }
+}
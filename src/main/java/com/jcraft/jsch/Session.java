@@ -26,11 +26,13 @@
 
 package com.jcraft.jsch;
 
+import java.io.BufferedOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.InterruptedIOException;
 import java.io.OutputStream;
 import java.net.Socket;
+import java.nio.channels.SocketChannel;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Enumeration;
@@ -40,9 +42,20 @@ import java.util.List;
 import java.util.Locale;
 import java.util.Objects;
 import java.util.Properties;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.SynchronousQueue;
 import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.Condition;
 import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.LockSupport;
 import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantLock;
 import java.util.concurrent.locks.ReentrantReadWriteLock;
 import javax.crypto.AEADBadTagException;
 
@@ -111,11 +124,16 @@ public class Session {
   // private byte[] mac_buf;
   private byte[] s2cmac_result1;
   private byte[] s2cmac_result2;
+  // decrypted packet length field of chacha20-poly1305
+  private final byte[] s2cpktlen = new byte[4];
+  // encrypted packet data is staged here and decrypted into the packet buffer, as the JCE would
+  // otherwise copy the input of every in-place cipher operation
+  private byte[] s2cstage = new byte[0];
 
   private Compression deflater;
   private Compression inflater;
 
-  private IO io;
+  IO io;
   private Socket socket;
   private int timeout = 0;
 
@@ -135,6 +153,28 @@ public class Session {
   private Thread connectThread = null;
   private Object lock = new Object();
 
+  // serializes encoding and sending packets; not a monitor, so that virtual threads blocked in a
+  // socket write do not pin their carrier
+  private final ReentrantLock write_lock = new ReentrantLock();
+  private final Condition flush_requested = write_lock.newCondition();
+
+  // outgoing packets may be collected and flushed in batches, see _write(Packet)
+  private boolean coalesce_writes = false;
+  private long write_coalesce_delay = 0L;
+  private final AtomicInteger pending_writes = new AtomicInteger();
+  private boolean write_pending = false;
+  private Thread write_flusher = null;
+  // encodes and sends all packets if use_writer_thread is enabled
+  volatile SessionWriter writer = null;
+  // services local port forwardings if use_nio_forwarding is enabled, guarded by lock; read without
+  // it by setInKex(boolean)
+  private volatile ForwardingSelector forwardingSelector = null;
+  // delivers channel data the session thread could not hand over, guarded by lock
+  private ThreadPoolExecutor inboundExecutor = null;
+
+  final Metrics metrics = new Metrics();
+  private volatile MetricsListener metricsListener = null;
+
   boolean x11_forwarding = false;
   boolean agent_forwarding = false;
 
@@ -165,6 +205,9 @@ public class Session {
   protected boolean daemon_thread = false;
 
   private volatile long kex_start_time = 0L;
+  // when in_kex has been set, and its JfrEvents event, guarded by kex_lock
+  private long kex_start_nanos = 0L;
+  private Object kex_event = null;
 
   int max_auth_tries = 6;
   int auth_failures = 0;
@@ -179,10 +222,13 @@ public class Session {
   JSch jsch;
   Logger logger;
 
-  private ThreadFactory threadFactory = Thread::new;
+  private static final ThreadFactory DEFAULT_THREAD_FACTORY = Thread::new;
+
+  // null unless set by setThreadFactory
+  private ThreadFactory threadFactory = null;
 
   private boolean disconnectingChannels = false;
-  private final List<Channel> channels = new ArrayList<>();
+  final ChannelMap channels = new ChannelMap();
   private final ReadWriteLock channelsLock = new ReentrantReadWriteLock();
 
   Session(JSch jsch, String username, String host, int port) throws JSchException {
@@ -218,8 +264,7 @@ public class Session {
     io = new IO();
     if (random == null) {
       try {
-        Class<? extends Random> c = Class.forName(getConfig("random")).asSubclass(Random.class);
-        random = c.getDeclaredConstructor().newInstance();
+        random = AlgorithmFactory.create(getConfig("random"), Random.class);
       } catch (Exception e) {
         throw new JSchException(e.toString(), e);
       }
@@ -233,22 +278,30 @@ public class Session {
     try {
       int i, j;
 
+      Object phase = JfrEvents.beginConnectPhase();
       if (proxy == null) {
         InputStream in;
         OutputStream out;
-        if (socket_factory == null) {
-          socket = Util.createSocket(host, port, connectTimeout);
-          in = socket.getInputStream();
-          out = socket.getOutputStream();
+        if (socket_factory == null && getConfig("use_nio_transport").equals("yes")) {
+          SocketChannel channel = Util.createSocketChannel(host, port, connectTimeout);
+          socket = channel.socket();
+          socket.setTcpNoDelay(true);
+          io = new SocketChannelIO(channel);
         } else {
-          socket = socket_factory.createSocket(host, port);
-          in = socket_factory.getInputStream(socket);
-          out = socket_factory.getOutputStream(socket);
-        }
-        // if(timeout>0){ socket.setSoTimeout(timeout); }
-        socket.setTcpNoDelay(true);
-        io.setInputStream(in);
-        io.setOutputStream(out);
+          if (socket_factory == null) {
+            socket = Util.createSocket(host, port, connectTimeout);
+            in = socket.getInputStream();
+            out = socket.getOutputStream();
+          } else {
+            socket = socket_factory.createSocket(host, port);
+            in = socket_factory.getInputStream(socket);
+            out = socket_factory.getOutputStream(socket);
+          }
+          // if(timeout>0){ socket.setSoTimeout(timeout); }
+          socket.setTcpNoDelay(true);
+          io.setInputStream(in);
+          io.setOutputStream(out);
+        }
       } else {
         synchronized (proxy) {
           proxy.connect(socket_factory, host, port, connectTimeout);
@@ -257,12 +310,20 @@ public class Session {
           socket = proxy.getSocket();
         }
       }
+      initWriteCoalescing();
+      initRekeyLimit();
 
       if (connectTimeout > 0 && socket != null) {
         socket.setSoTimeout(connectTimeout);
       }
 
       isConnected = true;
+      JfrEvents.endConnectPhase(phase, this, "socket");
+
+      if (getConfig("use_writer_thread").equals("yes")) {
+        writer = new SessionWriter(this);
+        writer.start();
+      }
 
       if (getLogger().isEnabled(Logger.INFO)) {
         getLogger().log(Logger.INFO, "Connection established");
@@ -270,6 +331,7 @@ public class Session {
 
       jsch.addSession(this);
 
+      phase = JfrEvents.beginConnectPhase();
       {
         // Some Cisco devices will miss to read '\n' if it is sent separately.
         byte[] foo = new byte[V_C.length + 2];
@@ -327,6 +389,7 @@ public class Session {
         getLogger().log(Logger.INFO, "Remote version string: " + _v_s);
         getLogger().log(Logger.INFO, "Local version string: " + Util.byte2str(V_C));
       }
+      JfrEvents.endConnectPhase(phase, this, "version exchange");
 
       enable_server_sig_algs = getConfig("enable_server_sig_algs").equals("yes");
       enable_ext_info_in_auth = getConfig("enable_ext_info_in_auth").equals("yes");
@@ -336,7 +399,7 @@ public class Session {
 
       buf = read(buf);
       if (buf.getCommand() != SSH_MSG_KEXINIT) {
-        in_kex = false;
+        setInKex(false);
         throw new JSchException("invalid protocol: " + buf.getCommand());
       }
 
@@ -353,11 +416,11 @@ public class Session {
           boolean result = kex.next(buf);
           if (!result) {
             // System.err.println("verify: "+result);
-            in_kex = false;
+            setInKex(false);
             throw new JSchException("verify: " + result);
           }
         } else {
-          in_kex = false;
+          setInKex(false);
           throw new JSchException("invalid protocol(kex): " + buf.getCommand());
         }
         if (kex.getState() == KeyExchange.STATE_END) {
@@ -372,7 +435,7 @@ public class Session {
         in_prompt = false;
         kex_start_time += (System.currentTimeMillis() - tmp);
       } catch (JSchException ee) {
-        in_kex = false;
+        setInKex(false);
         in_prompt = false;
         throw ee;
       }
@@ -391,7 +454,7 @@ public class Session {
         receive_newkeys(buf, kex);
         initialKex = false;
       } else {
-        in_kex = false;
+        setInKex(false);
         throw new JSchException("invalid protocol(newkeys): " + buf.getCommand());
       }
 
@@ -413,14 +476,14 @@ public class Session {
 
       UserAuthNone uan = null;
       try {
-        Class<? extends UserAuthNone> c =
-            Class.forName(getConfig("userauth.none")).asSubclass(UserAuthNone.class);
-        uan = c.getDeclaredConstructor().newInstance();
+        uan = AlgorithmFactory.create(getConfig("userauth.none"), UserAuthNone.class);
       } catch (Exception e) {
         throw new JSchException(e.toString(), e);
       }
 
+      Object none_event = JfrEvents.beginUserAuth();
       auth = uan.start(this);
+      JfrEvents.endUserAuth(none_event, this, "none", auth ? "success" : "failure");
 
       String cmethods = getConfig("PreferredAuthentications");
 
@@ -473,10 +536,8 @@ public class Session {
 
           UserAuth ua = null;
           try {
-            Class<? extends UserAuth> c = null;
             if (getConfig("userauth." + method) != null) {
-              c = Class.forName(getConfig("userauth." + method)).asSubclass(UserAuth.class);
-              ua = c.getDeclaredConstructor().newInstance();
+              ua = AlgorithmFactory.create(getConfig("userauth." + method), UserAuth.class);
             }
           } catch (Exception e) {
             if (getLogger().isEnabled(Logger.WARN)) {
@@ -486,14 +547,19 @@ public class Session {
 
           if (ua != null) {
             auth_cancel = false;
+            Object auth_event = JfrEvents.beginUserAuth();
+            String auth_result = "error";
             try {
               auth = ua.start(this);
+              auth_result = auth ? "success" : "failure";
               if (auth && getLogger().isEnabled(Logger.INFO)) {
                 getLogger().log(Logger.INFO, "Authentication succeeded (" + method + ").");
               }
             } catch (JSchAuthCancelException ee) {
+              auth_result = "cancel";
               auth_cancel = true;
             } catch (JSchPartialAuthException ee) {
+              auth_result = "partial";
               String tmp = smethods;
               smethods = ee.getMethods();
               smethoda = Util.split(smethods, ",");
@@ -515,6 +581,8 @@ public class Session {
                     ee);
               }
               break loop;
+            } finally {
+              JfrEvents.endUserAuth(auth_event, this, method, auth_result);
             }
           }
         }
@@ -553,7 +621,7 @@ public class Session {
         }
       }
     } catch (Exception e) {
-      in_kex = false;
+      setInKex(false);
       try {
         if (isConnected) {
           String message = e.toString();
@@ -639,9 +707,8 @@ public class Session {
 
     KeyExchange kex = null;
     try {
-      Class<? extends KeyExchange> c = Class
-          .forName(getConfig(guess[KeyExchange.PROPOSAL_KEX_ALGS])).asSubclass(KeyExchange.class);
-      kex = c.getDeclaredConstructor().newInstance();
+      kex = AlgorithmFactory.create(getConfig(guess[KeyExchange.PROPOSAL_KEX_ALGS]),
+          KeyExchange.class);
     } catch (Exception | LinkageError e) {
       throw new JSchException(e.toString(), e);
     }
@@ -700,9 +767,37 @@ public class Session {
   }
 
   private volatile boolean in_kex = false;
+  // writers blocked by a key exchange wait for kex_done, see awaitKex(long, boolean)
+  private final ReentrantLock kex_lock = new ReentrantLock();
+  private final Condition kex_done = kex_lock.newCondition();
+  // read by runUnlessInKex(Runnable) and written by setInKex(boolean) to start a key exchange
+  private final ReadWriteLock kex_start_lock = new ReentrantReadWriteLock();
   private volatile boolean in_prompt = false;
+
+  // RekeyLimit, see initRekeyLimit() and checkRekeyLimit()
+  private static final long REKEY_MAX_PACKETS = 1L << 31;
+  private long rekey_limit = 0L;
+  private long rekey_interval = 0L;
+  private long c2s_bytes = 0L;
+  private long c2s_packets = 0L;
+  private long c2s_max_bytes = Long.MAX_VALUE;
+  private long s2c_bytes = 0L;
+  private long s2c_packets = 0L;
+  private long s2c_max_bytes = Long.MAX_VALUE;
+  private volatile long rekey_deadline = Long.MAX_VALUE;
+  private final AtomicBoolean rekey_requested = new AtomicBoolean();
   private volatile String[] not_available_shks = null;
 
+  /** Lets tests of the transport act as connected without a server. */
+  void setConnected(boolean connected) {
+    isConnected = connected;
+  }
+
+  /** Lets tests of the transport act as authenticated without a server. */
+  void setAuthed(boolean authed) {
+    isAuthed = authed;
+  }
+
   public String[] getUnavailableSignatures() {
     return not_available_shks;
   }
@@ -711,6 +806,218 @@ public class Session {
     send_kexinit();
   }
 
+  boolean isInKex() {
+    return in_kex;
+  }
+
+  /**
+   * Runs task unless a key exchange is in progress, and keeps a key exchange from starting until it
+   * has returned, so that the packets it writes never wait for one.
+   *
+   * @return false if the task has not been run because a key exchange is in progress
+   */
+  boolean runUnlessInKex(Runnable task) {
+    Lock l = kex_start_lock.readLock();
+    l.lock();
+    try {
+      if (in_kex) {
+        return false;
+      }
+      task.run();
+      return true;
+    } finally {
+      l.unlock();
+    }
+  }
+
+  void setInKex(boolean kex) {
+    long kex_nanos = -1L;
+    Object event = null;
+    Lock l = kex_start_lock.writeLock();
+    if (kex) {
+      l.lock();
+    }
+    kex_lock.lock();
+    try {
+      if (kex && !in_kex) {
+        kex_start_nanos = System.nanoTime();
+        kex_event = JfrEvents.beginKex();
+      } else if (!kex && in_kex) {
+        kex_nanos = System.nanoTime() - kex_start_nanos;
+        event = kex_event;
+        kex_event = null;
+      }
+      in_kex = kex;
+      if (!kex) {
+        kex_done.signalAll();
+      }
+    } finally {
+      kex_lock.unlock();
+      if (kex) {
+        l.unlock();
+      }
+    }
+    if (kex_nanos >= 0L) {
+      ForwardingSelector fs = forwardingSelector;
+      if (fs != null) {
+        fs.kexDone();
+      }
+      JfrEvents.endKex(event, this, metrics.kex_count.sum() == 0L);
+      metrics.kex_count.increment();
+      metrics.kex_nanos.add(kex_nanos);
+      MetricsListener listener = metricsListener;
+      if (listener != null) {
+        listener.kexCompleted(this, kex_nanos);
+      }
+    }
+  }
+
+  /**
+   * Reads the {@code RekeyLimit} config, which follows the syntax of OpenSSH: the maximum amount of
+   * data to be sent or received with the same keys, optionally followed by the maximum time between
+   * key exchanges. The amount of data is given in bytes with an optional K, M or G suffix, or as
+   * {@code default} for a limit based on the block size of the cipher; the time is given in seconds
+   * with an optional s, m, h, d or w suffix, or as {@code none}.
+   */
+  void initRekeyLimit() {
+    rekey_limit = 0L;
+    rekey_interval = 0L;
+    String[] values = getConfig("RekeyLimit").trim().split("[ \t]+");
+    try {
+      if (values.length > 0 && !values[0].equals("default")) {
+        rekey_limit = parseSize(values[0]);
+      }
+      if (values.length > 1 && !values[1].equals("none")) {
+        rekey_interval = parseTime(values[1]) * 1000L;
+      }
+    } catch (NumberFormatException e) {
+      if (getLogger().isEnabled(Logger.WARN)) {
+        getLogger().log(Logger.WARN, "Ignoring invalid RekeyLimit: " + getConfig("RekeyLimit"));
+      }
+      rekey_limit = 0L;
+      rekey_interval = 0L;
+    }
+  }
+
+  /**
+   * Returns the amount of data to be encrypted with the same key, in line with OpenSSH: 2^(L/4)
+   * blocks for ciphers with a block size of L bits of at least 128, as recommended by RFC 4344, and
+   * 1 GiB otherwise.
+   */
+  private long rekeyBytes(Cipher cipher) {
+    // the nonce of AES-GCM is shorter than its block
+    int block = cipher.isAEAD() && !cipher.isChaCha20() ? 16 : cipher.getIVSize();
+    long bytes = block >= 16 ? (1L << (block * 2)) * block : 1L << 30;
+    if (rekey_limit > 0L && rekey_limit < bytes) {
+      bytes = rekey_limit;
+    }
+    return bytes;
+  }
+
+  /**
+   * Starts a key exchange in the background once the RekeyLimit has been reached on an
+   * authenticated session, so that neither the calling writer nor the session thread is held up by
+   * it.
+   */
+  private void checkRekeyLimit() {
+    if (c2s_bytes < c2s_max_bytes && s2c_bytes < s2c_max_bytes
+        && c2s_packets < REKEY_MAX_PACKETS && s2c_packets < REKEY_MAX_PACKETS
+        && System.currentTimeMillis() < rekey_deadline) {
+      return;
+    }
+    // the key exchange would race with the user authentication of connect()
+    if (!isConnected || !isAuthed || in_kex || !rekey_requested.compareAndSet(false, true)) {
+      return;
+    }
+    if (getLogger().isEnabled(Logger.INFO)) {
+      getLogger().log(Logger.INFO, "RekeyLimit reached, starting key exchange");
+    }
+    Thread t = getThreadFactory().newThread(() -> {
+      try {
+        rekey();
+      } catch (Exception e) {
+        rekey_requested.set(false);
+        if (getLogger().isEnabled(Logger.ERROR)) {
+          getLogger().log(Logger.ERROR, "Failed to start key exchange: " + e, e);
+        }
+      }
+    });
+    t.setName("Rekey thread " + host + " session");
+    if (daemon_thread) {
+      t.setDaemon(daemon_thread);
+    }
+    t.start();
+  }
+
+  /** Parses a size in bytes with an optional K, M or G suffix, like 1G or 512M. */
+  static long parseSize(String value) {
+    if (value.isEmpty()) {
+      throw new NumberFormatException("invalid size: " + value);
+    }
+    long unit = 1L;
+    switch (Character.toUpperCase(value.charAt(value.length() - 1))) {
+      case 'K':
+        unit = 1L << 10;
+        break;
+      case 'M':
+        unit = 1L << 20;
+        break;
+      case 'G':
+        unit = 1L << 30;
+        break;
+      default:
+        break;
+    }
+    if (unit != 1L) {
+      value = value.substring(0, value.length() - 1);
+    }
+    long size = Long.parseLong(value);
+    if (size < 0L || size > Long.MAX_VALUE / unit) {
+      throw new NumberFormatException("invalid size: " + value);
+    }
+    return size * unit;
+  }
+
+  /** Parses a time in seconds like 3600, 1h or 1h30m, see TIME FORMATS in sshd_config(5). */
+  static long parseTime(String value) {
+    long time = 0L;
+    int start = 0;
+    for (int i = 0; i < value.length(); i++) {
+      char c = Character.toLowerCase(value.charAt(i));
+      if (c >= '0' && c <= '9') {
+        continue;
+      }
+      long unit;
+      switch (c) {
+        case 's':
+          unit = 1L;
+          break;
+        case 'm':
+          unit = 60L;
+          break;
+        case 'h':
+          unit = 60L * 60L;
+          break;
+        case 'd':
+          unit = 24L * 60L * 60L;
+          break;
+        case 'w':
+          unit = 7L * 24L * 60L * 60L;
+          break;
+        default:
+          throw new NumberFormatException("invalid time: " + value);
+      }
+      time += Long.parseLong(value.substring(start, i)) * unit;
+      start = i + 1;
+    }
+    if (start < value.length()) {
+      time += Long.parseLong(value.substring(start));
+    } else if (start == 0) {
+      throw new NumberFormatException("invalid time: " + value);
+    }
+    return time;
+  }
+
   private void send_kexinit() throws Exception {
     if (in_kex)
       return;
@@ -886,7 +1193,7 @@ public class Session {
     }
 
     kex_start_time = System.currentTimeMillis();
-    in_kex = true;
+    setInKex(true);
 
     // byte SSH_MSG_KEXINIT(20)
     // byte[16] cookie (random bytes)
@@ -1148,6 +1455,7 @@ public class Session {
     try {
       Channel channel = createChannel(type);
       if (channel != null) {
+        initChannelWindow(channel, type);
         channel.init();
         if (channel instanceof ChannelSession) {
           applyConfigChannel((ChannelSession) channel);
@@ -1231,19 +1539,8 @@ public class Session {
   private int s2ccipher_size = 8;
   private int c2scipher_size = 8;
 
-  private Channel getChannelById(int id) {
-    Lock l = channelsLock.readLock();
-    l.lock();
-    try {
-      for (Channel c : channels) {
-        if (c.id == id) {
-          return c;
-        }
-      }
-    } finally {
-      l.unlock();
-    }
-    return null;
+  Channel getChannelById(int id) {
+    return channels.get(id);
   }
 
   Buffer read(Buffer buf) throws Exception {
@@ -1265,7 +1562,7 @@ public class Session {
         // init cipher with seq number
         s2ccipher.update(seqi);
         // decrypt packet length field
-        byte[] tmp = new byte[4];
+        byte[] tmp = s2cpktlen;
         s2ccipher.update(buf.buffer, 0, 4, tmp, 0);
         j = ((tmp[0] << 24) & 0xff000000) | ((tmp[1] << 16) & 0x00ff0000)
             | ((tmp[2] << 8) & 0x0000ff00) | ((tmp[3]) & 0x000000ff);
@@ -1274,11 +1571,7 @@ public class Session {
           start_discard(buf, s2ccipher, s2cmac, 0, PACKET_MAX_SIZE);
         }
         j += s2ccipher.getTagSize();
-        if ((buf.index + j) > buf.buffer.length) {
-          byte[] foo = new byte[buf.index + j];
-          System.arraycopy(buf.buffer, 0, foo, 0, buf.index);
-          buf.buffer = foo;
-        }
+        buf.checkFreeSize(j);
 
         if ((j % s2ccipher_size) != 0) {
           String message = "Bad packet length " + j;
@@ -1311,11 +1604,7 @@ public class Session {
         if (isAEAD) {
           j += s2ccipher.getTagSize();
         }
-        if ((buf.index + j) > buf.buffer.length) {
-          byte[] foo = new byte[buf.index + j];
-          System.arraycopy(buf.buffer, 0, foo, 0, buf.index);
-          buf.buffer = foo;
-        }
+        buf.checkFreeSize(j);
 
         if ((j % s2ccipher_size) != 0) {
           String message = "Bad packet length " + j;
@@ -1325,10 +1614,9 @@ public class Session {
           start_discard(buf, s2ccipher, s2cmac, 0, PACKET_MAX_SIZE - s2ccipher_size);
         }
 
-        io.getByte(buf.buffer, buf.index, j);
-        buf.index += (j);
-
         if (isAEAD) {
+          io.getByte(buf.buffer, buf.index, j);
+          buf.index += (j);
           try {
             s2ccipher.updateAAD(buf.buffer, 0, 4);
             s2ccipher.doFinal(buf.buffer, 4, j, buf.buffer, 4);
@@ -1338,23 +1626,32 @@ public class Session {
           // don't include AEAD tag size in buf so that decompression works below
           buf.index -= s2ccipher.getTagSize();
         } else {
+          // fetch the encrypted packet and its MAC at once
+          int maclen = s2cmac_result1.length;
+          byte[] stage = getS2CStage(j + maclen);
+          io.getByte(stage, 0, j + maclen);
+
           s2cmac.update(seqi);
           s2cmac.update(buf.buffer, 0, buf.index);
+          s2cmac.update(stage, 0, j);
           s2cmac.doFinal(s2cmac_result1, 0);
 
-          io.getByte(s2cmac_result2, 0, s2cmac_result2.length);
-          if (!Util.arraysequals(s2cmac_result1, s2cmac_result2)) {
+          if (!Util.arraysequals(s2cmac_result1, 0, stage, j, maclen)) {
             throw new JSchException("Packet corrupt");
           }
-          s2ccipher.update(buf.buffer, 4, j, buf.buffer, 4);
+          s2ccipher.update(stage, 0, j, buf.buffer, 4);
+          buf.index += (j);
         }
       } else {
         // fall back to the older Encrypt-and-MAC mode.
-        io.getByte(buf.buffer, buf.index, s2ccipher_size);
-        buf.index += s2ccipher_size;
         if (s2ccipher != null) {
-          s2ccipher.update(buf.buffer, 0, s2ccipher_size, buf.buffer, 0);
+          byte[] stage = getS2CStage(s2ccipher_size);
+          io.getByte(stage, 0, s2ccipher_size);
+          s2ccipher.update(stage, 0, s2ccipher_size, buf.buffer, 0);
+        } else {
+          io.getByte(buf.buffer, buf.index, s2ccipher_size);
         }
+        buf.index += s2ccipher_size;
 
         // calculating length of the incoming packet
         j = ((buf.buffer[0] << 24) & 0xff000000) | ((buf.buffer[1] << 16) & 0x00ff0000)
@@ -1370,11 +1667,7 @@ public class Session {
         // if(need<0){
         // throw new IOException("invalid data");
         // }
-        if ((buf.index + need) > buf.buffer.length) {
-          byte[] foo = new byte[buf.index + need];
-          System.arraycopy(buf.buffer, 0, foo, 0, buf.index);
-          buf.buffer = foo;
-        }
+        buf.checkFreeSize(need);
 
         if ((need % s2ccipher_size) != 0) {
           String message = "Bad packet length " + need;
@@ -1385,11 +1678,14 @@ public class Session {
         }
 
         if (need > 0) {
-          io.getByte(buf.buffer, buf.index, need);
-          buf.index += (need);
           if (s2ccipher != null) {
-            s2ccipher.update(buf.buffer, s2ccipher_size, need, buf.buffer, s2ccipher_size);
+            byte[] stage = getS2CStage(need);
+            io.getByte(stage, 0, need);
+            s2ccipher.update(stage, 0, need, buf.buffer, buf.index);
+          } else {
+            io.getByte(buf.buffer, buf.index, need);
           }
+          buf.index += (need);
         }
 
         if (s2cmac != null) {
@@ -1412,6 +1708,17 @@ public class Session {
       if (++seqi == 0 && (enable_strict_kex || require_strict_kex) && initialKex) {
         throw new JSchStrictKexException("incoming sequence number wrapped during initial KEX");
       }
+      s2c_bytes += buf.index;
+      metrics.bytes_in.add(buf.index);
+      metrics.packets_in.increment();
+      MetricsListener listener = metricsListener;
+      if (listener != null) {
+        listener.packetReceived(this, buf.index);
+      }
+      if (++s2c_packets >= REKEY_MAX_PACKETS || s2c_bytes >= s2c_max_bytes
+          || rekey_deadline != Long.MAX_VALUE) {
+        checkRekeyLimit();
+      }
 
       if (inflater != null) {
         try {
@@ -1545,6 +1852,16 @@ public class Session {
     return buf;
   }
 
+  private byte[] getS2CStage(int size) {
+    if (s2cstage.length < size) {
+      int i = s2cstage.length * 2;
+      if (i < size)
+        i = size;
+      s2cstage = new byte[i];
+    }
+    return s2cstage;
+  }
+
   private void start_discard(Buffer buf, Cipher cipher, MAC mac, int mac_already, int discard)
       throws JSchException {
     if (!cipher.isCBC() || (mac != null && mac.isEtM())) {
@@ -1596,7 +1913,7 @@ public class Session {
       kex.clearK();
     }
     negotiatedAlgorithms = guess;
-    in_kex = false;
+    setInKex(false);
     if (doStrictKex) {
       seqi = 0;
       if (getLogger().isEnabled(Logger.INFO)) {
@@ -1606,7 +1923,7 @@ public class Session {
     }
   }
 
-  private void updateKeys(KeyExchange kex) throws Exception {
+  void updateKeys(KeyExchange kex) throws Exception {
     byte[] K = kex.getK();
     byte[] H = kex.getH();
     HASH hash = kex.getHash();
@@ -1655,13 +1972,10 @@ public class Session {
     MACs2c = hash.digest();
 
     try {
-      Class<? extends Cipher> cc;
-      Class<? extends MAC> cm;
       String method;
 
       method = guess[KeyExchange.PROPOSAL_ENC_ALGS_STOC];
-      cc = Class.forName(getConfig(method)).asSubclass(Cipher.class);
-      s2ccipher = cc.getDeclaredConstructor().newInstance();
+      s2ccipher = AlgorithmFactory.create(getConfig(method), Cipher.class);
       while (s2ccipher.getBlockSize() > Es2c.length) {
         buf.reset();
         buf.putByte(K);
@@ -1679,8 +1993,7 @@ public class Session {
 
       if (!s2ccipher.isAEAD()) {
         method = guess[KeyExchange.PROPOSAL_MAC_ALGS_STOC];
-        cm = Class.forName(getConfig(method)).asSubclass(MAC.class);
-        s2cmac = cm.getDeclaredConstructor().newInstance();
+        s2cmac = AlgorithmFactory.create(getConfig(method), MAC.class);
         MACs2c = expandKey(buf, K, H, MACs2c, hash, s2cmac.getBlockSize());
         s2cmac.init(MACs2c);
         // mac_buf=new byte[s2cmac.getBlockSize()];
@@ -1689,8 +2002,7 @@ public class Session {
       }
 
       method = guess[KeyExchange.PROPOSAL_ENC_ALGS_CTOS];
-      cc = Class.forName(getConfig(method)).asSubclass(Cipher.class);
-      c2scipher = cc.getDeclaredConstructor().newInstance();
+      c2scipher = AlgorithmFactory.create(getConfig(method), Cipher.class);
       while (c2scipher.getBlockSize() > Ec2s.length) {
         buf.reset();
         buf.putByte(K);
@@ -1708,8 +2020,7 @@ public class Session {
 
       if (!c2scipher.isAEAD()) {
         method = guess[KeyExchange.PROPOSAL_MAC_ALGS_CTOS];
-        cm = Class.forName(getConfig(method)).asSubclass(MAC.class);
-        c2smac = cm.getDeclaredConstructor().newInstance();
+        c2smac = AlgorithmFactory.create(getConfig(method), MAC.class);
         MACc2s = expandKey(buf, K, H, MACc2s, hash, c2smac.getBlockSize());
         c2smac.init(MACc2s);
       }
@@ -1719,6 +2030,14 @@ public class Session {
 
       method = guess[KeyExchange.PROPOSAL_COMP_ALGS_STOC];
       initInflater(method);
+
+      c2s_bytes = s2c_bytes = 0L;
+      c2s_packets = s2c_packets = 0L;
+      c2s_max_bytes = rekeyBytes(c2scipher);
+      s2c_max_bytes = rekeyBytes(s2ccipher);
+      rekey_deadline =
+          rekey_interval > 0L ? System.currentTimeMillis() + rekey_interval : Long.MAX_VALUE;
+      rekey_requested.set(false);
     } catch (Exception | LinkageError e) {
       if (e instanceof JSchException)
         throw e;
@@ -1758,24 +2077,20 @@ public class Session {
     long t = getTimeout();
     while (true) {
       if (in_kex) {
-        if (t > 0L && (System.currentTimeMillis() - kex_start_time) > t) {
-          throw new JSchException("timeout in waiting for rekeying process.");
-        }
-        try {
-          Thread.sleep(10);
-        } catch (InterruptedException e) {
-        } ;
+        awaitKex(t, false);
         continue;
       }
-      synchronized (c) {
-        if (c.rwsize < length) {
-          try {
-            c.notifyme++;
-            c.wait(100);
-          } catch (InterruptedException e) {
-          } finally {
-            c.notifyme--;
-          }
+      c.state_lock.lock();
+      try {
+        // signalled by addRemoteWindowSize(), close() or disconnect() of the channel
+        if (c.rwsize <= 0 && !c.close && c.isConnected()) {
+          Object stall = JfrEvents.beginWriteStall();
+          long start = System.nanoTime();
+          do {
+            c.state_changed.awaitUninterruptibly();
+          } while (c.rwsize <= 0 && !c.close && c.isConnected());
+          recordWindowWait(c, System.nanoTime() - start);
+          JfrEvents.endWriteStall(stall, this, c, "window");
         }
 
         if (in_kex) {
@@ -1786,6 +2101,8 @@ public class Session {
           c.rwsize -= length;
           break;
         }
+      } finally {
+        c.state_lock.unlock();
       }
       if (c.close || !c.isConnected()) {
         throw new IOException("channel is broken");
@@ -1795,7 +2112,9 @@ public class Session {
       int s = 0;
       byte command = 0;
       int recipient = -1;
-      synchronized (c) {
+      int sent = 0;
+      c.state_lock.lock();
+      try {
         if (c.rwsize > 0) {
           long len = c.rwsize;
           if (len > length) {
@@ -1809,18 +2128,23 @@ public class Session {
           recipient = c.getRecipient();
           length -= (int) len;
           c.rwsize -= len;
+          sent = (int) len;
           sendit = true;
         }
+      } finally {
+        c.state_lock.unlock();
       }
       if (sendit) {
         _write(packet);
+        recordDataSent(c, sent);
         if (length == 0) {
           return;
         }
         packet.unshift(command, recipient, s, length);
       }
 
-      synchronized (c) {
+      c.state_lock.lock();
+      try {
         if (in_kex) {
           continue;
         }
@@ -1828,29 +2152,18 @@ public class Session {
           c.rwsize -= length;
           break;
         }
-
-        // try{
-        // System.out.println("1wait: "+c.rwsize);
-        // c.notifyme++;
-        // c.wait(100);
-        // }
-        // catch(InterruptedException e){
-        // }
-        // finally{
-        // c.notifyme--;
-        // }
+      } finally {
+        c.state_lock.unlock();
       }
     }
     _write(packet);
+    recordDataSent(c, length);
   }
 
   void write(Packet packet) throws Exception {
     // System.err.println("in_kex="+in_kex+" "+(packet.buffer.getCommand()));
     long t = getTimeout();
     while (in_kex) {
-      if (t > 0L && (System.currentTimeMillis() - kex_start_time) > t && !in_prompt) {
-        throw new JSchException("timeout in waiting for rekeying process.");
-      }
       byte command = packet.buffer.getCommand();
       // System.err.println("command: "+command);
       if (command == SSH_MSG_KEXINIT || command == SSH_MSG_NEWKEYS || command == SSH_MSG_KEXDH_INIT
@@ -1859,31 +2172,123 @@ public class Session {
           || command == SSH_MSG_KEX_DH_GEX_REQUEST || command == SSH_MSG_DISCONNECT) {
         break;
       }
-      try {
-        Thread.sleep(10);
-      } catch (InterruptedException e) {
-      } ;
+      awaitKex(t, true);
     }
     _write(packet);
   }
 
+  /**
+   * Blocks until the key exchange in progress has completed, see {@link #setInKex(boolean)}.
+   *
+   * @param t the timeout in milliseconds since the key exchange has started, or 0
+   * @param prompt whether to keep waiting past the timeout while the user is being prompted
+   */
+  private void awaitKex(long t, boolean prompt) throws JSchException {
+    boolean interrupted = false;
+    Object stall = JfrEvents.beginWriteStall();
+    kex_lock.lock();
+    try {
+      while (in_kex) {
+        long wait = 0L;
+        if (t > 0L) {
+          wait = kex_start_time + t - System.currentTimeMillis();
+          if (wait <= 0L) {
+            if (!prompt || !in_prompt) {
+              throw new JSchException("timeout in waiting for rekeying process.");
+            }
+            wait = t;
+          }
+        }
+        try {
+          if (wait > 0L) {
+            kex_done.await(wait, TimeUnit.MILLISECONDS);
+          } else {
+            kex_done.await();
+          }
+        } catch (InterruptedException e) {
+          interrupted = true;
+        }
+      }
+    } finally {
+      kex_lock.unlock();
+      if (interrupted) {
+        Thread.currentThread().interrupt();
+      }
+      JfrEvents.endWriteStall(stall, this, null, "kex");
+    }
+  }
+
   private void _write(Packet packet) throws Exception {
+    SessionWriter _writer = writer;
+    if (_writer != null) {
+      _writer.write(packet);
+      return;
+    }
+
+    boolean coalesce = this.coalesce_writes;
+    boolean urgent = !coalesce || isUrgent(packet);
+    if (coalesce) {
+      pending_writes.incrementAndGet();
+    }
+
+    write_lock.lock();
+    try {
+      boolean idle = true;
+      try {
+        writePacket(packet, coalesce);
+      } finally {
+        if (coalesce) {
+          idle = pending_writes.decrementAndGet() == 0;
+        }
+      }
+
+      // While other writers are waiting for the lock, the last one of them will flush.
+      if (coalesce && io != null) {
+        if (urgent || (idle && write_coalesce_delay == 0L)) {
+          flushWrites();
+        } else if (idle) {
+          scheduleFlush();
+        }
+      }
+    } finally {
+      write_lock.unlock();
+    }
+  }
+
+  /**
+   * Encodes and sends a packet, leaving it in the write buffer if buffered is true. Must be called
+   * with write_lock held or from the writer thread.
+   */
+  void writePacket(Packet packet, boolean buffered) throws Exception {
     boolean initialKex = this.initialKex;
     boolean doStrictKex = this.doStrictKex;
     boolean enable_strict_kex = this.enable_strict_kex;
     boolean require_strict_kex = this.require_strict_kex;
     boolean resetSeqo = packet.buffer.getCommand() == SSH_MSG_NEWKEYS && doStrictKex;
 
-    synchronized (lock) {
-      encode(packet);
-      if (io != null) {
+    encode(packet);
+    if (io != null) {
+      if (buffered) {
+        io.write(packet);
+      } else {
         io.put(packet);
-        if (++seqo == 0 && (enable_strict_kex || require_strict_kex) && initialKex) {
-          throw new JSchStrictKexException("outgoing sequence number wrapped during initial KEX");
-        }
-        if (resetSeqo) {
-          seqo = 0;
-        }
+      }
+      if (++seqo == 0 && (enable_strict_kex || require_strict_kex) && initialKex) {
+        throw new JSchStrictKexException("outgoing sequence number wrapped during initial KEX");
+      }
+      if (resetSeqo) {
+        seqo = 0;
+      }
+      c2s_bytes += packet.buffer.index;
+      metrics.bytes_out.add(packet.buffer.index);
+      metrics.packets_out.increment();
+      MetricsListener listener = metricsListener;
+      if (listener != null) {
+        listener.packetSent(this, packet.buffer.index);
+      }
+      if (++c2s_packets >= REKEY_MAX_PACKETS || c2s_bytes >= c2s_max_bytes
+          || rekey_deadline != Long.MAX_VALUE) {
+        checkRekeyLimit();
       }
     }
 
@@ -1893,6 +2298,114 @@ public class Session {
     }
   }
 
+  /**
+   * Packets other than channel data are flushed right away, as are small data packets like
+   * keystrokes of an interactive session.
+   */
+  private static boolean isUrgent(Packet packet) {
+    int command = packet.buffer.getCommand() & 0xff;
+    if (command != SSH_MSG_CHANNEL_DATA && command != SSH_MSG_CHANNEL_EXTENDED_DATA) {
+      return true;
+    }
+    return packet.buffer.index <= 128;
+  }
+
+  void initWriteCoalescing() {
+    int size = 0;
+    long delay = 0L;
+    try {
+      size = Integer.parseInt(getConfig("write_buffer_size"));
+    } catch (Exception e) {
+    }
+    try {
+      delay = Long.parseLong(getConfig("write_coalesce_delay"));
+    } catch (Exception e) {
+    }
+    coalesce_writes = size > 0;
+    // microseconds
+    write_coalesce_delay = Math.max(0L, delay) * 1000L;
+    if (coalesce_writes && !(io instanceof SocketChannelIO)) {
+      io.setOutputStream(new BufferedOutputStream(io.out, size));
+    }
+  }
+
+  // must be called with write_lock held or from the writer thread
+  void flushWrites() throws IOException {
+    write_pending = false;
+    if (io != null) {
+      io.flush();
+    }
+  }
+
+  // must be called with write_lock held
+  private void scheduleFlush() {
+    if (write_pending) {
+      return;
+    }
+    write_pending = true;
+    if (write_flusher != null) {
+      flush_requested.signalAll();
+      return;
+    }
+    write_flusher = getThreadFactory().newThread(this::runWriteFlusher);
+    write_flusher.setName("Write flusher " + host + " session");
+    if (daemon_thread) {
+      write_flusher.setDaemon(daemon_thread);
+    }
+    write_flusher.start();
+  }
+
+  private void runWriteFlusher() {
+    Thread self = Thread.currentThread();
+    try {
+      while (true) {
+        write_lock.lock();
+        try {
+          while (!write_pending && write_flusher == self) {
+            flush_requested.await();
+          }
+          if (write_flusher != self) {
+            return;
+          }
+        } finally {
+          write_lock.unlock();
+        }
+        LockSupport.parkNanos(write_coalesce_delay);
+        write_lock.lock();
+        try {
+          if (write_pending && io != null) {
+            flushWrites();
+          }
+        } finally {
+          write_lock.unlock();
+        }
+      }
+    } catch (Exception e) {
+      if (getLogger().isEnabled(Logger.DEBUG)) {
+        getLogger().log(Logger.DEBUG, "Write flusher terminated: " + e, e);
+      }
+    } finally {
+      write_lock.lock();
+      try {
+        if (write_flusher == self) {
+          write_flusher = null;
+        }
+      } finally {
+        write_lock.unlock();
+      }
+    }
+  }
+
+  void stopWriteFlusher() {
+    write_lock.lock();
+    try {
+      write_flusher = null;
+      flush_requested.signalAll();
+    } finally {
+      write_lock.unlock();
+    }
+  }
+
   Runnable thread;
 
   void run() {
@@ -1964,29 +2477,7 @@ public class Session {
               break;
             }
 
-            try {
-              channel.write(foo, start[0], length[0]);
-            } catch (Exception e) {
-              // System.err.println(e);
-              try {
-                channel.disconnect();
-              } catch (Exception ee) {
-              }
-              break;
-            }
-            int len = length[0];
-            channel.setLocalWindowSize(channel.lwsize - len);
-            if (channel.lwsize < channel.lwsize_max / 2) {
-              packet.reset();
-              buf.putByte((byte) SSH_MSG_CHANNEL_WINDOW_ADJUST);
-              buf.putInt(channel.getRecipient());
-              buf.putInt(channel.lwsize_max - channel.lwsize);
-              synchronized (channel) {
-                if (!channel.close)
-                  write(packet);
-              }
-              channel.setLocalWindowSize(channel.lwsize_max);
-            }
+            channel.inbound.data(foo, start[0], length[0], false);
             break;
 
           case SSH_MSG_CHANNEL_EXTENDED_DATA:
@@ -2005,21 +2496,7 @@ public class Session {
               break;
             }
 
-            channel.write_ext(foo, start[0], length[0]);
-
-            len = length[0];
-            channel.setLocalWindowSize(channel.lwsize - len);
-            if (channel.lwsize < channel.lwsize_max / 2) {
-              packet.reset();
-              buf.putByte((byte) SSH_MSG_CHANNEL_WINDOW_ADJUST);
-              buf.putInt(channel.getRecipient());
-              buf.putInt(channel.lwsize_max - channel.lwsize);
-              synchronized (channel) {
-                if (!channel.close)
-                  write(packet);
-              }
-              channel.setLocalWindowSize(channel.lwsize_max);
-            }
+            channel.inbound.data(foo, start[0], length[0], true);
             break;
 
           case SSH_MSG_CHANNEL_WINDOW_ADJUST:
@@ -2041,7 +2518,7 @@ public class Session {
             if (channel != null) {
               // channel.eof_remote=true;
               // channel.eof();
-              channel.eof_remote();
+              channel.inbound.eof();
             }
             /*
              * packet.reset(); buf.putByte((byte)SSH_MSG_CHANNEL_EOF);
@@ -2055,7 +2532,7 @@ public class Session {
             channel = getChannelById(i);
             if (channel != null) {
               // channel.close();
-              channel.disconnect();
+              channel.inbound.close();
             }
             /*
              * if(Channel.pool.size()==0){ thread=null; }
@@ -2074,6 +2551,7 @@ public class Session {
               channel.setRemotePacketSize(rps);
               channel.open_confirmation = true;
               channel.setRecipient(r);
+              channel.openConfirmed();
             }
             break;
           case SSH_MSG_CHANNEL_OPEN_FAILURE:
@@ -2089,6 +2567,7 @@ public class Session {
               channel.close = true;
               channel.eof_remote = true;
               channel.setRecipient(0);
+              channel.openFailed(new JSchException("channel is not opened."));
             }
             break;
           case SSH_MSG_CHANNEL_REQUEST:
@@ -2140,6 +2619,10 @@ public class Session {
               channel = openChannel(ctyp);
               if (channel != null) {
                 channel.getData(buf);
+                if (channel instanceof ChannelForwardedTCPIP
+                    && ((ChannelForwardedTCPIP) channel).startOnSelector()) {
+                  break;
+                }
                 Thread tmp = getThreadFactory().newThread(channel::run);
                 tmp.setName("Channel " + ctyp + " " + host);
                 if (daemon_thread) {
@@ -2169,7 +2652,7 @@ public class Session {
             if (channel == null) {
               break;
             }
-            channel.reply = 1;
+            channel.receiveReply(true);
             break;
           case SSH_MSG_CHANNEL_FAILURE:
             buf.getInt();
@@ -2179,7 +2662,7 @@ public class Session {
             if (channel == null) {
               break;
             }
-            channel.reply = 0;
+            channel.receiveReply(false);
             break;
           case SSH_MSG_GLOBAL_REQUEST:
             buf.getInt();
@@ -2194,16 +2677,9 @@ public class Session {
             break;
           case SSH_MSG_REQUEST_FAILURE:
           case SSH_MSG_REQUEST_SUCCESS:
-            Thread t = grr.getThread();
-            if (t != null) {
-              grr.setReply(msgType == SSH_MSG_REQUEST_SUCCESS ? 1 : 0);
-              if (msgType == SSH_MSG_REQUEST_SUCCESS && grr.getPort() == 0) {
-                buf.getInt();
-                buf.getShort();
-                grr.setPort(buf.getInt());
-              }
-              t.interrupt();
-            }
+            buf.getInt();
+            buf.getShort();
+            receiveGlobalReply(msgType == SSH_MSG_REQUEST_SUCCESS, buf);
             break;
           default:
             // System.err.println("Session.run: unsupported type "+msgType);
@@ -2211,7 +2687,7 @@ public class Session {
         }
       }
     } catch (Exception e) {
-      in_kex = false;
+      setInKex(false);
       if (getLogger().isEnabled(Logger.INFO)) {
         getLogger().log(Logger.INFO,
             "Caught an exception, leaving main loop due to " + e.getMessage(), e);
@@ -2234,11 +2710,16 @@ public class Session {
   void delChannel(Channel c) {
     Lock l = channelsLock.writeLock();
     l.lock();
+    boolean removed;
     try {
-      channels.remove(c);
+      removed = channels.remove(c);
     } finally {
       l.unlock();
     }
+    MetricsListener listener = metricsListener;
+    if (removed && listener != null) {
+      listener.channelClosed(c);
+    }
   }
 
   public void disconnect() {
@@ -2260,7 +2741,7 @@ public class Session {
     l.lock();
     try {
       disconnectingChannels = true;
-      channelsCopy = new ArrayList<>(channels);
+      channelsCopy = channels.values();
     } finally {
       l.unlock();
     }
@@ -2277,8 +2758,19 @@ public class Session {
     }
 
     isConnected = false;
+    failGlobalReplies();
 
     PortWatcher.delPort(this);
+    synchronized (lock) {
+      if (forwardingSelector != null) {
+        forwardingSelector.close();
+        forwardingSelector = null;
+      }
+      if (inboundExecutor != null) {
+        inboundExecutor.shutdown();
+        inboundExecutor = null;
+      }
+    }
     ChannelForwardedTCPIP.delPort(this);
     ChannelX11.removeFakedCookie(this);
 
@@ -2289,9 +2781,17 @@ public class Session {
         connectThread = null;
       }
     }
+    SessionWriter _writer = writer;
+    writer = null;
+    if (_writer != null) {
+      _writer.close();
+    }
+    stopWriteFlusher();
     thread = null;
     try {
-      if (io != null) {
+      if (io instanceof SocketChannelIO) {
+        io.close();
+      } else if (io != null) {
         if (io.in != null)
           io.in.close();
         if (io.out != null)
@@ -2326,6 +2826,8 @@ public class Session {
     // for the first packet during (re)connect.
     seqi = 0;
     seqo = 0;
+    c2s_max_bytes = s2c_max_bytes = Long.MAX_VALUE;
+    rekey_deadline = Long.MAX_VALUE;
     initialKex = true;
     doStrictKex = false;
     doExtInfo = false;
@@ -2350,14 +2852,99 @@ public class Session {
     this.threadFactory = Objects.requireNonNull(threadFactory);
   }
 
+  /**
+   * Sets a listener to receive the transport measurements of this session and its channels as they
+   * are taken.
+   *
+   * @param listener the listener, or <code>null</code> to remove it
+   */
+  public void setMetricsListener(MetricsListener listener) {
+    this.metricsListener = listener;
+  }
+
+  /**
+   * Returns the listener set with {@link #setMetricsListener(MetricsListener)}.
+   *
+   * @return the listener, or <code>null</code> if none has been set
+   */
+  public MetricsListener getMetricsListener() {
+    return metricsListener;
+  }
+
+  /**
+   * Returns the transport measurements of this session so far, summed up over all its channels.
+   * Taking them is cheap enough to leave them on in production; they are always on.
+   *
+   * @return a snapshot of the measurements
+   */
+  public TransportMetrics getMetrics() {
+    List<Channel> values = channels.values();
+    long queued = 0L;
+    for (Channel c : values) {
+      queued += c.inbound.queued();
+    }
+    return metrics.snapshot(queued, values.size());
+  }
+
+  void recordDataSent(Channel c, int len) {
+    c.metrics.bytes_out.add(len);
+    c.metrics.packets_out.increment();
+    MetricsListener listener = metricsListener;
+    if (listener != null) {
+      listener.channelDataSent(c, len);
+    }
+  }
+
+  void recordDataReceived(Channel c, int len) {
+    c.metrics.bytes_in.add(len);
+    c.metrics.packets_in.increment();
+    MetricsListener listener = metricsListener;
+    if (listener != null) {
+      listener.channelDataReceived(c, len);
+    }
+  }
+
+  void recordDataDelivered(Channel c, long nanos) {
+    c.metrics.deliveries.increment();
+    c.metrics.delivery_nanos.add(nanos);
+    metrics.deliveries.increment();
+    metrics.delivery_nanos.add(nanos);
+    MetricsListener listener = metricsListener;
+    if (listener != null) {
+      listener.channelDataDelivered(c, nanos);
+    }
+  }
+
+  private void recordWindowWait(Channel c, long nanos) {
+    c.metrics.window_waits.increment();
+    c.metrics.window_wait_nanos.add(nanos);
+    metrics.window_waits.increment();
+    metrics.window_wait_nanos.add(nanos);
+    MetricsListener listener = metricsListener;
+    if (listener != null) {
+      listener.windowWaited(c, nanos);
+    }
+  }
+
   /**
    * Returns the thread factory used by this instance.
    *
    * @return The thread factory associated with this instance. If no specific thread factory has
-   *         been set, a default thread factory is returned.
+   *         been set, a default thread factory is returned, which creates virtual threads if the
+   *         {@code use_virtual_threads} config is enabled and the runtime supports them.
    */
   public ThreadFactory getThreadFactory() {
-    return threadFactory;
+    ThreadFactory factory = threadFactory;
+    if (factory != null) {
+      return factory;
+    }
+    if (getConfig("use_virtual_threads").equals("yes")) {
+      factory = VirtualThreads.factory();
+      if (factory != null) {
+        return factory;
+      }
+    }
+    return DEFAULT_THREAD_FACTORY;
   }
 
   /**
@@ -2434,12 +3021,7 @@ public class Session {
       ServerSocketFactory ssf, int connectTimeout) throws JSchException {
     PortWatcher pw = PortWatcher.addPort(this, bind_address, lport, host, rport, ssf);
     pw.setConnectTimeout(connectTimeout);
-    Thread tmp = getThreadFactory().newThread(pw::run);
-    tmp.setName("PortWatcher Thread for " + host);
-    if (daemon_thread) {
-      tmp.setDaemon(daemon_thread);
-    }
-    tmp.start();
+    startPortWatcher(pw);
     return pw.lport;
   }
 
@@ -2447,13 +3029,62 @@ public class Session {
       ServerSocketFactory ssf, int connectTimeout) throws JSchException {
     PortWatcher pw = PortWatcher.addSocket(this, bindAddress, lport, socketPath, ssf);
     pw.setConnectTimeout(connectTimeout);
+    startPortWatcher(pw);
+    return pw.lport;
+  }
+
+  private void startPortWatcher(PortWatcher pw) throws JSchException {
+    if (pw.isNio()) {
+      ForwardingSelector selector;
+      try {
+        selector = getForwardingSelector();
+      } catch (IOException e) {
+        pw.delete();
+        throw new JSchException(e.toString(), e);
+      }
+      pw.start(selector);
+      return;
+    }
     Thread tmp = getThreadFactory().newThread(pw::run);
     tmp.setName("PortWatcher Thread for " + host);
     if (daemon_thread) {
       tmp.setDaemon(daemon_thread);
     }
     tmp.start();
-    return pw.lport;
+  }
+
+  ForwardingSelector getForwardingSelector() throws IOException {
+    synchronized (lock) {
+      if (!isConnected) {
+        throw new IOException("session is down");
+      }
+      if (forwardingSelector == null) {
+        forwardingSelector = ForwardingSelector.open(this);
+      }
+      return forwardingSelector;
+    }
+  }
+
+  /**
+   * Returns the executor on which {@link ChannelInbound} delivers the data of channels whose reader
+   * is lagging behind. Each such channel takes a thread for as long as it is behind; idle threads
+   * go away after a minute.
+   */
+  Executor getInboundExecutor() {
+    synchronized (lock) {
+      if (inboundExecutor == null) {
+        inboundExecutor = new ThreadPoolExecutor(0, Integer.MAX_VALUE, 60L, TimeUnit.SECONDS,
+            new SynchronousQueue<>(), r -> {
+              Thread t = getThreadFactory().newThread(r);
+              t.setName("Inbound thread " + host + " session");
+              if (daemon_thread) {
+                t.setDaemon(daemon_thread);
+              }
+              return t;
+            });
+      }
+      return inboundExecutor;
+    }
   }
 
   /**
@@ -2737,82 +3368,88 @@ public class Session {
     }
   }
 
-  private static class GlobalRequestReply {
-    private Thread thread = null;
-    private int reply = -1;
-    private int port = 0;
-
-    void setThread(Thread thread) {
-      this.thread = thread;
-      this.reply = -1;
-    }
+  // global requests waiting for SSH_MSG_REQUEST_SUCCESS or FAILURE, in the order they were sent
+  private final ConcurrentLinkedQueue<CompletableFuture<Buffer>> global_replies =
+      new ConcurrentLinkedQueue<>();
+  private final ReentrantLock global_request_lock = new ReentrantLock();
 
-    Thread getThread() {
-      return thread;
+  /**
+   * Sends a global request with want-reply set. The returned future is completed by the session
+   * thread with the request specific data of SSH_MSG_REQUEST_SUCCESS, and fails if the request has
+   * been declined or the session is gone. As the server replies in the order the requests were
+   * sent, any number of requests may be waiting for their replies at the same time.
+   */
+  CompletableFuture<Buffer> sendGlobalRequest(Packet packet) throws Exception {
+    CompletableFuture<Buffer> future = new CompletableFuture<>();
+    global_request_lock.lock();
+    try {
+      global_replies.add(future);
+      write(packet);
+    } catch (Exception e) {
+      global_replies.remove(future);
+      throw e;
+    } finally {
+      global_request_lock.unlock();
     }
-
-    void setReply(int reply) {
-      this.reply = reply;
+    if (!isConnected) {
+      failGlobalReplies();
     }
+    return future;
+  }
 
-    int getReply() {
-      return this.reply;
+  void receiveGlobalReply(boolean success, Buffer buf) {
+    CompletableFuture<Buffer> future = global_replies.poll();
+    if (future == null) {
+      return;
     }
-
-    int getPort() {
-      return this.port;
+    if (success) {
+      future.complete(new Buffer(Arrays.copyOfRange(buf.buffer, buf.s, buf.index)));
+    } else {
+      future.completeExceptionally(new JSchException("global request failed"));
     }
+  }
 
-    void setPort(int port) {
-      this.port = port;
+  private void failGlobalReplies() {
+    CompletableFuture<Buffer> future;
+    while ((future = global_replies.poll()) != null) {
+      future.completeExceptionally(new JSchException("session is down"));
     }
   }
 
-  private GlobalRequestReply grr = new GlobalRequestReply();
-
   private int _setPortForwardingR(String bind_address, int rport) throws JSchException {
-    synchronized (grr) {
-      Buffer buf = new Buffer(200); // ??
-      Packet packet = new Packet(buf);
-
-      String address_to_bind = ChannelForwardedTCPIP.normalize(bind_address);
+    Buffer buf = new Buffer(200); // ??
+    Packet packet = new Packet(buf);
 
-      grr.setThread(Thread.currentThread());
-      grr.setPort(rport);
+    String address_to_bind = ChannelForwardedTCPIP.normalize(bind_address);
 
-      try {
-        // byte SSH_MSG_GLOBAL_REQUEST 80
-        // string "tcpip-forward"
-        // boolean want_reply
-        // string address_to_bind
-        // uint32 port number to bind
-        packet.reset();
-        buf.putByte((byte) SSH_MSG_GLOBAL_REQUEST);
-        buf.putString(Util.str2byte("tcpip-forward"));
-        buf.putByte((byte) 1);
-        buf.putString(Util.str2byte(address_to_bind));
-        buf.putInt(rport);
-        write(packet);
-      } catch (Exception e) {
-        grr.setThread(null);
-        throw new JSchException(e.toString(), e);
-      }
+    CompletableFuture<Buffer> reply;
+    try {
+      // byte SSH_MSG_GLOBAL_REQUEST 80
+      // string "tcpip-forward"
+      // boolean want_reply
+      // string address_to_bind
+      // uint32 port number to bind
+      packet.reset();
+      buf.putByte((byte) SSH_MSG_GLOBAL_REQUEST);
+      buf.putString(Util.str2byte("tcpip-forward"));
+      buf.putByte((byte) 1);
+      buf.putString(Util.str2byte(address_to_bind));
+      buf.putInt(rport);
+      reply = sendGlobalRequest(packet);
+    } catch (Exception e) {
+      throw new JSchException(e.toString(), e);
+    }
 
-      int count = 0;
-      int reply = grr.getReply();
-      while (count < 10 && reply == -1) {
-        try {
-          Thread.sleep(1000);
-        } catch (Exception e) {
-        }
-        count++;
-        reply = grr.getReply();
-      }
-      grr.setThread(null);
-      if (reply != 1) {
-        throw new JSchException("remote port forwarding failed for listen port " + rport);
-      }
-      rport = grr.getPort();
+    String message = "remote port forwarding failed for listen port " + rport;
+    Buffer data;
+    try {
+      data = Channel.await(reply, 10000L, message);
+    } catch (JSchException e) {
+      throw new JSchException(message, e);
+    }
+    if (rport == 0) {
+      // uint32 port that was bound on the server
+      rport = data.getInt();
     }
     return rport;
   }
@@ -2850,8 +3487,7 @@ public class Session {
     if (foo != null) {
       if (method.equals("zlib") || (isAuthed && method.equals("zlib@openssh.com"))) {
         try {
-          Class<? extends Compression> c = Class.forName(foo).asSubclass(Compression.class);
-          deflater = c.getDeclaredConstructor().newInstance();
+          deflater = AlgorithmFactory.create(foo, Compression.class);
           int level = 6;
           try {
             level = Integer.parseInt(getConfig("compression_level"));
@@ -2883,8 +3519,7 @@ public class Session {
     if (foo != null) {
       if (method.equals("zlib") || (isAuthed && method.equals("zlib@openssh.com"))) {
         try {
-          Class<? extends Compression> c = Class.forName(foo).asSubclass(Compression.class);
-          inflater = c.getDeclaredConstructor().newInstance();
+          inflater = AlgorithmFactory.create(foo, Compression.class);
           inflater.init(Compression.INFLATER, 0, this);
         } catch (Exception ee) {
           throw new JSchException(ee.toString(), ee);
@@ -2898,6 +3533,46 @@ public class Session {
     }
   }
 
+  /**
+   * Applies the {@code channel_window_size} and {@code channel_packet_size} configs to a new
+   * channel, either as given for its type, like {@code channel_window_size.sftp}, or for all
+   * types. With {@code channel_window_autotune}, the window may grow up to
+   * {@code channel_window_autotune_max}.
+   */
+  private void initChannelWindow(Channel channel, String type) {
+    int size = getChannelConfig("channel_window_size", type, channel.lwsize_max);
+    channel.setLocalWindowSizeMax(size);
+    channel.setLocalWindowSize(size);
+    channel.setLocalPacketSize(getChannelConfig("channel_packet_size", type, channel.lmpsize));
+    if (getConfig("channel_window_autotune").equals("yes")) {
+      int max = getChannelConfig("channel_window_autotune_max", type, 0);
+      if (max > size) {
+        channel.setLocalWindowAutoTune(max);
+      }
+    }
+  }
+
+  private int getChannelConfig(String key, String type, int def) {
+    String value = getConfig(key + "." + type);
+    if (value == null) {
+      value = getConfig(key);
+    }
+    if (value == null) {
+      return def;
+    }
+    try {
+      int size = Integer.parseInt(value.trim());
+      if (size > 0) {
+        return size;
+      }
+    } catch (NumberFormatException e) {
+    }
+    if (getLogger().isEnabled(Logger.WARN)) {
+      getLogger().log(Logger.WARN, "Ignoring invalid " + key + ": " + value);
+    }
+    return def;
+  }
+
   private Channel createChannel(String type) {
     Channel channel = null;
     if (type.equals("session")) {
@@ -2945,14 +3620,18 @@ public class Session {
     try {
       if (!disconnectingChannels && isConnected) {
         channel.setSession(this);
-        channels.add(channel);
-        return channel;
+        channels.put(channel);
       } else {
         return null;
       }
     } finally {
       l.unlock();
     }
+    MetricsListener listener = metricsListener;
+    if (listener != null) {
+      listener.channelOpened(channel);
+    }
+    return channel;
   }
 
   String[] getServerSigAlgs() {
@@ -3266,13 +3945,22 @@ public class Session {
   private static final byte[] keepalivemsg = Util.str2byte("keepalive@jcraft.com");
 
   public void sendKeepAliveMsg() throws Exception {
+    sendKeepAlive();
+  }
+
+  /**
+   * Sends a keepalive. The server answers with SSH_MSG_REQUEST_FAILURE, which fails the returned
+   * future just like the session going down does, and must not be taken for the reply to another
+   * request.
+   */
+  CompletableFuture<Buffer> sendKeepAlive() throws Exception {
     Buffer buf = new Buffer();
     Packet packet = new Packet(buf);
     packet.reset();
     buf.putByte((byte) SSH_MSG_GLOBAL_REQUEST);
     buf.putString(keepalivemsg);
     buf.putByte((byte) 1);
-    write(packet);
+    return sendGlobalRequest(packet);
   }
 
   private static final byte[] nomoresessions = Util.str2byte("no-more-sessions@openssh.com");
@@ -3376,7 +4064,7 @@ public class Session {
       String cipher = _ciphers[i];
       if (ciphers2c.indexOf(cipher) == -1 && cipherc2s.indexOf(cipher) == -1)
         continue;
-      if (!checkCipher(getConfig(cipher))) {
+      if (!AlgorithmChecks.isCipherAvailable(getConfig(cipher))) {
         result.add(cipher);
       }
     }
@@ -3395,8 +4083,7 @@ public class Session {
 
   static boolean checkCipher(String cipher) {
     try {
-      Class<? extends Cipher> c = Class.forName(cipher).asSubclass(Cipher.class);
-      Cipher _c = c.getDeclaredConstructor().newInstance();
+      Cipher _c = AlgorithmFactory.create(cipher, Cipher.class);
       _c.init(Cipher.ENCRYPT_MODE, new byte[_c.getBlockSize()], new byte[_c.getIVSize()]);
       return true;
     } catch (Exception | LinkageError e) {
@@ -3421,7 +4108,7 @@ public class Session {
       String mac = _macs[i];
       if (macs2c.indexOf(mac) == -1 && macc2s.indexOf(mac) == -1)
         continue;
-      if (!checkMac(getConfig(mac))) {
+      if (!AlgorithmChecks.isMacAvailable(getConfig(mac))) {
         result.add(mac);
       }
     }
@@ -3440,8 +4127,7 @@ public class Session {
 
   static boolean checkMac(String mac) {
     try {
-      Class<? extends MAC> c = Class.forName(mac).asSubclass(MAC.class);
-      MAC _c = c.getDeclaredConstructor().newInstance();
+      MAC _c = AlgorithmFactory.create(mac, MAC.class);
       _c.init(new byte[_c.getBlockSize()]);
       return true;
     } catch (Exception | LinkageError e) {
@@ -3465,7 +4151,7 @@ public class Session {
       String k = _kexes[i];
       if (kex.indexOf(k) == -1)
         continue;
-      if (!checkKex(this, getConfig(k))) {
+      if (!AlgorithmChecks.isKexAvailable(this, getConfig(k), config)) {
         result.add(k);
       }
     }
@@ -3484,8 +4170,7 @@ public class Session {
 
   static boolean checkKex(Session s, String kex) {
     try {
-      Class<? extends KeyExchange> c = Class.forName(kex).asSubclass(KeyExchange.class);
-      KeyExchange _c = c.getDeclaredConstructor().newInstance();
+      KeyExchange _c = AlgorithmFactory.create(kex, KeyExchange.class);
       _c.doInit(s, null, null, null, null);
       return true;
     } catch (Exception | LinkageError e) {
@@ -3504,15 +4189,10 @@ public class Session {
     List<String> result = new ArrayList<>();
     String[] _sigs = Util.split(sigs, ",");
     for (int i = 0; i < _sigs.length; i++) {
-      try {
-        // Map certificate algorithm names to their base signature algorithm.
-        // Certificate algorithms use the same Signature implementations as their base algorithms.
-        String sigToCheck = OpenSshCertificateKeyTypes.getBaseKeyType(_sigs[i]);
-        Class<? extends Signature> c =
-            Class.forName(JSch.getConfig(sigToCheck)).asSubclass(Signature.class);
-        final Signature sig = c.getDeclaredConstructor().newInstance();
-        sig.init();
-      } catch (Exception | LinkageError e) {
+      // Map certificate algorithm names to their base signature algorithm.
+      // Certificate algorithms use the same Signature implementations as their base algorithms.
+      String sigToCheck = OpenSshCertificateKeyTypes.getBaseKeyType(_sigs[i]);
+      if (!AlgorithmChecks.isSignatureAvailable(JSch.getConfig(sigToCheck))) {
         result.add(_sigs[i]);
       }
     }
@@ -3528,6 +4208,27 @@ public class Session {
     return foo;
   }
 
+  static boolean checkSignature(String signature) {
+    try {
+      Signature _c = AlgorithmFactory.create(signature, Signature.class);
+      _c.init();
+      return true;
+    } catch (Exception | LinkageError e) {
+      return false;
+    }
+  }
+
+  /**
+   * Checks the algorithms listed in CheckCiphers, CheckMacs, CheckKexes and CheckSignatures, like
+   * {@link #connect()} does, so that the results are known before the first connect.
+   */
+  void checkAlgorithms() {
+    checkCiphers(getConfig("CheckCiphers"));
+    checkMacs(getConfig("CheckMacs"));
+    checkKexes(getConfig("CheckKexes"));
+    checkSignatures(getConfig("CheckSignatures"));
+  }
+
   /**
    * Checks if a CA signature algorithm is allowed and available at runtime.
    * <p>
@@ -3676,6 +4377,14 @@ public class Session {
     checkConfig(config, "try_additional_pubkey_algorithms");
     checkConfig(config, "enable_auth_none");
     checkConfig(config, "use_sftp_write_flush_workaround");
+    checkConfig(config, "use_nio_transport");
+    checkConfig(config, "use_nio_forwarding");
+    checkConfig(config, "use_virtual_threads");
+    checkConfig(config, "write_buffer_size");
+    checkConfig(config, "write_coalesce_delay");
+    checkConfig(config, "use_writer_thread");
+    checkConfig(config, "channel_window_autotune");
+    checkConfig(config, "channel_window_autotune_max");
 
     checkConfig(config, "cipher.c2s");
     checkConfig(config, "cipher.s2c");
@@ -3692,6 +4401,7 @@ public class Session {
     checkConfig(config, "FingerprintHash");
     checkConfig(config, "MaxAuthTries");
     checkConfig(config, "ClearAllForwardings");
+    checkConfig(config, "RekeyLimit");
 
     value = config.getValue("HostKeyAlias");
     if (value != null)
@@ -0,0 +1,421 @@
+package com.jcraft.jsch;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.TreeMap;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * Keeps authenticated sessions open and opens channels on them, so that a job connecting to a host
+ * another job has already connected to gets a channel on the existing session instead of paying for
+ * the TCP connection, the key exchange and the authentication again; much like OpenSSH's
+ * ControlMaster.
+ *
+ * <p>
+ * Sessions are shared by the user name, host, port and session configuration they are asked for.
+ * A session carries at most {@link #setMaxChannelsPerSession(int) a number of} channels at once;
+ * once all sessions for a key are that busy, another one is connected. A channel is given back by
+ * disconnecting it, and a session which has had no channel for the {@link #setIdleTimeout(int) idle
+ * timeout} is disconnected. Before a session which has had no channel is used again, and while it
+ * is idle, a keepalive checks that it is still alive: a session which does not answer it within the
+ * {@link #setKeepAliveTimeout(int) keepalive timeout} is disconnected.
+ *
+ * <pre>
+ * SessionPool pool = jsch.getSessionPool();
+ * pool.setSessionConfigurer(session -&gt; session.setUserInfo(ui));
+ * ChannelExec channel = (ChannelExec) pool.openChannel("exec", "user", "host", 22, null);
+ * channel.setCommand("uptime");
+ * channel.connect();
+ * ...
+ * channel.disconnect();
+ * </pre>
+ *
+ * @see JSch#getSessionPool()
+ */
+public class SessionPool {
+
+  /** Prepares a session the pool has created before it is connected, e.g. sets its password. */
+  public interface SessionConfigurer {
+    void configure(Session session) throws JSchException;
+  }
+
+  private final JSch jsch;
+
+  private final Object lock = new Object();
+  // guarded by lock
+  private final HashMap<String, List<Entry>> sessions = new HashMap<>();
+  private ScheduledFuture<?> reaper = null;
+  private boolean closed = false;
+
+  private volatile SessionConfigurer configurer = null;
+  private volatile int max_channels = 10;
+  private volatile int idle_timeout = 60000;
+  private volatile int keepalive_timeout = 10000;
+
+  SessionPool(JSch jsch) {
+    this.jsch = jsch;
+  }
+
+  /**
+   * Sets what prepares the sessions created by this pool before they are connected, e.g. sets their
+   * password or {@link UserInfo}.
+   */
+  public void setSessionConfigurer(SessionConfigurer configurer) {
+    this.configurer = configurer;
+  }
+
+  /**
+   * Sets how many channels a pooled session carries at most at once; 10 by default, like the
+   * default of OpenSSH's MaxSessions.
+   */
+  public void setMaxChannelsPerSession(int max) throws JSchException {
+    if (max <= 0) {
+      throw new JSchException("max channels per session must be positive");
+    }
+    this.max_channels = max;
+  }
+
+  public int getMaxChannelsPerSession() {
+    return max_channels;
+  }
+
+  /**
+   * Sets how long in milliseconds a pooled session is kept open without any channel; 60000 by
+   * default.
+   */
+  public void setIdleTimeout(int timeout) throws JSchException {
+    if (timeout <= 0) {
+      throw new JSchException("idle timeout must be positive");
+    }
+    this.idle_timeout = timeout;
+  }
+
+  public int getIdleTimeout() {
+    return idle_timeout;
+  }
+
+  /**
+   * Sets how long in milliseconds a pooled session which has had no channel is given to answer a
+   * keepalive before it is taken for dead; 10000 by default.
+   */
+  public void setKeepAliveTimeout(int timeout) throws JSchException {
+    if (timeout <= 0) {
+      throw new JSchException("keepalive timeout must be positive");
+    }
+    this.keepalive_timeout = timeout;
+  }
+
+  public int getKeepAliveTimeout() {
+    return keepalive_timeout;
+  }
+
+  /**
+   * Opens a channel on a pooled session to <code>host</code>, connecting a new session if there is
+   * none which could carry another channel. The channel has not been connected yet, and gives its
+   * place on the session back once it is disconnected.
+   *
+   * @param type the channel type, see {@link Session#openChannel(String)}
+   * @param username user name, see {@link JSch#getSession(String, String, int)}
+   * @param host hostname
+   * @param port port number
+   * @param config the configuration of the session, or <code>null</code>; sessions are only shared
+   *        between callers asking for the same configuration
+   * @return the channel
+   * @throws JSchException if the session could not be connected or the channel could not be opened
+   */
+  public Channel openChannel(String type, String username, String host, int port,
+      Properties config) throws JSchException {
+    String key = key(username, host, port, config);
+    while (true) {
+      Entry entry = reserve(key);
+      if (entry == null) {
+        break;
+      }
+      try {
+        // a session without channels may have been idle for a while
+        if (entry.session.channels.size() == 0 && !isAlive(entry.session)) {
+          evict(entry);
+          continue;
+        }
+        Channel channel = entry.session.openChannel(type);
+        if (channel != null) {
+          return channel;
+        }
+        if (entry.session.isConnected()) {
+          throw new JSchException("channel type " + type + " could not be opened");
+        }
+        evict(entry);
+      } finally {
+        release(entry);
+      }
+    }
+
+    Session session = connect(username, host, port, config);
+    Entry entry = new Entry(key, session);
+    synchronized (lock) {
+      if (closed) {
+        session.disconnect();
+        throw new JSchException("session pool is closed");
+      }
+      sessions.computeIfAbsent(key, k -> new ArrayList<>()).add(entry);
+      if (reaper == null) {
+        long period = Math.max(idle_timeout / 2, 10);
+        reaper = Reaper.timer.scheduleWithFixedDelay(this::reap, period, period,
+            TimeUnit.MILLISECONDS);
+      }
+    }
+    try {
+      Channel channel = session.openChannel(type);
+      if (channel == null) {
+        throw new JSchException("channel type " + type + " could not be opened");
+      }
+      return channel;
+    } finally {
+      release(entry);
+    }
+  }
+
+  Session connect(String username, String host, int port, Properties config)
+      throws JSchException {
+    Session session = jsch.getSession(username, host, port);
+    if (config != null) {
+      session.setConfig(config);
+    }
+    SessionConfigurer _configurer = configurer;
+    if (_configurer != null) {
+      _configurer.configure(session);
+    }
+    session.connect();
+    return session;
+  }
+
+  /** Returns how many sessions are pooled at the moment. */
+  public int getSessionCount() {
+    synchronized (lock) {
+      int n = 0;
+      for (List<Entry> entries : sessions.values()) {
+        n += entries.size();
+      }
+      return n;
+    }
+  }
+
+  /**
+   * Disconnects all pooled sessions, including the channels still open on them. The pool cannot be
+   * used any more afterwards.
+   */
+  public void close() {
+    List<Entry> entries = new ArrayList<>();
+    synchronized (lock) {
+      closed = true;
+      for (List<Entry> list : sessions.values()) {
+        entries.addAll(list);
+      }
+      sessions.clear();
+      if (reaper != null) {
+        reaper.cancel(false);
+        reaper = null;
+      }
+    }
+    for (Entry entry : entries) {
+      entry.session.disconnect();
+    }
+  }
+
+  boolean isClosed() {
+    synchronized (lock) {
+      return closed;
+    }
+  }
+
+  /**
+   * Returns a connected session for key which can carry another channel, with a place on it
+   * reserved, or null if all are saturated.
+   */
+  private Entry reserve(String key) throws JSchException {
+    synchronized (lock) {
+      if (closed) {
+        throw new JSchException("session pool is closed");
+      }
+      List<Entry> entries = sessions.get(key);
+      if (entries == null) {
+        return null;
+      }
+      for (Entry entry : entries) {
+        if (entry.session.isConnected() && entry.load() < max_channels) {
+          entry.reserved++;
+          return entry;
+        }
+      }
+      return null;
+    }
+  }
+
+  private void release(Entry entry) {
+    synchronized (lock) {
+      entry.reserved--;
+      if (entry.load() > 0) {
+        entry.idle_since = 0L;
+      }
+    }
+  }
+
+  private void evict(Entry entry) {
+    synchronized (lock) {
+      List<Entry> entries = sessions.get(entry.key);
+      if (entries != null && entries.remove(entry) && entries.isEmpty()) {
+        sessions.remove(entry.key);
+      }
+    }
+    entry.session.disconnect();
+  }
+
+  /** Disconnects the sessions which have been idle for too long or are not alive any more. */
+  void reap() {
+    long now = System.nanoTime();
+    long timeout = TimeUnit.MILLISECONDS.toNanos(idle_timeout);
+    List<Entry> expired = new ArrayList<>();
+    List<Entry> idle = new ArrayList<>();
+    synchronized (lock) {
+      for (Iterator<List<Entry>> i = sessions.values().iterator(); i.hasNext();) {
+        List<Entry> entries = i.next();
+        for (Iterator<Entry> j = entries.iterator(); j.hasNext();) {
+          Entry entry = j.next();
+          if (entry.reserved > 0) {
+            continue;
+          }
+          if (entry.load() > 0) {
+            entry.idle_since = 0L;
+            if (!entry.session.isConnected()) {
+              j.remove();
+            }
+            continue;
+          }
+          if (entry.idle_since == 0L) {
+            // 0 stands for busy
+            entry.idle_since = now | 1L;
+          }
+          if (!entry.session.isConnected() || now - entry.idle_since >= timeout) {
+            j.remove();
+            expired.add(entry);
+          } else {
+            idle.add(entry);
+          }
+        }
+        if (entries.isEmpty()) {
+          i.remove();
+        }
+      }
+      if (sessions.isEmpty() && reaper != null) {
+        reaper.cancel(false);
+        reaper = null;
+      }
+    }
+    for (Entry entry : expired) {
+      entry.session.disconnect();
+    }
+    for (Entry entry : idle) {
+      CompletableFuture<Buffer> reply = sendKeepAlive(entry.session);
+      if (reply == null) {
+        evict(entry);
+        continue;
+      }
+      // not waited for here, so that a session which does not answer does not hold up the reaper,
+      // which is shared by all pools
+      Reaper.timer.schedule(() -> {
+        if (!answered(entry.session, reply)) {
+          evict(entry);
+        }
+      }, keepalive_timeout, TimeUnit.MILLISECONDS);
+    }
+  }
+
+  private boolean isAlive(Session session) {
+    CompletableFuture<Buffer> reply = sendKeepAlive(session);
+    if (reply == null) {
+      return false;
+    }
+    try {
+      reply.get(keepalive_timeout, TimeUnit.MILLISECONDS);
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      return false;
+    } catch (ExecutionException | TimeoutException e) {
+      // see answered()
+    }
+    return answered(session, reply);
+  }
+
+  // returns null if the session has gone
+  private static CompletableFuture<Buffer> sendKeepAlive(Session session) {
+    if (!session.isConnected()) {
+      return null;
+    }
+    try {
+      return session.sendKeepAlive();
+    } catch (Exception e) {
+      return null;
+    }
+  }
+
+  // any reply, SSH_MSG_REQUEST_FAILURE included, shows that the session is alive; the reply also
+  // fails once the session has gone, which has been marked as disconnected by then
+  private static boolean answered(Session session, CompletableFuture<Buffer> reply) {
+    return reply.isDone() && session.isConnected();
+  }
+
+  private static String key(String username, String host, int port, Properties config) {
+    StringBuilder key = new StringBuilder();
+    key.append(username).append('@').append(host).append(':').append(port);
+    if (config != null) {
+      Map<String, String> sorted = new TreeMap<>();
+      for (String name : config.stringPropertyNames()) {
+        sorted.put(name, config.getProperty(name));
+      }
+      for (Map.Entry<String, String> e : sorted.entrySet()) {
+        key.append('\n').append(e.getKey()).append('=').append(e.getValue());
+      }
+    }
+    return key.toString();
+  }
+
+  private static class Entry {
+    final String key;
+    final Session session;
+    // places reserved by openChannel() for channels not opened yet, guarded by lock
+    int reserved = 1;
+    // System.nanoTime() since when the session has had no channel, or 0, guarded by lock
+    long idle_since = 0L;
+
+    Entry(String key, Session session) {
+      this.key = key;
+      this.session = session;
+    }
+
+    int load() {
+      return session.channels.size() + reserved;
+    }
+  }
+
+  // the thread is only created once the first session is pooled
+  private static class Reaper {
+    static final ScheduledThreadPoolExecutor timer = new ScheduledThreadPoolExecutor(1, r -> {
+      Thread thread = new Thread(r, "Session pool reaper");
+      thread.setDaemon(true);
+      return thread;
+    });
+
+    static {
+      timer.setRemoveOnCancelPolicy(true);
+    }
+  }
+}
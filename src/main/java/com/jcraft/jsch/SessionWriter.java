@@ -0,0 +1,203 @@
+package com.jcraft.jsch;
+
+import java.io.IOException;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Encodes and sends the packets of a {@link Session} from a single thread, enabled with the
+ * {@code use_writer_thread} config.
+ *
+ * <p>
+ * Channel data and window adjustments are copied into a lock-free queue and the caller returns
+ * right away; it only blocks while the queue is full. Any other packet is queued as it is and the
+ * caller waits until it has been sent, so that, for example, key exchange messages have left before
+ * new keys are taken into use. The writer thread flushes whenever the queue runs empty.
+ */
+class SessionWriter {
+  static final int QUEUE_SIZE = 256;
+
+  private final Session session;
+  private final ConcurrentLinkedQueue<Entry> queue = new ConcurrentLinkedQueue<>();
+  private final ConcurrentLinkedQueue<Entry> free = new ConcurrentLinkedQueue<>();
+  private final Semaphore space = new Semaphore(QUEUE_SIZE);
+  private final AtomicBoolean sleeping = new AtomicBoolean();
+
+  private volatile Thread thread;
+  private volatile boolean closed = false;
+  private volatile Exception failure = null;
+
+  SessionWriter(Session session) {
+    this.session = session;
+  }
+
+  void start() {
+    Thread t = session.getThreadFactory().newThread(this::run);
+    t.setName("Writer thread " + session.host + " session");
+    if (session.daemon_thread) {
+      t.setDaemon(session.daemon_thread);
+    }
+    thread = t;
+    t.start();
+  }
+
+  void write(Packet packet) throws Exception {
+    check();
+    int command = packet.buffer.getCommand() & 0xff;
+    if (command == Session.SSH_MSG_CHANNEL_DATA || command == Session.SSH_MSG_CHANNEL_EXTENDED_DATA
+        || command == Session.SSH_MSG_CHANNEL_WINDOW_ADJUST) {
+      space.acquireUninterruptibly();
+      Entry entry = free.poll();
+      if (entry == null) {
+        entry = new Entry();
+      }
+      entry.copy(packet);
+      enqueue(entry);
+      return;
+    }
+
+    Entry entry = new Entry(packet);
+    space.acquireUninterruptibly();
+    enqueue(entry);
+    boolean interrupted = false;
+    while (true) {
+      try {
+        entry.written.await();
+        break;
+      } catch (InterruptedException e) {
+        interrupted = true;
+      }
+    }
+    if (interrupted) {
+      Thread.currentThread().interrupt();
+    }
+    if (entry.failure != null) {
+      throw new IOException(entry.failure.toString(), entry.failure);
+    }
+  }
+
+  void close() {
+    closed = true;
+    Thread t = thread;
+    if (t != null) {
+      LockSupport.unpark(t);
+    }
+  }
+
+  private void check() throws Exception {
+    Exception e = failure;
+    if (e != null) {
+      throw new IOException(e.toString(), e);
+    }
+    if (closed) {
+      throw new JSchException("session is down");
+    }
+  }
+
+  private void enqueue(Entry entry) {
+    queue.offer(entry);
+    if (closed) {
+      // the writer thread may be gone already
+      discard();
+    } else if (sleeping.get() && sleeping.compareAndSet(true, false)) {
+      LockSupport.unpark(thread);
+    }
+  }
+
+  private void run() {
+    boolean dirty = false;
+    try {
+      while (!closed) {
+        Entry entry = queue.poll();
+        if (entry == null) {
+          if (dirty) {
+            session.flushWrites();
+            dirty = false;
+          }
+          sleeping.set(true);
+          if (queue.isEmpty() && !closed) {
+            LockSupport.park(this);
+          }
+          sleeping.set(false);
+          continue;
+        }
+        space.release();
+        try {
+          session.writePacket(entry.packet, true);
+          dirty = true;
+          if (entry.written != null) {
+            session.flushWrites();
+            dirty = false;
+          }
+        } catch (Exception e) {
+          entry.done(e);
+          throw e;
+        }
+        entry.done(null);
+      }
+    } catch (Exception e) {
+      failure = e;
+      if (session.getLogger().isEnabled(Logger.ERROR)) {
+        session.getLogger().log(Logger.ERROR, "Writer thread terminated: " + e, e);
+      }
+    } finally {
+      closed = true;
+      discard();
+    }
+  }
+
+  /** Releases all callers waiting for queued packets, once the writer thread has stopped. */
+  private void discard() {
+    Exception e = failure;
+    if (e == null) {
+      e = new JSchException("session is down");
+    }
+    Entry entry;
+    while ((entry = queue.poll()) != null) {
+      space.release();
+      entry.done(e);
+    }
+  }
+
+  private class Entry {
+    final Packet packet;
+    final CountDownLatch written;
+    private byte[] array;
+    private volatile Exception failure;
+
+    // a copy of channel data, recycled once it has been sent
+    Entry() {
+      packet = new Packet(new Buffer(0));
+      written = null;
+    }
+
+    // a packet whose caller waits until it has been sent
+    Entry(Packet packet) {
+      this.packet = packet;
+      this.written = new CountDownLatch(1);
+    }
+
+    void copy(Packet src) {
+      Buffer buf = packet.buffer;
+      buf.reset();
+      buf.checkFreeSize(src.buffer.index);
+      System.arraycopy(src.buffer.buffer, 0, buf.buffer, 0, src.buffer.index);
+      buf.index = src.buffer.index;
+      array = buf.buffer;
+    }
+
+    void done(Exception e) {
+      if (written != null) {
+        failure = e;
+        written.countDown();
+      } else {
+        // the deflater may have replaced the array
+        packet.buffer.buffer = array;
+        free.offer(this);
+      }
+    }
+  }
+}
@@ -32,8 +32,7 @@ class SignatureWrapper implements Signature {
   SignatureWrapper(String algorithm, Session session) throws JSchException {
     try {
       // Session.getConfig(algorithm)
-      this.signature = Class.forName(session.getConfig(algorithm)).asSubclass(Signature.class)
-          .getDeclaredConstructor().newInstance();
+      this.signature = AlgorithmFactory.create(session.getConfig(algorithm), Signature.class);
     } catch (Exception | LinkageError e) {
       throw new JSchException("Failed to instantiate signature for algorithm '" + algorithm + "'",
           e);
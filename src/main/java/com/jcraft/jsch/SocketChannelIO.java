@@ -0,0 +1,284 @@
+package com.jcraft.jsch;
+
+import java.io.IOException;
+import java.net.SocketTimeoutException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.SocketChannel;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Session transport on top of a non-blocking {@link SocketChannel}, enabled with the
+ * {@code use_nio_transport} config.
+ *
+ * <p>
+ * Outgoing packets are collected in a direct buffer until {@link #flush()} and incoming data is
+ * read in large chunks, so that reading a packet rarely takes more than one system call. The direct
+ * buffers are pooled per JVM, as allocating them is expensive. The read timeout of the underlying
+ * socket is honoured by waiting on a {@link Selector}.
+ */
+class SocketChannelIO extends IO {
+  private static final int BUFFER_SIZE = 64 * 1024;
+  private static final int MAX_POOLED_BUFFERS = 32;
+
+  private static final ConcurrentLinkedQueue<ByteBuffer> pool = new ConcurrentLinkedQueue<>();
+  private static final AtomicInteger pooled = new AtomicInteger();
+
+  private final SocketChannel channel;
+  private final Selector readSelector;
+  private final Selector writeSelector;
+
+  // locks rather than monitors, so that virtual threads waiting for the socket do not pin
+  private final ReentrantLock readLock = new ReentrantLock();
+  private final ReentrantLock writeLock = new ReentrantLock();
+  private ByteBuffer rbuf;
+  private ByteBuffer wbuf;
+
+  SocketChannelIO(SocketChannel channel) throws IOException {
+    this.channel = channel;
+    Selector rs = null;
+    Selector ws = null;
+    try {
+      channel.configureBlocking(false);
+      rs = Selector.open();
+      ws = Selector.open();
+      channel.register(rs, SelectionKey.OP_READ);
+      channel.register(ws, SelectionKey.OP_WRITE);
+    } catch (IOException e) {
+      if (rs != null)
+        rs.close();
+      if (ws != null)
+        ws.close();
+      throw e;
+    }
+    readSelector = rs;
+    writeSelector = ws;
+    rbuf = acquire();
+    rbuf.flip();
+    wbuf = acquire();
+  }
+
+  @Override
+  void put(Packet p) throws IOException {
+    put(p.buffer.buffer, 0, p.buffer.index);
+  }
+
+  @Override
+  void put(byte[] array, int begin, int length) throws IOException {
+    writeLock.lock();
+    try {
+      append(array, begin, length);
+      drain();
+    } finally {
+      writeLock.unlock();
+    }
+  }
+
+  @Override
+  void write(Packet p) throws IOException {
+    writeLock.lock();
+    try {
+      append(p.buffer.buffer, 0, p.buffer.index);
+    } finally {
+      writeLock.unlock();
+    }
+  }
+
+  @Override
+  void flush() throws IOException {
+    writeLock.lock();
+    try {
+      drain();
+    } finally {
+      writeLock.unlock();
+    }
+  }
+
+  @Override
+  int getByte() throws IOException {
+    readLock.lock();
+    try {
+      if (!fill()) {
+        return -1;
+      }
+      return rbuf.get() & 0xff;
+    } finally {
+      readLock.unlock();
+    }
+  }
+
+  @Override
+  void getByte(byte[] array, int begin, int length) throws IOException {
+    readLock.lock();
+    try {
+      while (length > 0) {
+        if (!fill()) {
+          throw new IOException("End of IO Stream Read");
+        }
+        int n = Math.min(length, rbuf.remaining());
+        rbuf.get(array, begin, n);
+        begin += n;
+        length -= n;
+      }
+    } finally {
+      readLock.unlock();
+    }
+  }
+
+  @Override
+  void out_close() {
+    try {
+      channel.shutdownOutput();
+    } catch (Exception ee) {
+    }
+  }
+
+  @Override
+  void close() {
+    try {
+      channel.close();
+    } catch (Exception ee) {
+    }
+    // wake up threads waiting for the channel, so that they give up the buffers
+    readSelector.wakeup();
+    writeSelector.wakeup();
+    readLock.lock();
+    try {
+      release(rbuf);
+      rbuf = null;
+    } finally {
+      readLock.unlock();
+    }
+    writeLock.lock();
+    try {
+      release(wbuf);
+      wbuf = null;
+    } finally {
+      writeLock.unlock();
+    }
+    try {
+      readSelector.close();
+    } catch (Exception ee) {
+    }
+    try {
+      writeSelector.close();
+    } catch (Exception ee) {
+    }
+  }
+
+  private void append(byte[] array, int begin, int length) throws IOException {
+    ByteBuffer buf = wbuf;
+    if (buf == null) {
+      throw new ClosedChannelException();
+    }
+    while (length > 0) {
+      if (!buf.hasRemaining()) {
+        drain();
+      }
+      int n = Math.min(length, buf.remaining());
+      buf.put(array, begin, n);
+      begin += n;
+      length -= n;
+    }
+  }
+
+  /** Writes out everything collected in wbuf. */
+  private void drain() throws IOException {
+    ByteBuffer buf = wbuf;
+    if (buf == null) {
+      throw new ClosedChannelException();
+    }
+    buf.flip();
+    boolean interrupted = false;
+    try {
+      while (buf.hasRemaining()) {
+        if (channel.write(buf) == 0) {
+          interrupted |= select(writeSelector, 0);
+        }
+      }
+    } finally {
+      buf.compact();
+      if (interrupted) {
+        Thread.currentThread().interrupt();
+      }
+    }
+  }
+
+  /** Makes sure that rbuf has data to read, returns false at the end of the stream. */
+  private boolean fill() throws IOException {
+    ByteBuffer buf = rbuf;
+    if (buf == null) {
+      throw new ClosedChannelException();
+    }
+    if (buf.hasRemaining()) {
+      return true;
+    }
+    buf.clear();
+    boolean interrupted = false;
+    try {
+      int timeout = channel.socket().getSoTimeout();
+      long deadline = timeout > 0 ? System.nanoTime() + timeout * 1000000L : 0;
+      while (true) {
+        int n = channel.read(buf);
+        if (n < 0) {
+          return false;
+        }
+        if (n > 0) {
+          return true;
+        }
+        long wait = 0;
+        if (timeout > 0) {
+          wait = (deadline - System.nanoTime()) / 1000000L;
+          if (wait <= 0) {
+            throw new SocketTimeoutException("Read timed out");
+          }
+        }
+        interrupted |= select(readSelector, wait);
+      }
+    } finally {
+      buf.flip();
+      if (interrupted) {
+        Thread.currentThread().interrupt();
+      }
+    }
+  }
+
+  /**
+   * Waits until the channel is ready. Like the blocking socket streams, this does not give up when
+   * the thread is interrupted; the interrupt status is cleared and returned instead, so that the
+   * caller can restore it once the transfer has completed.
+   */
+  private boolean select(Selector selector, long timeout) throws IOException {
+    selector.select(timeout);
+    selector.selectedKeys().clear();
+    if (!channel.isOpen()) {
+      throw new ClosedChannelException();
+    }
+    return Thread.interrupted();
+  }
+
+  private static ByteBuffer acquire() {
+    ByteBuffer buf = pool.poll();
+    if (buf == null) {
+      return ByteBuffer.allocateDirect(BUFFER_SIZE);
+    }
+    pooled.decrementAndGet();
+    buf.clear();
+    return buf;
+  }
+
+  private static void release(ByteBuffer buf) {
+    if (buf == null) {
+      return;
+    }
+    if (pooled.incrementAndGet() <= MAX_POOLED_BUFFERS) {
+      pool.offer(buf);
+    } else {
+      pooled.decrementAndGet();
+    }
+  }
+}
@@ -0,0 +1,116 @@
+package com.jcraft.jsch;
+
+/**
+ * A snapshot of the transport measurements of a session, see {@link Session#getMetrics()}, or of a
+ * single channel, see {@link Channel#getMetrics()}. All counts start when the session or channel
+ * is created.
+ *
+ * <p>
+ * For a session, bytes and packets are counted on the wire, including the overhead of the
+ * transport; for a channel, they count the data of SSH_MSG_CHANNEL_DATA and
+ * SSH_MSG_CHANNEL_EXTENDED_DATA only.
+ */
+public final class TransportMetrics {
+  private final long bytesIn;
+  private final long bytesOut;
+  private final long packetsIn;
+  private final long packetsOut;
+  private final long windowWaits;
+  private final long windowWaitNanos;
+  private final long kexCount;
+  private final long kexNanos;
+  private final long deliveries;
+  private final long deliveryNanos;
+  private final long inboundQueuedBytes;
+  private final int openChannels;
+
+  TransportMetrics(long bytesIn, long bytesOut, long packetsIn, long packetsOut, long windowWaits,
+      long windowWaitNanos, long kexCount, long kexNanos, long deliveries, long deliveryNanos,
+      long inboundQueuedBytes, int openChannels) {
+    this.bytesIn = bytesIn;
+    this.bytesOut = bytesOut;
+    this.packetsIn = packetsIn;
+    this.packetsOut = packetsOut;
+    this.windowWaits = windowWaits;
+    this.windowWaitNanos = windowWaitNanos;
+    this.kexCount = kexCount;
+    this.kexNanos = kexNanos;
+    this.deliveries = deliveries;
+    this.deliveryNanos = deliveryNanos;
+    this.inboundQueuedBytes = inboundQueuedBytes;
+    this.openChannels = openChannels;
+  }
+
+  /** Returns the number of bytes received. */
+  public long getBytesIn() {
+    return bytesIn;
+  }
+
+  /** Returns the number of bytes sent. */
+  public long getBytesOut() {
+    return bytesOut;
+  }
+
+  /** Returns the number of packets received. */
+  public long getPacketsIn() {
+    return packetsIn;
+  }
+
+  /** Returns the number of packets sent. */
+  public long getPacketsOut() {
+    return packetsOut;
+  }
+
+  /** Returns how many times a write had to wait for the peer to open the remote window. */
+  public long getWindowWaits() {
+    return windowWaits;
+  }
+
+  /** Returns the total time writes have waited for the peer to open the remote window. */
+  public long getWindowWaitNanos() {
+    return windowWaitNanos;
+  }
+
+  /** Returns the number of completed key exchanges; always 0 for a channel. */
+  public long getKexCount() {
+    return kexCount;
+  }
+
+  /** Returns the total time spent in key exchanges; always 0 for a channel. */
+  public long getKexNanos() {
+    return kexNanos;
+  }
+
+  /** Returns how many times received channel data has been handed over to the application. */
+  public long getInboundDeliveries() {
+    return deliveries;
+  }
+
+  /**
+   * Returns the total time between receiving channel data and handing it over to the application,
+   * which grows as the application falls behind in reading.
+   */
+  public long getInboundDeliveryNanos() {
+    return deliveryNanos;
+  }
+
+  /** Returns the number of bytes received but not yet handed over to the application. */
+  public long getInboundQueuedBytes() {
+    return inboundQueuedBytes;
+  }
+
+  /** Returns the number of open channels; always 0 for a channel. */
+  public int getOpenChannels() {
+    return openChannels;
+  }
+
+  @Override
+  public String toString() {
+    return "TransportMetrics[bytesIn=" + bytesIn + ", bytesOut=" + bytesOut + ", packetsIn="
+        + packetsIn + ", packetsOut=" + packetsOut + ", windowWaits=" + windowWaits
+        + ", windowWaitNanos=" + windowWaitNanos + ", kexCount=" + kexCount + ", kexNanos="
+        + kexNanos + ", inboundDeliveries=" + deliveries + ", inboundDeliveryNanos="
+        + deliveryNanos + ", inboundQueuedBytes=" + inboundQueuedBytes + ", openChannels="
+        + openChannels + "]";
+  }
+}
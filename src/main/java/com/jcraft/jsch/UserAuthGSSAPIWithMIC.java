@@ -112,9 +112,7 @@ class UserAuthGSSAPIWithMIC extends UserAuth {
 
     GSSContext context = null;
     try {
-      Class<? extends GSSContext> c =
-          Class.forName(session.getConfig(method)).asSubclass(GSSContext.class);
-      context = c.getDeclaredConstructor().newInstance();
+      context = AlgorithmFactory.create(session.getConfig(method), GSSContext.class);
     } catch (Exception e) {
       return false;
     }
@@ -33,6 +33,7 @@ import java.io.InputStream;
 import java.net.InetSocketAddress;
 import java.net.Socket;
 import java.net.SocketTimeoutException;
+import java.nio.channels.SocketChannel;
 import java.nio.charset.Charset;
 import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
@@ -388,6 +389,26 @@ class Util {
     }
   }
 
+  static SocketChannel createSocketChannel(String host, int port, int timeout)
+      throws JSchException {
+    SocketChannel channel = null;
+    try {
+      channel = SocketChannel.open();
+      channel.socket().connect(new InetSocketAddress(host, port), timeout);
+      return channel;
+    } catch (Exception e) {
+      try {
+        if (channel != null)
+          channel.close();
+      } catch (Exception ignore) {
+      }
+
+      String message =
+          e instanceof SocketTimeoutException ? "timeout: socket is not established" : e.toString();
+      throw new JSchException(message, e);
+    }
+  }
+
   static byte[] str2byte(String str, Charset encoding) {
     if (str == null)
       return null;
@@ -504,6 +525,14 @@ class Util {
     return res == 0;
   }
 
+  static boolean arraysequals(byte[] a, int aoff, byte[] b, int boff, int len) {
+    int res = 0;
+    for (int i = 0; i < len; i++) {
+      res |= a[aoff + i] ^ b[boff + i];
+    }
+    return res == 0;
+  }
+
   static String getSystemEnv(String name) {
     try {
       return System.getenv(name);
@@ -0,0 +1,11 @@
+package com.jcraft.jsch;
+
+import java.util.concurrent.ThreadFactory;
+
+final class VirtualThreads {
+
+  /** Returns a factory for virtual threads, or {@code null} if the runtime has none. */
+  static ThreadFactory factory() {
+    return null;
+  }
+}
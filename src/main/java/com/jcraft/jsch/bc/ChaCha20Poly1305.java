@@ -27,7 +27,7 @@
 package com.jcraft.jsch.bc;
 
 import com.jcraft.jsch.Cipher;
-import java.nio.ByteBuffer;
+import java.util.Arrays;
 import javax.crypto.AEADBadTagException;
 import org.bouncycastle.crypto.engines.ChaChaEngine;
 import org.bouncycastle.crypto.macs.Poly1305;
@@ -40,12 +40,17 @@ public class ChaCha20Poly1305 implements Cipher {
   // Actually the key size, not block size
   private static final int bsize = 64;
   private static final int tagsize = 16;
-  private ChaChaEngine header_cipher;
-  private ChaChaEngine main_cipher;
+  private Engine header_cipher;
+  private Engine main_cipher;
   private KeyParameter K_1_spec;
   private KeyParameter K_2_spec;
   private int mode;
   private Poly1305 poly1305;
+  private final byte[] nonce = new byte[8];
+  private final byte[] poly_block = new byte[64];
+  // Poly1305 reads the key from the array KeyParameter.getKey() returns, which is refilled per packet
+  private final KeyParameter poly_key = new KeyParameter(new byte[32]);
+  private final byte[] expected_tag = new byte[tagsize];
 
   @Override
   public int getIVSize() {
@@ -78,8 +83,12 @@ public class ChaCha20Poly1305 implements Cipher {
     try {
       K_1_spec = new KeyParameter(K_1, 0, K_1.length);
       K_2_spec = new KeyParameter(K_2, 0, K_2.length);
-      header_cipher = new ChaChaEngine();
-      main_cipher = new ChaChaEngine();
+      header_cipher = new Engine();
+      main_cipher = new Engine();
+      header_cipher.init(this.mode == ENCRYPT_MODE,
+          new ParametersWithIV(K_1_spec, nonce, 0, nonce.length));
+      main_cipher.init(this.mode == ENCRYPT_MODE,
+          new ParametersWithIV(K_2_spec, nonce, 0, nonce.length));
       poly1305 = new Poly1305();
     } catch (Exception e) {
       header_cipher = null;
@@ -92,17 +101,19 @@ public class ChaCha20Poly1305 implements Cipher {
 
   @Override
   public void update(int foo) throws Exception {
-    ByteBuffer nonce = ByteBuffer.allocate(8);
-    nonce.putLong(0, foo);
-    header_cipher.init(this.mode == ENCRYPT_MODE,
-        new ParametersWithIV(K_1_spec, nonce.array(), 0, nonce.array().length));
-    main_cipher.init(this.mode == ENCRYPT_MODE,
-        new ParametersWithIV(K_2_spec, nonce.array(), 0, nonce.array().length));
+    long seq = foo;
+    for (int i = nonce.length - 1; i >= 0; i--) {
+      nonce[i] = (byte) seq;
+      seq >>= 8;
+    }
+    header_cipher.setNonce(nonce);
+    main_cipher.setNonce(nonce);
     // Trying to reinit the cipher again with same nonce results in InvalidKeyException
     // So just read entire first 64-byte block, which should increment global counter from 0->1
-    byte[] poly_key = new byte[64];
-    main_cipher.processBytes(poly_key, 0, poly_key.length, poly_key, 0);
-    poly1305.init(new KeyParameter(poly_key, 0, 32));
+    Arrays.fill(poly_block, (byte) 0);
+    main_cipher.processBytes(poly_block, 0, poly_block.length, poly_block, 0);
+    System.arraycopy(poly_block, 0, poly_key.getKey(), 0, 32);
+    poly1305.init(poly_key);
   }
 
   @Override
@@ -115,16 +126,13 @@ public class ChaCha20Poly1305 implements Cipher {
   @Override
   public void doFinal(byte[] foo, int s1, int len, byte[] bar, int s2) throws Exception {
     if (this.mode == DECRYPT_MODE) {
-      byte[] actual_tag = new byte[tagsize];
-      System.arraycopy(foo, len, actual_tag, 0, tagsize);
-      byte[] expected_tag = new byte[tagsize];
       if (s1 < 0) {
         poly1305.update(foo, s1 + 4, len);
       } else {
         poly1305.update(foo, s1, len);
       }
       poly1305.doFinal(expected_tag, 0);
-      if (!arraysequals(actual_tag, expected_tag)) {
+      if (!arraysequals(foo, len, expected_tag)) {
         throw new AEADBadTagException("Tag mismatch");
       }
     }
@@ -156,12 +164,22 @@ public class ChaCha20Poly1305 implements Cipher {
     return true;
   }
 
-  private static boolean arraysequals(byte[] a, byte[] b) {
-    if (a.length != b.length)
-      return false;
+  /**
+   * A ChaCha engine whose nonce can be changed without the ParametersWithIV, and the copy of the
+   * nonce it makes, that {@link ChaChaEngine#init} needs.
+   */
+  private static class Engine extends ChaChaEngine {
+    void setNonce(byte[] nonce) {
+      // setKey() keeps the key when it is given none
+      setKey(null, nonce);
+      reset();
+    }
+  }
+
+  private static boolean arraysequals(byte[] a, int aoff, byte[] b) {
     int res = 0;
-    for (int i = 0; i < a.length; i++) {
-      res |= a[i] ^ b[i];
+    for (int i = 0; i < b.length; i++) {
+      res |= a[aoff + i] ^ b[i];
     }
     return res == 0;
   }
@@ -0,0 +1,325 @@
+package com.jcraft.jsch;
+
+import java.util.Optional;
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.EventType;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.Threshold;
+
+final class JfrEvents {
+
+  private static final boolean AVAILABLE = init();
+
+  private JfrEvents() {}
+
+  private static boolean init() {
+    try {
+      // jdk.jfr may be left out of the runtime image, and is optional for the com.jcraft.jsch
+      // module, whose descriptor is compiled for Java 9 and cannot require it
+      Optional<Module> jfr = ModuleLayer.boot().findModule("jdk.jfr");
+      if (!jfr.isPresent()) {
+        return false;
+      }
+      JfrEvents.class.getModule().addReads(jfr.get());
+      return Types.CONNECT_PHASE != null;
+    } catch (Throwable e) {
+      return false;
+    }
+  }
+
+  static Object beginConnectPhase() {
+    return AVAILABLE && Types.CONNECT_PHASE.isEnabled() ? begin(new ConnectPhaseEvent()) : null;
+  }
+
+  static void endConnectPhase(Object event, Session session, String phase) {
+    if (event == null) {
+      return;
+    }
+    ConnectPhaseEvent e = (ConnectPhaseEvent) event;
+    e.end();
+    if (e.shouldCommit()) {
+      e.host = session.host;
+      e.port = session.port;
+      e.phase = phase;
+      e.commit();
+    }
+  }
+
+  static Object beginKex() {
+    return AVAILABLE && Types.KEX.isEnabled() ? begin(new KexEvent()) : null;
+  }
+
+  static void endKex(Object event, Session session, boolean initial) {
+    if (event == null) {
+      return;
+    }
+    KexEvent e = (KexEvent) event;
+    e.end();
+    if (e.shouldCommit()) {
+      e.host = session.host;
+      e.port = session.port;
+      e.initial = initial;
+      String[] g = session.guess;
+      if (g != null) {
+        e.kex = g[KeyExchange.PROPOSAL_KEX_ALGS];
+        e.hostKey = g[KeyExchange.PROPOSAL_SERVER_HOST_KEY_ALGS];
+        e.cipherC2S = g[KeyExchange.PROPOSAL_ENC_ALGS_CTOS];
+        e.cipherS2C = g[KeyExchange.PROPOSAL_ENC_ALGS_STOC];
+        e.macC2S = g[KeyExchange.PROPOSAL_MAC_ALGS_CTOS];
+        e.macS2C = g[KeyExchange.PROPOSAL_MAC_ALGS_STOC];
+      }
+      e.bytesIn = session.metrics.bytes_in.sum();
+      e.bytesOut = session.metrics.bytes_out.sum();
+      e.commit();
+    }
+  }
+
+  static Object beginUserAuth() {
+    return AVAILABLE && Types.USER_AUTH.isEnabled() ? begin(new UserAuthEvent()) : null;
+  }
+
+  static void endUserAuth(Object event, Session session, String method, String result) {
+    if (event == null) {
+      return;
+    }
+    UserAuthEvent e = (UserAuthEvent) event;
+    e.end();
+    if (e.shouldCommit()) {
+      e.host = session.host;
+      e.port = session.port;
+      e.user = session.username;
+      e.method = method;
+      e.result = result;
+      e.commit();
+    }
+  }
+
+  static Object beginChannelOpen() {
+    return AVAILABLE && Types.CHANNEL_OPEN.isEnabled() ? begin(new ChannelOpenEvent()) : null;
+  }
+
+  static void endChannelOpen(Object event, Channel channel, boolean opened) {
+    if (event == null) {
+      return;
+    }
+    ChannelOpenEvent e = (ChannelOpenEvent) event;
+    e.end();
+    if (e.shouldCommit()) {
+      setHost(channel, e);
+      e.type = Util.byte2str(channel.type);
+      e.id = channel.id;
+      e.opened = opened;
+      e.commit();
+    }
+  }
+
+  static void channelClosed(Channel channel) {
+    if (!AVAILABLE || !Types.CHANNEL_CLOSE.isEnabled()) {
+      return;
+    }
+    ChannelCloseEvent e = new ChannelCloseEvent();
+    if (e.shouldCommit()) {
+      setHost(channel, e);
+      e.type = Util.byte2str(channel.type);
+      e.id = channel.id;
+      e.bytesIn = channel.metrics.bytes_in.sum();
+      e.bytesOut = channel.metrics.bytes_out.sum();
+      e.commit();
+    }
+  }
+
+  static Object beginSftpRequest() {
+    return AVAILABLE && Types.SFTP_REQUEST.isEnabled() ? begin(new SftpRequestEvent()) : null;
+  }
+
+  static void endSftpRequest(Object event, Channel channel, int type, int requestBytes,
+      int responseBytes) {
+    if (event == null) {
+      return;
+    }
+    SftpRequestEvent e = (SftpRequestEvent) event;
+    e.end();
+    if (e.shouldCommit()) {
+      setHost(channel, e);
+      e.type = type;
+      e.requestBytes = requestBytes;
+      e.responseBytes = responseBytes;
+      e.commit();
+    }
+  }
+
+  static Object beginWriteStall() {
+    return AVAILABLE && Types.WRITE_STALL.isEnabled() ? begin(new WriteStallEvent()) : null;
+  }
+
+  static void endWriteStall(Object event, Session session, Channel channel, String cause) {
+    if (event == null) {
+      return;
+    }
+    WriteStallEvent e = (WriteStallEvent) event;
+    e.end();
+    if (e.shouldCommit()) {
+      e.host = session.host;
+      e.port = session.port;
+      e.cause = cause;
+      e.channel = channel != null ? channel.id : -1;
+      e.commit();
+    }
+  }
+
+  private static Object begin(Event e) {
+    e.begin();
+    return e;
+  }
+
+  private static void setHost(Channel channel, SessionEvent e) {
+    Session session = channel.session;
+    if (session != null) {
+      e.host = session.host;
+      e.port = session.port;
+    }
+  }
+
+  // loaded only once jdk.jfr is known to be readable
+  private static final class Types {
+    static final EventType CONNECT_PHASE = EventType.getEventType(ConnectPhaseEvent.class);
+    static final EventType KEX = EventType.getEventType(KexEvent.class);
+    static final EventType USER_AUTH = EventType.getEventType(UserAuthEvent.class);
+    static final EventType CHANNEL_OPEN = EventType.getEventType(ChannelOpenEvent.class);
+    static final EventType CHANNEL_CLOSE = EventType.getEventType(ChannelCloseEvent.class);
+    static final EventType SFTP_REQUEST = EventType.getEventType(SftpRequestEvent.class);
+    static final EventType WRITE_STALL = EventType.getEventType(WriteStallEvent.class);
+  }
+
+  @Category("JSch")
+  abstract static class SessionEvent extends Event {
+    @Label("Host")
+    String host;
+
+    @Label("Port")
+    int port;
+  }
+
+  @Name("com.jcraft.jsch.ConnectPhase")
+  @Label("SSH Connect Phase")
+  @Description("A phase of establishing an SSH session before the key exchange")
+  static final class ConnectPhaseEvent extends SessionEvent {
+    @Label("Phase")
+    String phase;
+  }
+
+  @Name("com.jcraft.jsch.KeyExchange")
+  @Label("SSH Key Exchange")
+  static final class KexEvent extends SessionEvent {
+    @Label("Initial")
+    @Description("Whether this is the key exchange of establishing the session, or a rekey")
+    boolean initial;
+
+    @Label("Key Exchange Algorithm")
+    String kex;
+
+    @Label("Host Key Algorithm")
+    String hostKey;
+
+    @Label("Cipher Client to Server")
+    String cipherC2S;
+
+    @Label("Cipher Server to Client")
+    String cipherS2C;
+
+    @Label("MAC Client to Server")
+    String macC2S;
+
+    @Label("MAC Server to Client")
+    String macS2C;
+
+    @Label("Bytes Received")
+    @Description("Bytes received by the session so far")
+    @DataAmount
+    long bytesIn;
+
+    @Label("Bytes Sent")
+    @Description("Bytes sent by the session so far")
+    @DataAmount
+    long bytesOut;
+  }
+
+  @Name("com.jcraft.jsch.UserAuth")
+  @Label("SSH User Authentication")
+  @Description("An attempt to authenticate with one method")
+  static final class UserAuthEvent extends SessionEvent {
+    @Label("User")
+    String user;
+
+    @Label("Method")
+    String method;
+
+    @Label("Result")
+    String result;
+  }
+
+  @Name("com.jcraft.jsch.ChannelOpen")
+  @Label("SSH Channel Open")
+  static final class ChannelOpenEvent extends SessionEvent {
+    @Label("Channel Type")
+    String type;
+
+    @Label("Channel Id")
+    int id;
+
+    @Label("Opened")
+    boolean opened;
+  }
+
+  @Name("com.jcraft.jsch.ChannelClose")
+  @Label("SSH Channel Close")
+  static final class ChannelCloseEvent extends SessionEvent {
+    @Label("Channel Type")
+    String type;
+
+    @Label("Channel Id")
+    int id;
+
+    @Label("Bytes Received")
+    @DataAmount
+    long bytesIn;
+
+    @Label("Bytes Sent")
+    @DataAmount
+    long bytesOut;
+  }
+
+  @Name("com.jcraft.jsch.SftpRequest")
+  @Label("SFTP Request")
+  @Description("An SFTP request, from sending it to receiving its response")
+  @Threshold("20 ms")
+  static final class SftpRequestEvent extends SessionEvent {
+    @Label("Request Type")
+    int type;
+
+    @Label("Request Size")
+    @DataAmount
+    int requestBytes;
+
+    @Label("Response Size")
+    @DataAmount
+    int responseBytes;
+  }
+
+  @Name("com.jcraft.jsch.WriteStall")
+  @Label("SSH Write Stall")
+  @Description("A write waiting for the remote window of a channel or for a key exchange")
+  @Threshold("20 ms")
+  static final class WriteStallEvent extends SessionEvent {
+    @Label("Cause")
+    String cause;
+
+    @Label("Channel Id")
+    @Description("The channel waiting for its remote window, or -1")
+    int channel;
+  }
+}
@@ -0,0 +1,12 @@
+package com.jcraft.jsch;
+
+import java.util.concurrent.ThreadFactory;
+
+final class VirtualThreads {
+
+  private static final ThreadFactory FACTORY = Thread.ofVirtual().factory();
+
+  static ThreadFactory factory() {
+    return FACTORY;
+  }
+}
@@ -0,0 +1,137 @@
+package com.jcraft.jsch;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.HashMap;
+import java.util.Hashtable;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+class AlgorithmChecksTest {
+
+  private static final AtomicInteger created = new AtomicInteger();
+
+  private Map<String, String> config;
+
+  @BeforeEach
+  void setUp() {
+    config = JSch.getConfig();
+    created.set(0);
+    AlgorithmChecks.clear();
+  }
+
+  @AfterEach
+  void tearDown() {
+    synchronized (JSch.config) {
+      JSch.config.keySet().retainAll(config.keySet());
+    }
+    JSch.setConfig(new Hashtable<>(config));
+  }
+
+  @Test
+  void checksEachCipherOnce() {
+    assertTrue(AlgorithmChecks.isCipherAvailable(CountingCipher.class.getName()));
+    assertTrue(AlgorithmChecks.isCipherAvailable(CountingCipher.class.getName()));
+    assertEquals(1, created.get());
+  }
+
+  @Test
+  void remembersUnavailableAlgorithms() {
+    assertFalse(AlgorithmChecks.isCipherAvailable(FailingCipher.class.getName()));
+    assertFalse(AlgorithmChecks.isCipherAvailable(FailingCipher.class.getName()));
+    assertEquals(1, created.get());
+    assertFalse(AlgorithmChecks.isMacAvailable("com.jcraft.jsch.NoSuchMac"));
+    assertFalse(AlgorithmChecks.isSignatureAvailable(null));
+  }
+
+  @Test
+  void setConfigDropsResults() {
+    assertTrue(AlgorithmChecks.isCipherAvailable(CountingCipher.class.getName()));
+    JSch.setConfig("counting-cipher", CountingCipher.class.getName());
+    assertTrue(AlgorithmChecks.isCipherAvailable(CountingCipher.class.getName()));
+    assertEquals(2, created.get());
+  }
+
+  @Test
+  void connectUsesResultsOfCheckAlgorithms() throws Exception {
+    JSch.setConfig("counting-cipher", CountingCipher.class.getName());
+    JSch.setConfig("cipher.c2s", "counting-cipher," + config.get("cipher.c2s"));
+    JSch.setConfig("CheckCiphers", "counting-cipher");
+    JSch.checkAlgorithms();
+    assertEquals(1, created.get());
+
+    Session session = new Session(new JSch(), null, null, 0);
+    session.checkAlgorithms();
+    assertEquals(1, created.get());
+  }
+
+  @Test
+  void keepsKexResultsBySessionConfig() throws Exception {
+    Session session = new Session(new JSch(), null, null, 0);
+    Map<String, String> overrides = new HashMap<>();
+    assertTrue(AlgorithmChecks.isKexAvailable(session, TestKex.class.getName(), overrides));
+
+    session.setConfig("test_kex", "fail");
+    overrides.put("test_kex", "fail");
+    assertFalse(AlgorithmChecks.isKexAvailable(session, TestKex.class.getName(), overrides));
+  }
+
+  public static class CountingCipher implements Cipher {
+    public CountingCipher() {
+      created.incrementAndGet();
+    }
+
+    @Override
+    public int getIVSize() {
+      return 16;
+    }
+
+    @Override
+    public int getBlockSize() {
+      return 16;
+    }
+
+    @Override
+    public void init(int mode, byte[] key, byte[] iv) throws Exception {}
+
+    @Override
+    public void update(byte[] foo, int s1, int len, byte[] bar, int s2) throws Exception {}
+
+    @Override
+    public boolean isCBC() {
+      return false;
+    }
+  }
+
+  public static class TestKex extends KeyExchange {
+    @Override
+    public void init(Session session, byte[] V_S, byte[] V_C, byte[] I_S, byte[] I_C)
+        throws Exception {
+      if ("fail".equals(session.getConfig("test_kex"))) {
+        throw new JSchException("not available");
+      }
+    }
+
+    @Override
+    public boolean next(Buffer buf) throws Exception {
+      return false;
+    }
+
+    @Override
+    public int getState() {
+      return 0;
+    }
+  }
+
+  public static class FailingCipher extends CountingCipher {
+    @Override
+    public void init(int mode, byte[] key, byte[] iv) throws Exception {
+      throw new Exception("not available");
+    }
+  }
+}
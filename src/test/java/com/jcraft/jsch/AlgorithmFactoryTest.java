@@ -0,0 +1,53 @@
+package com.jcraft.jsch;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import com.jcraft.jsch.jce.AES128CTR;
+import com.jcraft.jsch.jce.HMACSHA256;
+import java.util.Map;
+import org.junit.jupiter.api.Test;
+
+class AlgorithmFactoryTest {
+
+  @Test
+  void createsNewInstances() throws Exception {
+    Cipher a = AlgorithmFactory.create(AES128CTR.class.getName(), Cipher.class);
+    Cipher b = AlgorithmFactory.create(AES128CTR.class.getName(), Cipher.class);
+    assertTrue(a instanceof AES128CTR);
+    assertNotSame(a, b);
+  }
+
+  @Test
+  void createsOtherClassesByReflection() throws Exception {
+    String name = CustomMAC.class.getName();
+    MAC mac = AlgorithmFactory.create(name, MAC.class);
+    assertTrue(mac instanceof CustomMAC);
+    assertNotSame(mac, AlgorithmFactory.create(name, MAC.class));
+  }
+
+  @Test
+  void rejectsWrongAndMissingClasses() {
+    assertThrows(ClassCastException.class,
+        () -> AlgorithmFactory.create(HMACSHA256.class.getName(), Cipher.class));
+    assertThrows(ClassNotFoundException.class,
+        () -> AlgorithmFactory.create("com.jcraft.jsch.NoSuchCipher", Cipher.class));
+    assertThrows(ClassNotFoundException.class, () -> AlgorithmFactory.create(null, Cipher.class));
+  }
+
+  @Test
+  void knowsAllDefaultClasses() {
+    for (Map.Entry<String, String> e : JSch.getConfig().entrySet()) {
+      String value = e.getValue();
+      if (value.startsWith("com.jcraft.jsch.") && value.indexOf(',') == -1) {
+        assertNotNull(AlgorithmFactory.builtin(value), e.getKey() + " -> " + value);
+      }
+    }
+    assertEquals(null, AlgorithmFactory.builtin(CustomMAC.class.getName()));
+  }
+
+  public static class CustomMAC extends HMACSHA256 {}
+}
@@ -0,0 +1,143 @@
+package com.jcraft.jsch;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.ByteArrayOutputStream;
+import java.io.InputStream;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+class ChannelInboundTest {
+
+  private static final int WINDOW = 64 * 1024;
+
+  private Session session;
+  private ByteArrayOutputStream out;
+
+  @BeforeEach
+  void setUp() throws Exception {
+    out = new ByteArrayOutputStream();
+    session = TestSessions.connected(out);
+  }
+
+  @AfterEach
+  void tearDown() {
+    session.disconnect();
+  }
+
+  @Test
+  void slowReaderDoesNotHoldUpOtherChannels() throws Exception {
+    Channel slow = newChannel();
+    SlowStream slowOut = new SlowStream();
+    slow.setOutputStream(slowOut);
+    Channel fast = newChannel();
+    InputStream fastIn = fast.getInputStream();
+
+    // the session thread must not block on either channel
+    CompletableFuture.runAsync(() -> {
+      slow.inbound.data(new byte[] {1, 2, 3}, 0, 3, false);
+      slow.inbound.data(new byte[] {4, 5}, 0, 2, false);
+      slow.inbound.eof();
+      fast.inbound.data(new byte[] {6, 7}, 0, 2, false);
+    }).get(10, TimeUnit.SECONDS);
+
+    assertEquals(2, fastIn.available());
+    assertTrue(slowOut.writing.await(10, TimeUnit.SECONDS));
+    assertEquals(2, slow.inbound.queued());
+
+    slowOut.release.countDown();
+    assertTrue(slowOut.closed.await(10, TimeUnit.SECONDS));
+    assertArrayEquals(new byte[] {1, 2, 3, 4, 5}, slowOut.toByteArray());
+    assertEquals(0, slow.inbound.queued());
+  }
+
+  @Test
+  void givesWindowBackOnceDataHasBeenDelivered() throws Exception {
+    Channel channel = newChannel();
+    SlowStream slowOut = new SlowStream();
+    channel.setOutputStream(slowOut);
+
+    channel.inbound.data(new byte[WINDOW], 0, WINDOW, false);
+    assertTrue(slowOut.writing.await(10, TimeUnit.SECONDS));
+    int size = out.size();
+    assertEquals(WINDOW, channel.lwsize);
+
+    slowOut.release.countDown();
+    long deadline = System.currentTimeMillis() + 10000;
+    while (out.size() == size && System.currentTimeMillis() < deadline) {
+      Thread.sleep(10);
+    }
+    assertTrue(out.size() > size);
+    assertEquals(WINDOW, channel.lwsize);
+    assertEquals(WINDOW, slowOut.size());
+  }
+
+  @Test
+  void dropsQueuedDataOnDisconnect() throws Exception {
+    Channel channel = newChannel();
+    SlowStream slowOut = new SlowStream();
+    channel.setOutputStream(slowOut);
+
+    channel.inbound.data(new byte[10], 0, 10, false);
+    channel.inbound.data(new byte[10], 0, 10, false);
+    assertTrue(slowOut.writing.await(10, TimeUnit.SECONDS));
+    channel.inbound.close();
+    assertEquals(10, channel.inbound.queued());
+
+    channel.disconnect();
+    assertEquals(0, channel.inbound.queued());
+    slowOut.release.countDown();
+  }
+
+  @Test
+  void offersNothingWithoutOutput() throws Exception {
+    Channel channel = newChannel();
+    assertFalse(channel.offer(new byte[10], 0, 10, false));
+    assertFalse(channel.offer(new byte[10], 0, 10, true));
+
+    channel.io = null;
+    assertFalse(channel.offer(new byte[10], 0, 10, false));
+    assertFalse(channel.offer(new byte[10], 0, 10, true));
+  }
+
+  private Channel newChannel() {
+    Channel channel = new ChannelSession();
+    channel.setSession(session);
+    channel.setRecipient(0);
+    channel.setLocalWindowSizeMax(WINDOW);
+    channel.setLocalWindowSize(WINDOW);
+    channel.connected = true;
+    session.channels.put(channel);
+    return channel;
+  }
+
+  /** Blocks the first write until released. */
+  private static class SlowStream extends ByteArrayOutputStream {
+    final CountDownLatch writing = new CountDownLatch(1);
+    final CountDownLatch release = new CountDownLatch(1);
+    final CountDownLatch closed = new CountDownLatch(1);
+
+    @Override
+    public void write(byte[] b, int off, int len) {
+      writing.countDown();
+      try {
+        release.await();
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+      }
+      super.write(b, off, len);
+    }
+
+    @Override
+    public void close() {
+      closed.countDown();
+    }
+  }
+}
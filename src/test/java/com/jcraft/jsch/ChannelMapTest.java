@@ -0,0 +1,78 @@
+package com.jcraft.jsch;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+import org.junit.jupiter.api.Test;
+
+class ChannelMapTest {
+
+  private final ChannelMap map = new ChannelMap();
+
+  @Test
+  void findsChannelsById() {
+    List<Channel> channels = new ArrayList<>();
+    for (int i = 0; i < 1000; i++) {
+      Channel c = new ChannelSession();
+      channels.add(c);
+      map.put(c);
+    }
+    assertEquals(1000, map.size());
+    for (Channel c : channels) {
+      assertSame(c, map.get(c.id));
+    }
+    assertNull(map.get(channels.get(999).id + 1));
+  }
+
+  @Test
+  void removesChannels() {
+    List<Channel> channels = new ArrayList<>();
+    for (int i = 0; i < 100; i++) {
+      Channel c = new ChannelSession();
+      channels.add(c);
+      map.put(c);
+    }
+    for (int i = 0; i < 100; i += 2) {
+      assertTrue(map.remove(channels.get(i)));
+    }
+    assertFalse(map.remove(channels.get(0)));
+    assertEquals(50, map.size());
+    assertEquals(50, map.values().size());
+    for (int i = 0; i < 100; i++) {
+      Channel c = channels.get(i);
+      if (i % 2 == 0) {
+        assertNull(map.get(c.id));
+      } else {
+        assertSame(c, map.get(c.id));
+      }
+    }
+  }
+
+  @Test
+  void keepsWorkingWhenChannelsComeAndGo() {
+    List<Channel> open = new ArrayList<>();
+    for (int i = 0; i < 10000; i++) {
+      Channel c = new ChannelSession();
+      map.put(c);
+      open.add(c);
+      if (open.size() > 10) {
+        Channel closed = open.remove(0);
+        assertTrue(map.remove(closed));
+        assertNull(map.get(closed.id));
+      }
+      for (Channel o : open) {
+        assertSame(o, map.get(o.id));
+      }
+    }
+    assertEquals(open.size(), map.size());
+
+    map.clear();
+    assertEquals(0, map.size());
+    assertNull(map.get(open.get(0).id));
+  }
+}
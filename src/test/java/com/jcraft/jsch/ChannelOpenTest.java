@@ -0,0 +1,91 @@
+package com.jcraft.jsch;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.ByteArrayOutputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+class ChannelOpenTest {
+
+  private Session session;
+  private ByteArrayOutputStream out;
+
+  @BeforeEach
+  void setUp() throws Exception {
+    out = new ByteArrayOutputStream();
+    session = TestSessions.connected(out);
+  }
+
+  @Test
+  void opensChannelsWithoutWaitingForConfirmation() throws Exception {
+    List<TestChannel> channels = new ArrayList<>();
+    List<CompletableFuture<Channel>> futures = new ArrayList<>();
+    for (int i = 0; i < 10; i++) {
+      TestChannel channel = newChannel();
+      channels.add(channel);
+      int size = out.size();
+      futures.add(channel.connectAsync());
+      assertTrue(out.size() > size);
+    }
+
+    for (int i = 0; i < channels.size(); i++) {
+      assertFalse(futures.get(i).isDone());
+      channels.get(i).openConfirmed();
+      assertSame(channels.get(i), futures.get(i).get(10, TimeUnit.SECONDS));
+      assertTrue(channels.get(i).started.await(10, TimeUnit.SECONDS));
+      assertTrue(channels.get(i).isConnected());
+    }
+  }
+
+  @Test
+  void failsWhenChannelIsRejected() throws Exception {
+    TestChannel channel = newChannel();
+    CompletableFuture<Channel> future = channel.connectAsync();
+    channel.openFailed(new JSchException("channel is not opened."));
+
+    ExecutionException e =
+        assertThrows(ExecutionException.class, () -> future.get(10, TimeUnit.SECONDS));
+    assertEquals("channel is not opened.", e.getCause().getMessage());
+    assertEquals(1, channel.started.getCount());
+    assertNull(session.getChannelById(channel.id));
+  }
+
+  @Test
+  void failsWhenConfirmationTimesOut() throws Exception {
+    TestChannel channel = newChannel();
+    CompletableFuture<Channel> future = channel.connectAsync(50);
+
+    ExecutionException e =
+        assertThrows(ExecutionException.class, () -> future.get(10, TimeUnit.SECONDS));
+    assertEquals("channel is not opened.", e.getCause().getMessage());
+    assertNull(session.getChannelById(channel.id));
+  }
+
+  private TestChannel newChannel() {
+    TestChannel channel = new TestChannel();
+    channel.setSession(session);
+    session.channels.put(channel);
+    return channel;
+  }
+
+  private static class TestChannel extends ChannelSession {
+    final CountDownLatch started = new CountDownLatch(1);
+
+    @Override
+    public void start() {
+      started.countDown();
+    }
+  }
+}
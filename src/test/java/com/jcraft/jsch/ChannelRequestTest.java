@@ -0,0 +1,83 @@
+package com.jcraft.jsch;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.ByteArrayOutputStream;
+import java.util.concurrent.CompletableFuture;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+class ChannelRequestTest {
+
+  private Session session;
+  private Channel channel;
+
+  @BeforeEach
+  void setUp() throws Exception {
+    Session.random = new com.jcraft.jsch.jce.Random();
+    Packet.setRandom(Session.random);
+    session = new Session(new JSch(), null, null, 0);
+    session.io = new IO();
+    session.io.setOutputStream(new ByteArrayOutputStream());
+    channel = new ChannelSession() {
+      @Override
+      public boolean isConnected() {
+        return connected;
+      }
+    };
+    channel.setSession(session);
+    channel.connected = true;
+  }
+
+  @Test
+  void completesRepliesInOrder() throws Exception {
+    CompletableFuture<Void> first = channel.sendRequest(requestPacket());
+    CompletableFuture<Void> second = channel.sendRequest(requestPacket());
+    assertFalse(first.isDone());
+    assertFalse(second.isDone());
+
+    channel.receiveReply(false);
+    assertTrue(first.isCompletedExceptionally());
+    assertFalse(second.isDone());
+    JSchException e = assertThrows(JSchException.class, () -> Request.awaitReply(first, 0));
+    assertEquals("failed to send channel request", e.getMessage());
+
+    channel.receiveReply(true);
+    Request.awaitReply(second, 0);
+  }
+
+  @Test
+  void timesOutWaitingForReply() throws Exception {
+    CompletableFuture<Void> reply = channel.sendRequest(requestPacket());
+    JSchException e = assertThrows(JSchException.class, () -> Request.awaitReply(reply, 50));
+    assertEquals("channel request: timeout", e.getMessage());
+  }
+
+  @Test
+  void releasesWaitersOnDisconnect() throws Exception {
+    CompletableFuture<Void> reply = channel.sendRequest(requestPacket());
+    CompletableFuture<Void> waiter = CompletableFuture.runAsync(() -> {
+      try {
+        Request.awaitReply(reply, 0);
+      } catch (JSchException e) {
+        throw new RuntimeException(e);
+      }
+    });
+    channel.disconnect();
+    waiter.get();
+    assertTrue(reply.isDone());
+  }
+
+  private Packet requestPacket() {
+    Packet packet = new Packet(new Buffer(64));
+    packet.reset();
+    packet.buffer.putByte((byte) Session.SSH_MSG_CHANNEL_REQUEST);
+    packet.buffer.putInt(channel.getRecipient());
+    packet.buffer.putString(Util.str2byte("env"));
+    packet.buffer.putByte((byte) 1);
+    return packet;
+  }
+}
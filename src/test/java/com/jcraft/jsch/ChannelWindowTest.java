@@ -0,0 +1,70 @@
+package com.jcraft.jsch;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import org.junit.jupiter.api.Test;
+
+class ChannelWindowTest {
+
+  private static final int WINDOW = 64 * 1024;
+  private static final int PACKET = 4 * 1024;
+
+  @Test
+  void adjustsWindowOnceHalfOfItHasBeenUsed() {
+    Channel channel = newChannel();
+    int used = 0;
+    while (used + PACKET <= WINDOW / 2) {
+      assertEquals(0, channel.consumeLocalWindow(PACKET));
+      used += PACKET;
+    }
+    assertEquals(used + PACKET, channel.consumeLocalWindow(PACKET));
+    assertEquals(WINDOW, channel.lwsize);
+    assertEquals(WINDOW, channel.lwsize_max);
+  }
+
+  @Test
+  void growsWindowWhilePeerIsWindowLimited() throws Exception {
+    Channel channel = newChannel();
+    channel.setLocalWindowAutoTune(16 * WINDOW);
+    // the peer sends everything it is allowed to
+    transfer(channel, Long.MAX_VALUE);
+    assertEquals(16 * WINDOW, channel.lwsize_max);
+  }
+
+  @Test
+  void keepsWindowWhilePeerIsSlow() throws Exception {
+    Channel channel = newChannel();
+    channel.setLocalWindowAutoTune(16 * WINDOW);
+    // the peer sends an eighth of the window per round trip
+    transfer(channel, WINDOW / 8);
+    assertTrue(channel.lwsize_max <= 2 * WINDOW, "window: " + channel.lwsize_max);
+  }
+
+  private static Channel newChannel() {
+    Channel channel = new ChannelSession();
+    channel.setLocalWindowSizeMax(WINDOW);
+    channel.setLocalWindowSize(WINDOW);
+    return channel;
+  }
+
+  /**
+   * Simulates 30 round trips of 10ms, in each of which the peer sends up to limit bytes of what it
+   * has been granted up to the previous round trip.
+   */
+  private static void transfer(Channel channel, long limit) throws Exception {
+    long granted = WINDOW;
+    long sent = 0;
+    for (int i = 0; i < 30; i++) {
+      Thread.sleep(10);
+      long grant = 0;
+      long n = Math.min(granted - sent, limit);
+      while (n >= PACKET) {
+        grant += channel.consumeLocalWindow(PACKET);
+        sent += PACKET;
+        n -= PACKET;
+      }
+      granted += grant;
+    }
+  }
+}
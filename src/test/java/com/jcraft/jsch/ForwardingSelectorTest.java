@@ -0,0 +1,229 @@
+package com.jcraft.jsch;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.InputStream;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+class ForwardingSelectorTest {
+
+  private Session session;
+  private ByteArrayOutputStream out;
+
+  @BeforeEach
+  void setUp() throws Exception {
+    out = new ByteArrayOutputStream();
+    session = TestSessions.connected(new JSch(), null, "localhost", 0, out);
+    session.setConfig("use_nio_forwarding", "yes");
+  }
+
+  @AfterEach
+  void tearDown() {
+    // a test may have failed during its key exchange
+    session.setInKex(false);
+    session.disconnect();
+  }
+
+  @Test
+  void forwardsDataWithinRemoteWindow() throws Exception {
+    int port = session.setPortForwardingL("127.0.0.1", 0, "remote", 80);
+    try (Socket socket = new Socket("127.0.0.1", port)) {
+      ChannelDirectTCPIP channel = awaitChannel();
+      channel.setRemoteWindowSize(3);
+      channel.setRemotePacketSize(32 * 1024);
+      channel.setRecipient(7);
+      channel.openConfirmed();
+
+      socket.getOutputStream().write("hello".getBytes(StandardCharsets.UTF_8));
+      awaitOutput("hel");
+      Thread.sleep(100);
+      assertTrue(!sent().contains("hello"));
+
+      channel.addRemoteWindowSize(1024);
+      awaitOutput("lo");
+
+      channel.write("world".getBytes(StandardCharsets.UTF_8));
+      InputStream in = socket.getInputStream();
+      byte[] b = new byte[5];
+      new DataInputStream(in).readFully(b);
+      assertArrayEquals("world".getBytes(StandardCharsets.UTF_8), b);
+
+      channel.eof_remote();
+      assertEquals(-1, in.read());
+    }
+  }
+
+  @Test
+  void holdsBackMessagesDuringKeyExchange() throws Exception {
+    int port = session.setPortForwardingL("127.0.0.1", 0, "remote", 80);
+    try (Socket socket = new Socket("127.0.0.1", port)) {
+      ChannelDirectTCPIP channel = awaitChannel();
+      channel.setRemoteWindowSize(1024);
+      channel.setRemotePacketSize(32 * 1024);
+      channel.setRecipient(7);
+      channel.openConfirmed();
+      awaitOutput("direct-tcpip");
+      int size = sent().length();
+
+      session.setInKex(true);
+      List<Socket> others = new ArrayList<>();
+      try {
+        socket.getOutputStream().write("hello".getBytes(StandardCharsets.UTF_8));
+        others.add(new Socket("127.0.0.1", port));
+        awaitChannels(2);
+        // the selector thread has not waited for the key exchange to open the second channel
+        others.add(new Socket("127.0.0.1", port));
+        awaitChannels(3);
+        Thread.sleep(100);
+        assertEquals(size, sent().length());
+
+        session.setInKex(false);
+        awaitOutput("hello");
+        long deadline = System.currentTimeMillis() + 10000;
+        while (count(sent(), "direct-tcpip") < 3 && System.currentTimeMillis() < deadline) {
+          Thread.sleep(10);
+        }
+        assertEquals(3, count(sent(), "direct-tcpip"));
+      } finally {
+        for (Socket other : others) {
+          other.close();
+        }
+      }
+    }
+  }
+
+  @Test
+  void connectsRemoteForwardingWithoutThread() throws Exception {
+    try (ServerSocket target = new ServerSocket(0)) {
+      ChannelForwardedTCPIP.addPort(session, null, 2222, 2222, "127.0.0.1", target.getLocalPort(),
+          null);
+      ChannelForwardedTCPIP channel = openForwardedChannel(2222);
+      channel.setRemotePacketSize(32 * 1024);
+      assertTrue(channel.startOnSelector());
+
+      try (Socket socket = target.accept()) {
+        socket.getOutputStream().write("ping".getBytes(StandardCharsets.UTF_8));
+        awaitOutput("ping");
+
+        long deadline = System.currentTimeMillis() + 10000;
+        while (channel.link == null && System.currentTimeMillis() < deadline) {
+          Thread.sleep(10);
+        }
+        channel.write("pong".getBytes(StandardCharsets.UTF_8));
+        byte[] b = new byte[4];
+        new DataInputStream(socket.getInputStream()).readFully(b);
+        assertArrayEquals("pong".getBytes(StandardCharsets.UTF_8), b);
+      }
+    }
+  }
+
+  @Test
+  void confirmsRemoteForwardingOnceKeyExchangeHasEnded() throws Exception {
+    try (ServerSocket target = new ServerSocket(0)) {
+      ChannelForwardedTCPIP.addPort(session, null, 2224, 2224, "127.0.0.1", target.getLocalPort(),
+          null);
+      ChannelForwardedTCPIP channel = openForwardedChannel(2224);
+      channel.setRemotePacketSize(32 * 1024);
+
+      session.setInKex(true);
+      assertTrue(channel.startOnSelector());
+      try (Socket socket = target.accept()) {
+        socket.getOutputStream().write("ping".getBytes(StandardCharsets.UTF_8));
+        Thread.sleep(100);
+        assertEquals(0, sent().length());
+
+        session.setInKex(false);
+        awaitOutput("ping");
+        // SSH_MSG_CHANNEL_OPEN_CONFIRMATION for recipient 7 comes first
+        int confirmation = sent().indexOf(new String(
+            new byte[] {Session.SSH_MSG_CHANNEL_OPEN_CONFIRMATION, 0, 0, 0, 7},
+            StandardCharsets.ISO_8859_1));
+        assertTrue(confirmation >= 0 && confirmation < sent().indexOf("ping"));
+      }
+    }
+  }
+
+  @Test
+  void rejectsRemoteForwardingIfTargetRefusesConnection() throws Exception {
+    int port;
+    try (ServerSocket target = new ServerSocket(0)) {
+      port = target.getLocalPort();
+    }
+    ChannelForwardedTCPIP.addPort(session, null, 2223, 2223, "127.0.0.1", port, null);
+    ChannelForwardedTCPIP channel = openForwardedChannel(2223);
+    assertTrue(channel.startOnSelector());
+
+    long deadline = System.currentTimeMillis() + 10000;
+    while (session.getChannelById(channel.id) != null
+        && System.currentTimeMillis() < deadline) {
+      Thread.sleep(10);
+    }
+    assertNull(session.getChannelById(channel.id));
+    assertTrue(channel.isClosed());
+  }
+
+  private ChannelForwardedTCPIP openForwardedChannel(int port) throws Exception {
+    ChannelForwardedTCPIP channel =
+        (ChannelForwardedTCPIP) session.openChannel("forwarded-tcpip");
+    Buffer buf = new Buffer(100);
+    buf.putInt(7); // sender channel
+    buf.putInt(1024 * 1024); // initial window size
+    buf.putInt(32 * 1024); // maximum packet size
+    buf.putString(Util.str2byte("localhost"));
+    buf.putInt(port);
+    buf.putString(Util.str2byte("127.0.0.1"));
+    buf.putInt(40000);
+    channel.getData(buf);
+    return channel;
+  }
+
+  private ChannelDirectTCPIP awaitChannel() throws Exception {
+    return (ChannelDirectTCPIP) awaitChannels(1).get(0);
+  }
+
+  private List<Channel> awaitChannels(int n) throws Exception {
+    long deadline = System.currentTimeMillis() + 10000;
+    while (System.currentTimeMillis() < deadline) {
+      List<Channel> channels = session.channels.values();
+      if (channels.size() >= n) {
+        return channels;
+      }
+      Thread.sleep(10);
+    }
+    throw new AssertionError("no channel opened");
+  }
+
+  private static int count(String s, String part) {
+    int n = 0;
+    for (int i = s.indexOf(part); i >= 0; i = s.indexOf(part, i + 1)) {
+      n++;
+    }
+    return n;
+  }
+
+  private void awaitOutput(String s) throws Exception {
+    long deadline = System.currentTimeMillis() + 10000;
+    while (!sent().contains(s) && System.currentTimeMillis() < deadline) {
+      Thread.sleep(10);
+    }
+    assertTrue(sent().contains(s), s);
+  }
+
+  private String sent() {
+    synchronized (out) {
+      return new String(out.toByteArray(), StandardCharsets.ISO_8859_1);
+    }
+  }
+}
@@ -0,0 +1,263 @@
+package com.jcraft.jsch;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.junit.jupiter.api.condition.JRE.JAVA_11;
+
+import com.github.valfirst.slf4jtest.LoggingEvent;
+import com.github.valfirst.slf4jtest.TestLogger;
+import com.github.valfirst.slf4jtest.TestLoggerFactory;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.lang.reflect.Method;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.List;
+import java.util.Locale;
+import java.util.stream.Collectors;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.EnabledForJreRange;
+import org.junit.jupiter.api.io.TempDir;
+import org.testcontainers.containers.GenericContainer;
+import org.testcontainers.containers.output.Slf4jLogConsumer;
+import org.testcontainers.images.builder.ImageFromDockerfile;
+import org.testcontainers.junit.jupiter.Container;
+import org.testcontainers.junit.jupiter.Testcontainers;
+
+/**
+ * Records the JFR events of a session against a real server. It runs against the multi-release
+ * jar, whose Java 11 JfrEvents is the one that emits them. The recording is made and read through
+ * reflection, so that this compiles for Java 8 like the other tests.
+ */
+@Testcontainers
+public class JfrEventsIT {
+
+  private static final int timeout = 2000;
+  private static final String RECORDING = "jdk.jfr.Recording";
+  private static final TestLogger jschLogger = TestLoggerFactory.getTestLogger(JSch.class);
+  private static final TestLogger sshdLogger = TestLoggerFactory.getTestLogger(JfrEventsIT.class);
+
+  @TempDir
+  public Path tmpDir;
+  private Slf4jLogConsumer sshdLogConsumer;
+
+  @Container
+  public GenericContainer<?> sshd = new GenericContainer<>(
+      new ImageFromDockerfile().withFileFromClasspath("ssh_host_rsa_key", "docker/ssh_host_rsa_key")
+          .withFileFromClasspath("ssh_host_rsa_key.pub", "docker/ssh_host_rsa_key.pub")
+          .withFileFromClasspath("ssh_host_ecdsa256_key", "docker/ssh_host_ecdsa256_key")
+          .withFileFromClasspath("ssh_host_ecdsa256_key.pub", "docker/ssh_host_ecdsa256_key.pub")
+          .withFileFromClasspath("ssh_host_ecdsa384_key", "docker/ssh_host_ecdsa384_key")
+          .withFileFromClasspath("ssh_host_ecdsa384_key.pub", "docker/ssh_host_ecdsa384_key.pub")
+          .withFileFromClasspath("ssh_host_ecdsa521_key", "docker/ssh_host_ecdsa521_key")
+          .withFileFromClasspath("ssh_host_ecdsa521_key.pub", "docker/ssh_host_ecdsa521_key.pub")
+          .withFileFromClasspath("ssh_host_ed25519_key", "docker/ssh_host_ed25519_key")
+          .withFileFromClasspath("ssh_host_ed25519_key.pub", "docker/ssh_host_ed25519_key.pub")
+          .withFileFromClasspath("sshd_config", "docker/sshd_config.openssh99")
+          .withFileFromClasspath("authorized_keys", "docker/authorized_keys")
+          .withFileFromClasspath("Dockerfile", "docker/Dockerfile.openssh99"))
+      .withExposedPorts(22);
+
+  @BeforeAll
+  public static void beforeAll() {
+    JSch.setLogger(new Slf4jLogger());
+  }
+
+  @BeforeEach
+  public void beforeEach() throws IOException {
+    if (sshdLogConsumer == null) {
+      sshdLogConsumer = new Slf4jLogConsumer(sshdLogger);
+      sshd.followOutput(sshdLogConsumer);
+    }
+
+    jschLogger.clearAll();
+    sshdLogger.clearAll();
+  }
+
+  @AfterAll
+  public static void afterAll() {
+    JSch.setLogger(null);
+    jschLogger.clearAll();
+    sshdLogger.clearAll();
+  }
+
+  @Test
+  @EnabledForJreRange(min = JAVA_11)
+  public void testSessionEvents() throws Exception {
+    Path file = tmpDir.resolve("jsch.jfr");
+    Object recording = Class.forName(RECORDING).getConstructor().newInstance();
+    try {
+      Method enable = method(RECORDING, "enable", String.class);
+      enable.invoke(recording, "com.jcraft.jsch.KeyExchange");
+      enable.invoke(recording, "com.jcraft.jsch.UserAuth");
+      enable.invoke(recording, "com.jcraft.jsch.ChannelOpen");
+      Object stall = enable.invoke(recording, "com.jcraft.jsch.WriteStall");
+      method("jdk.jfr.EventSettings", "withThreshold", Duration.class).invoke(stall,
+          Duration.ZERO);
+      method(RECORDING, "start").invoke(recording);
+      try {
+        writeToSlowReader();
+      } catch (Exception e) {
+        printInfo();
+        throw e;
+      }
+      method(RECORDING, "stop").invoke(recording);
+      method(RECORDING, "dump", Path.class).invoke(recording, file);
+    } finally {
+      method(RECORDING, "close").invoke(recording);
+    }
+    List<Event> events = new ArrayList<>();
+    for (Object event : (List<?>) method("jdk.jfr.consumer.RecordingFile", "readAllEvents",
+        Path.class).invoke(null, file)) {
+      events.add(new Event(event));
+    }
+
+    Event kex = only(events, "com.jcraft.jsch.KeyExchange");
+    assertEquals(sshd.getHost(), kex.getString("host"));
+    assertEquals(sshd.getFirstMappedPort().intValue(), kex.getInt("port"));
+    assertTrue(kex.getBoolean("initial"));
+    assertFalse(kex.getString("kex").isEmpty());
+    assertFalse(kex.getString("hostKey").isEmpty());
+    assertFalse(kex.getString("cipherC2S").isEmpty());
+    assertFalse(kex.getString("cipherS2C").isEmpty());
+    assertNotNull(kex.getString("macC2S"));
+
+    List<Event> auths = byName(events, "com.jcraft.jsch.UserAuth");
+    Event auth = auths.get(auths.size() - 1);
+    assertEquals(sshd.getHost(), auth.getString("host"));
+    assertEquals("root", auth.getString("user"));
+    assertEquals("publickey", auth.getString("method"));
+    assertEquals("success", auth.getString("result"));
+
+    Event open = only(events, "com.jcraft.jsch.ChannelOpen");
+    assertEquals(sshd.getHost(), open.getString("host"));
+    assertEquals("session", open.getString("type"));
+    assertTrue(open.getBoolean("opened"));
+
+    List<Event> stalls = new ArrayList<>();
+    for (Event stall : byName(events, "com.jcraft.jsch.WriteStall")) {
+      if ("window".equals(stall.getString("cause"))) {
+        stalls.add(stall);
+      }
+    }
+    assertFalse(stalls.isEmpty(), "no write stall on the remote window recorded");
+    for (Event stall : stalls) {
+      assertEquals(sshd.getHost(), stall.getString("host"));
+      assertEquals(open.getInt("id"), stall.getInt("channel"));
+    }
+  }
+
+  // sends more than the remote window to a command that only starts reading after a second
+  private void writeToSlowReader() throws Exception {
+    JSch ssh = createRSAIdentity();
+    Session session = createSession(ssh);
+    session.setTimeout(timeout);
+    session.connect();
+    try {
+      ChannelExec exec = (ChannelExec) session.openChannel("exec");
+      exec.setCommand("sleep 1; cat > /dev/null");
+      OutputStream out = exec.getOutputStream();
+      exec.connect(timeout);
+      byte[] data = new byte[32 * 1024];
+      for (int i = 0; i < 256; i++) {
+        out.write(data);
+      }
+      out.close();
+      for (int i = 0; i < 100 && !exec.isClosed(); i++) {
+        Thread.sleep(100L);
+      }
+      assertEquals(0, exec.getExitStatus());
+      exec.disconnect();
+    } finally {
+      session.disconnect();
+    }
+  }
+
+  private static List<Event> byName(List<Event> events, String name) {
+    return events.stream().filter(e -> e.name.equals(name)).collect(Collectors.toList());
+  }
+
+  private static Event only(List<Event> events, String name) {
+    List<Event> found = byName(events, name);
+    assertEquals(1, found.size(), name);
+    return found.get(0);
+  }
+
+  private static Method method(String className, String name, Class<?>... parameterTypes)
+      throws Exception {
+    return Class.forName(className).getMethod(name, parameterTypes);
+  }
+
+  /** A jdk.jfr.consumer.RecordedEvent. */
+  private static class Event {
+    private static final String RECORDED_OBJECT = "jdk.jfr.consumer.RecordedObject";
+
+    final String name;
+    private final Object event;
+
+    Event(Object event) throws Exception {
+      Object type = method("jdk.jfr.consumer.RecordedEvent", "getEventType").invoke(event);
+      this.name = (String) method("jdk.jfr.EventType", "getName").invoke(type);
+      this.event = event;
+    }
+
+    String getString(String field) throws Exception {
+      return (String) method(RECORDED_OBJECT, "getString", String.class).invoke(event, field);
+    }
+
+    int getInt(String field) throws Exception {
+      return (Integer) method(RECORDED_OBJECT, "getInt", String.class).invoke(event, field);
+    }
+
+    boolean getBoolean(String field) throws Exception {
+      return (Boolean) method(RECORDED_OBJECT, "getBoolean", String.class).invoke(event, field);
+    }
+  }
+
+  private JSch createRSAIdentity() throws Exception {
+    HostKey hostKey = readHostKey(getResourceFile("docker/ssh_host_rsa_key.pub"));
+    JSch ssh = new JSch();
+    ssh.addIdentity(getResourceFile("docker/id_rsa"), getResourceFile("docker/id_rsa.pub"), null);
+    ssh.getHostKeyRepository().add(hostKey, null);
+    return ssh;
+  }
+
+  private HostKey readHostKey(String fileName) throws Exception {
+    List<String> lines = Files.readAllLines(Paths.get(fileName), UTF_8);
+    String[] split = lines.get(0).split("\\s+");
+    String hostname =
+        String.format(Locale.ROOT, "[%s]:%d", sshd.getHost(), sshd.getFirstMappedPort());
+    return new HostKey(hostname, Base64.getDecoder().decode(split[1]));
+  }
+
+  private Session createSession(JSch ssh) throws Exception {
+    Session session = ssh.getSession("root", sshd.getHost(), sshd.getFirstMappedPort());
+    session.setConfig("StrictHostKeyChecking", "yes");
+    session.setConfig("PreferredAuthentications", "publickey");
+    return session;
+  }
+
+  private void printInfo() {
+    jschLogger.getAllLoggingEvents().stream().map(LoggingEvent::getFormattedMessage)
+        .forEach(System.out::println);
+    sshdLogger.getAllLoggingEvents().stream().map(LoggingEvent::getFormattedMessage)
+        .forEach(System.out::println);
+    System.out.println("");
+    System.out.println("");
+    System.out.println("");
+  }
+
+  private String getResourceFile(String fileName) {
+    return ResourceUtil.getResourceFile(getClass(), fileName);
+  }
+}
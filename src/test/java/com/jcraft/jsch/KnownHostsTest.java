@@ -886,6 +886,166 @@ class KnownHostsTest {
         "explicit key removal should still remove marked entries");
   }
 
+  @Test
+  void testCheckPlainHostsIgnoresCase() throws Exception {
+    KnownHosts kh = new KnownHosts(jsch);
+    kh.add(new HostKey("Host.Example.COM,192.277.325.3", HostKey.SSHRSA, rsaKeyBytes), null);
+
+    assertEquals(KnownHosts.OK, kh.check("host.example.com", rsaKeyBytes),
+        "host names should be compared ignoring case");
+    assertEquals(KnownHosts.OK, kh.check("192.277.325.3", rsaKeyBytes),
+        "each of the host names should be looked up");
+    assertEquals(KnownHosts.NOT_INCLUDED, kh.check("example.com", rsaKeyBytes),
+        "part of a host name should not match");
+  }
+
+  @Test
+  void testCheckHashedHostsAfterAddAndRemove() throws Exception {
+    Session.random = new NotSoRandomRandom();
+    KnownHosts kh = new KnownHosts(jsch);
+    assertEquals(KnownHosts.NOT_INCLUDED, kh.check("hashed.example.com", rsaKeyBytes),
+        "nothing known yet");
+
+    HostKey hashed = kh.createHashedHostKey("hashed.example.com", rsaKeyBytes);
+    kh.add(hashed, null);
+    assertEquals(KnownHosts.OK, kh.check("hashed.example.com", rsaKeyBytes),
+        "added hashed entry should be found");
+    assertEquals(KnownHosts.CHANGED,
+        kh.check("hashed.example.com", "    ssh-rsa1234".getBytes(ISO_8859_1)),
+        "changed key should return CHANGED");
+
+    kh.remove("hashed.example.com", "ssh-rsa");
+    assertEquals(KnownHosts.NOT_INCLUDED, kh.check("hashed.example.com", rsaKeyBytes),
+        "removed hashed entry should not be found");
+
+    kh.add(kh.createHashedHostKey("hashed.example.com", dsaKeyBytes), null);
+    assertEquals(KnownHosts.OK, kh.check("hashed.example.com", dsaKeyBytes),
+        "hashed entry added again should be found");
+  }
+
+  @Test
+  void testCheckHashedHostsConcurrently() throws Exception {
+    Session.random = new NotSoRandomRandom();
+    KnownHosts kh = new KnownHosts(jsch);
+    for (int i = 0; i < 100; i++) {
+      kh.add(kh.createHashedHostKey("host" + i + ".example.com", rsaKeyBytes), null);
+    }
+
+    int[] failures = new int[1];
+    Thread[] threads = new Thread[4];
+    for (int t = 0; t < threads.length; t++) {
+      threads[t] = new Thread(() -> {
+        for (int i = 0; i < 100; i++) {
+          if (kh.check("host" + i + ".example.com", rsaKeyBytes) != KnownHosts.OK) {
+            synchronized (failures) {
+              failures[0]++;
+            }
+          }
+        }
+      });
+      threads[t].start();
+    }
+    for (Thread thread : threads) {
+      thread.join();
+    }
+    assertEquals(0, failures[0], "all hashed entries should be found");
+  }
+
+  @Test
+  void testAddAppendsToKnownHostsFile() throws Exception {
+    JSch.setConfig("known_hosts_fsync", "yes");
+    File file = File.createTempFile("appendknownhosts", ".txt");
+    try {
+      String existing = "existing.example.com ssh-rsa " + rsaKey;
+      try (FileOutputStream fos = new FileOutputStream(file)) {
+        // no line feed at the end
+        fos.write(existing.getBytes(ISO_8859_1));
+      }
+      KnownHosts kh = new KnownHosts(jsch) {
+        @Override
+        synchronized void sync(String foo) throws IOException {
+          messages.add("sync with file '" + foo + "'");
+          super.sync(foo);
+        }
+      };
+      kh.setKnownHosts(file.getAbsolutePath());
+
+      byte[] key = Util.fromBase64(Util.str2byte(rsaKey), 0, rsaKey.length());
+      kh.add(new HostKey("new1.example.com", key), null);
+      kh.add(new HostKey("new2.example.com", key), null);
+
+      assertEquals(0, messages.size(), "file should not be rewritten: " + getMessagesAsString());
+      assertEquals(existing + "\n" + "new1.example.com ssh-rsa " + rsaKey + "\n"
+          + "new2.example.com ssh-rsa " + rsaKey + "\n", readFile(file), "file content");
+
+      kh.next_reload = 0L;
+      assertEquals(3, kh.getHostKey().length, "appended entries should not be read again");
+    } finally {
+      file.delete();
+    }
+  }
+
+  @Test
+  void testReloadsChangedKnownHostsFile() throws Exception {
+    File file = File.createTempFile("reloadknownhosts", ".txt");
+    try {
+      byte[] key = Util.fromBase64(Util.str2byte(rsaKey), 0, rsaKey.length());
+      try (FileOutputStream fos = new FileOutputStream(file)) {
+        fos.write(("first.example.com ssh-rsa " + rsaKey + "\n").getBytes(ISO_8859_1));
+      }
+      KnownHosts kh = new KnownHosts(jsch);
+      kh.setKnownHosts(file.getAbsolutePath());
+      assertEquals(KnownHosts.NOT_INCLUDED, kh.check("second.example.com", key),
+          "second host not known yet");
+
+      try (FileOutputStream fos = new FileOutputStream(file, true)) {
+        fos.write(("second.example.com ssh-rsa " + rsaKey + "\n").getBytes(ISO_8859_1));
+        // not complete yet
+        fos.write("third.example.com ssh-rsa ".getBytes(ISO_8859_1));
+      }
+      kh.next_reload = 0L;
+      assertEquals(KnownHosts.OK, kh.check("second.example.com", key),
+          "appended line should have been read");
+      assertEquals(KnownHosts.OK, kh.check("first.example.com", key),
+          "first line should still be known");
+
+      try (FileOutputStream fos = new FileOutputStream(file, true)) {
+        fos.write((rsaKey + "\n").getBytes(ISO_8859_1));
+      }
+      kh.next_reload = 0L;
+      assertEquals(KnownHosts.OK, kh.check("third.example.com", key),
+          "completed line should have been read");
+      assertEquals(3, kh.getHostKey().length, "lines should be read once");
+
+      try (FileOutputStream fos = new FileOutputStream(file)) {
+        // caught in the middle of being rewritten
+        fos.write(("fourth.host.example.com ssh-rsa " + rsaKey + "\n").getBytes(ISO_8859_1));
+      }
+      kh.next_reload = 0L;
+      assertEquals(KnownHosts.OK, kh.check("first.example.com", key),
+          "file being rewritten should not have been read yet");
+
+      try (FileOutputStream fos = new FileOutputStream(file, true)) {
+        // longer than before, so that the rewritten file does not look unchanged
+        fos.write(("fifth.example.com ssh-rsa " + rsaKey + "\n").getBytes(ISO_8859_1));
+        fos.write(("sixth.example.com ssh-rsa " + rsaKey + "\n").getBytes(ISO_8859_1));
+      }
+      kh.next_reload = 0L;
+      assertEquals(KnownHosts.OK, kh.check("first.example.com", key),
+          "file changed since the last reload should not have been read yet");
+      assertEquals(3, kh.getHostKey().length, "old entries should have been kept");
+
+      kh.next_reload = 0L;
+      assertEquals(KnownHosts.NOT_INCLUDED, kh.check("first.example.com", key),
+          "rewritten file should have been read again");
+      assertEquals(KnownHosts.OK, kh.check("sixth.example.com", key),
+          "rewritten file should have been read again");
+      assertEquals(3, kh.getHostKey().length, "unexpected number of host keys");
+    } finally {
+      file.delete();
+    }
+  }
+
   @Test
   public void testAddGetRemoveHostKeys() throws Exception {
     boolean[] throwException = new boolean[1];
@@ -1069,6 +1229,18 @@ class KnownHostsTest {
     kh.add(new HostKey("[192.277.325.5]:123", rsaKeyBytes), null);
   }
 
+  private static String readFile(File file) throws IOException {
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    try (FileInputStream fis = new FileInputStream(file)) {
+      byte[] buf = new byte[1024];
+      int n;
+      while ((n = fis.read(buf)) != -1) {
+        out.write(buf, 0, n);
+      }
+    }
+    return new String(out.toByteArray(), ISO_8859_1);
+  }
+
   private String getHostKeysString(HostKey[] hosts) {
     return Arrays.stream(hosts).map(host -> host.getHost() + ": key type " + host.getType())
         .collect(Collectors.joining("\r\n"));
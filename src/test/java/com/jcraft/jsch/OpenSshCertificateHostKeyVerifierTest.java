@@ -215,6 +215,41 @@ public class OpenSshCertificateHostKeyVerifierTest {
         () -> OpenSshCertificateHostKeyVerifier.checkHostCertificate(session, certificate));
   }
 
+  @Test
+  public void testCheckHostCertificate_acceptedCertificate_isCached() throws Exception {
+    String certificatePath =
+        "src/test/resources/certificates/rsa_host_ca/ssh_host_ecdsa_key-cert.pub";
+    String caLine = new String(Util.fromFile("src/test/resources/certificates/rsa_host_ca/ca.pub"),
+        StandardCharsets.UTF_8).trim();
+    JSch jsch = new JSch();
+    int[] lookups = new int[1];
+    KnownHosts knownHosts = new KnownHosts(jsch) {
+      @Override
+      public HostKey[] getHostKey() {
+        lookups[0]++;
+        return super.getHostKey();
+      }
+    };
+    knownHosts.setKnownHosts(new ByteArrayInputStream(
+        ("@cert-authority host.example.com " + caLine).getBytes(StandardCharsets.UTF_8)));
+    jsch.setHostKeyRepository(knownHosts);
+    OpenSshCertificate certificate = parseCertificate(certificatePath);
+    Session session = jsch.getSession("user", "host.example.com");
+
+    OpenSshCertificateHostKeyVerifier.checkHostCertificate(session, certificate);
+    assertTrue(lookups[0] > 0, "CA should have been looked up");
+
+    lookups[0] = 0;
+    OpenSshCertificateHostKeyVerifier.checkHostCertificate(session, certificate);
+    assertEquals(0, lookups[0], "accepted certificate should have been taken from the cache");
+
+    // revoking the CA must not be hidden by the cache
+    HostKey ca = OpenSshCertificateUtil.getTrustedCAs(knownHosts).iterator().next();
+    knownHosts.add(new HostKey("@revoked", "host.example.com", ca.type, ca.key, null), null);
+    assertThrows(JSchRevokedHostKeyException.class,
+        () -> OpenSshCertificateHostKeyVerifier.checkHostCertificate(session, certificate));
+  }
+
   // ==================== Helper methods ====================
 
   /**
@@ -0,0 +1,157 @@
+package com.jcraft.jsch;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.util.Random;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import org.junit.jupiter.api.Test;
+
+class RingBufferInputStreamTest {
+
+  @Test
+  void transfersDataInOrder() throws Exception {
+    byte[] data = new byte[4 * 1024 * 1024];
+    new Random(0).nextBytes(data);
+    RingBufferInputStream in = new RingBufferInputStream(1024, 64 * 1024);
+    OutputStream out = in.getOutputStream();
+
+    CompletableFuture<Void> writer = CompletableFuture.runAsync(() -> {
+      Random random = new Random(1);
+      try {
+        int off = 0;
+        while (off < data.length) {
+          int len = Math.min(data.length - off, random.nextInt(40000) + 1);
+          out.write(data, off, len);
+          off += len;
+        }
+        out.close();
+      } catch (IOException e) {
+        throw new RuntimeException(e);
+      }
+    });
+
+    byte[] received = new byte[data.length];
+    Random random = new Random(2);
+    int off = 0;
+    while (true) {
+      int len = Math.min(received.length - off, random.nextInt(50000) + 1);
+      int n = len == 0 ? in.read() : in.read(received, off, len);
+      if (n < 0) {
+        break;
+      }
+      if (len == 0) {
+        throw new AssertionError("more data than written");
+      }
+      off += n;
+    }
+    writer.get(10, TimeUnit.SECONDS);
+    assertEquals(data.length, off);
+    assertArrayEquals(data, received);
+  }
+
+  @Test
+  void readsRemainingDataAfterWriterHasClosed() throws Exception {
+    RingBufferInputStream in = new RingBufferInputStream(1024);
+    OutputStream out = in.getOutputStream();
+    out.write(new byte[] {1, 2, 3});
+    out.close();
+
+    assertEquals(3, in.available());
+    byte[] b = new byte[10];
+    assertEquals(3, in.read(b, 0, b.length));
+    assertEquals(-1, in.read());
+    assertThrows(IOException.class, () -> out.write(4));
+  }
+
+  @Test
+  void blocksWriterOnceBufferIsFull() throws Exception {
+    RingBufferInputStream in = new RingBufferInputStream(1024, 2048);
+    OutputStream out = in.getOutputStream();
+    out.write(new byte[2048]);
+
+    CompletableFuture<Void> writer = CompletableFuture.runAsync(() -> {
+      try {
+        out.write(new byte[100]);
+      } catch (IOException e) {
+        throw new RuntimeException(e);
+      }
+    });
+    Thread.sleep(100);
+    assertEquals(2048, in.available());
+
+    assertEquals(1000, in.read(new byte[1000], 0, 1000));
+    writer.get(10, TimeUnit.SECONDS);
+    assertEquals(1148, in.available());
+  }
+
+  @Test
+  void failsWriterOnceReaderHasClosed() throws Exception {
+    RingBufferInputStream in = new RingBufferInputStream(1024);
+    OutputStream out = in.getOutputStream();
+    out.write(new byte[1024]);
+
+    CompletableFuture<Void> writer = CompletableFuture.runAsync(() -> {
+      try {
+        out.write(1);
+      } catch (IOException e) {
+        throw new RuntimeException(e);
+      }
+    });
+    Thread.sleep(100);
+    in.close();
+    ExecutionException e =
+        assertThrows(ExecutionException.class, () -> writer.get(10, TimeUnit.SECONDS));
+    assertEquals("Pipe closed", e.getCause().getCause().getMessage());
+    assertThrows(IOException.class, () -> in.read());
+  }
+
+  @Test
+  void offersOnlyWhatFits() throws Exception {
+    RingBufferInputStream in = new RingBufferInputStream(1024, 2048);
+    ChannelInbound.Offerable out = (ChannelInbound.Offerable) in.getOutputStream();
+    assertTrue(out.offer(new byte[2000], 0, 2000));
+    assertFalse(out.offer(new byte[100], 0, 100));
+    assertEquals(2000, in.available());
+
+    assertEquals(100, in.read(new byte[100], 0, 100));
+    assertTrue(out.offer(new byte[100], 0, 100));
+    assertEquals(2000, in.available());
+  }
+
+  @Test
+  void failsWaitingWriterOnceWriterSideIsClosed() throws Exception {
+    RingBufferInputStream in = new RingBufferInputStream(1024);
+    OutputStream out = in.getOutputStream();
+    out.write(new byte[1024]);
+
+    CompletableFuture<Void> writer = CompletableFuture.runAsync(() -> {
+      try {
+        out.write(1);
+      } catch (IOException e) {
+        throw new RuntimeException(e);
+      }
+    });
+    Thread.sleep(100);
+    out.close();
+    ExecutionException e =
+        assertThrows(ExecutionException.class, () -> writer.get(10, TimeUnit.SECONDS));
+    assertEquals("Pipe closed", e.getCause().getCause().getMessage());
+    assertEquals(1024, in.available());
+  }
+
+  @Test
+  void interruptsWaitingReader() throws Exception {
+    RingBufferInputStream in = new RingBufferInputStream(1024);
+    Thread.currentThread().interrupt();
+    assertThrows(InterruptedIOException.class, () -> in.read());
+  }
+}
@@ -0,0 +1,62 @@
+package com.jcraft.jsch;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.ByteArrayOutputStream;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+class SessionGlobalRequestTest {
+
+  private Session session;
+
+  @BeforeEach
+  void setUp() throws Exception {
+    session = TestSessions.connected(new ByteArrayOutputStream());
+  }
+
+  @Test
+  void matchesRepliesInOrder() throws Exception {
+    CompletableFuture<Buffer> forward = session.sendGlobalRequest(requestPacket("tcpip-forward"));
+    session.sendKeepAliveMsg();
+    CompletableFuture<Buffer> other = session.sendGlobalRequest(requestPacket("tcpip-forward"));
+
+    Buffer reply = new Buffer(4);
+    reply.putInt(2222);
+    session.receiveGlobalReply(true, reply);
+    assertEquals(2222, forward.get().getInt());
+    assertFalse(other.isDone());
+
+    // the reply to the keepalive
+    session.receiveGlobalReply(false, new Buffer(0));
+    assertFalse(other.isDone());
+
+    session.receiveGlobalReply(false, new Buffer(0));
+    ExecutionException e = assertThrows(ExecutionException.class, other::get);
+    assertEquals("global request failed", e.getCause().getMessage());
+  }
+
+  @Test
+  void failsPendingRequestsOnDisconnect() throws Exception {
+    CompletableFuture<Buffer> forward = session.sendGlobalRequest(requestPacket("tcpip-forward"));
+    session.disconnect();
+    assertTrue(forward.isCompletedExceptionally());
+    JSchException e =
+        assertThrows(JSchException.class, () -> Channel.await(forward, 0, "timeout"));
+    assertEquals("session is down", e.getMessage());
+  }
+
+  private static Packet requestPacket(String name) {
+    Packet packet = new Packet(new Buffer(64));
+    packet.reset();
+    packet.buffer.putByte((byte) Session.SSH_MSG_GLOBAL_REQUEST);
+    packet.buffer.putString(Util.str2byte(name));
+    packet.buffer.putByte((byte) 1);
+    return packet;
+  }
+}
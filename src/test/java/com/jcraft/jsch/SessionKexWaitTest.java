@@ -0,0 +1,76 @@
+package com.jcraft.jsch;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.ByteArrayOutputStream;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+class SessionKexWaitTest {
+
+  private Session session;
+  private ByteArrayOutputStream out;
+
+  @BeforeEach
+  void setUp() throws Exception {
+    Session.random = new com.jcraft.jsch.jce.Random();
+    Packet.setRandom(Session.random);
+    session = new Session(new JSch(), null, null, 0);
+    out = new ByteArrayOutputStream();
+    session.io = new IO();
+    session.io.setOutputStream(out);
+  }
+
+  @Test
+  void writerResumesOnceKeyExchangeHasCompleted() throws Exception {
+    session.rekey();
+    int kexinit = out.size();
+
+    Thread writer = new Thread(() -> {
+      try {
+        session.write(ignorePacket());
+      } catch (Exception e) {
+        throw new RuntimeException(e);
+      }
+    });
+    writer.start();
+    long deadline = System.currentTimeMillis() + 10000;
+    while (writer.getState() != Thread.State.WAITING && System.currentTimeMillis() < deadline) {
+      Thread.sleep(10);
+    }
+    assertEquals(Thread.State.WAITING, writer.getState());
+    assertEquals(kexinit, out.size());
+
+    session.setInKex(false);
+    writer.join(10000);
+    assertTrue(out.size() > kexinit);
+  }
+
+  @Test
+  void writerGivesUpAfterTimeout() throws Exception {
+    session.setTimeout(200);
+    session.rekey();
+
+    CompletableFuture<Void> write = CompletableFuture.runAsync(() -> {
+      try {
+        session.write(ignorePacket());
+      } catch (Exception e) {
+        throw new RuntimeException(e);
+      }
+    });
+    Exception e = assertThrows(Exception.class, () -> write.get(10, TimeUnit.SECONDS));
+    assertEquals("timeout in waiting for rekeying process.", e.getCause().getCause().getMessage());
+  }
+
+  private static Packet ignorePacket() {
+    Packet packet = new Packet(new Buffer(64));
+    packet.reset();
+    packet.buffer.putByte((byte) Session.SSH_MSG_IGNORE);
+    packet.buffer.putString(new byte[0]);
+    return packet;
+  }
+}
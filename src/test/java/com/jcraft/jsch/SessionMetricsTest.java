@@ -0,0 +1,113 @@
+package com.jcraft.jsch;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.ByteArrayOutputStream;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+class SessionMetricsTest {
+
+  private Session session;
+  private ByteArrayOutputStream out;
+
+  @BeforeEach
+  void setUp() throws Exception {
+    out = new ByteArrayOutputStream();
+    session = TestSessions.connected(out);
+  }
+
+  @Test
+  void countsPacketsSent() throws Exception {
+    AtomicLong listened = new AtomicLong();
+    session.setMetricsListener(new MetricsListener() {
+      @Override
+      public void packetSent(Session s, int bytes) {
+        listened.addAndGet(bytes);
+      }
+    });
+    session.write(ignorePacket());
+    session.write(ignorePacket());
+
+    TransportMetrics metrics = session.getMetrics();
+    assertEquals(2, metrics.getPacketsOut());
+    assertEquals(out.size(), metrics.getBytesOut());
+    assertEquals(out.size(), listened.get());
+  }
+
+  @Test
+  void measuresKeyExchanges() throws Exception {
+    session.rekey();
+    Thread.sleep(20);
+    session.setInKex(false);
+
+    TransportMetrics metrics = session.getMetrics();
+    assertEquals(1, metrics.getKexCount());
+    assertTrue(metrics.getKexNanos() >= TimeUnit.MILLISECONDS.toNanos(20));
+  }
+
+  @Test
+  void measuresWindowWaits() throws Exception {
+    Channel channel = newChannel();
+    Packet packet = new Packet(new Buffer(256));
+    packet.reset();
+    packet.buffer.putByte((byte) Session.SSH_MSG_CHANNEL_DATA);
+    packet.buffer.putInt(channel.getRecipient());
+    packet.buffer.putString(new byte[64]);
+
+    CompletableFuture<Void> writer = CompletableFuture.runAsync(() -> {
+      try {
+        session.write(packet, channel, 64);
+      } catch (Exception e) {
+        throw new RuntimeException(e);
+      }
+    });
+    Thread.sleep(50);
+    channel.addRemoteWindowSize(1024);
+    writer.get(10, TimeUnit.SECONDS);
+
+    TransportMetrics metrics = channel.getMetrics();
+    assertEquals(1, metrics.getWindowWaits());
+    assertTrue(metrics.getWindowWaitNanos() > 0);
+    assertEquals(64, metrics.getBytesOut());
+    assertEquals(1, metrics.getPacketsOut());
+    assertEquals(1, session.getMetrics().getWindowWaits());
+  }
+
+  @Test
+  void countsChannelDataReceived() throws Exception {
+    Channel channel = newChannel();
+    channel.getInputStream();
+    channel.getExtInputStream();
+    channel.inbound.data(new byte[100], 0, 100, false);
+    channel.inbound.data(new byte[50], 0, 50, true);
+
+    TransportMetrics metrics = channel.getMetrics();
+    assertEquals(150, metrics.getBytesIn());
+    assertEquals(2, metrics.getPacketsIn());
+    assertEquals(2, metrics.getInboundDeliveries());
+    assertEquals(0, metrics.getInboundQueuedBytes());
+    assertEquals(1, session.getMetrics().getOpenChannels());
+  }
+
+  private Channel newChannel() {
+    Channel channel = new ChannelSession();
+    channel.setSession(session);
+    channel.setRecipient(0);
+    channel.connected = true;
+    session.channels.put(channel);
+    return channel;
+  }
+
+  private static Packet ignorePacket() {
+    Packet packet = new Packet(new Buffer(64));
+    packet.reset();
+    packet.buffer.putByte((byte) Session.SSH_MSG_IGNORE);
+    packet.buffer.putString(new byte[0]);
+    return packet;
+  }
+}
@@ -0,0 +1,182 @@
+package com.jcraft.jsch;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Properties;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+class SessionPoolTest {
+
+  private JSch jsch;
+  private FakePool pool;
+
+  @BeforeEach
+  void setUp() {
+    jsch = new JSch();
+    pool = new FakePool(jsch);
+  }
+
+  @AfterEach
+  void tearDown() {
+    pool.close();
+  }
+
+  @Test
+  void reusesSessionForSameKey() throws Exception {
+    Channel first = pool.openChannel("session", "user", "host", 22, null);
+    Channel second = pool.openChannel("session", "user", "host", 22, null);
+
+    assertSame(first.getSession(), second.getSession());
+    assertEquals(1, pool.connected.size());
+  }
+
+  @Test
+  void separatesSessionsByConfig() throws Exception {
+    Properties config = new Properties();
+    config.setProperty("compression.s2c", "zlib@openssh.com");
+    Channel plain = pool.openChannel("session", "user", "host", 22, null);
+    Channel compressed = pool.openChannel("session", "user", "host", 22, config);
+    Channel other = pool.openChannel("session", "other", "host", 22, null);
+
+    assertNotSame(plain.getSession(), compressed.getSession());
+    assertNotSame(plain.getSession(), other.getSession());
+    assertEquals(3, pool.getSessionCount());
+  }
+
+  @Test
+  void connectsAnotherSessionWhenSaturated() throws Exception {
+    pool.setMaxChannelsPerSession(2);
+    Channel a = pool.openChannel("session", "user", "host", 22, null);
+    Channel b = pool.openChannel("session", "user", "host", 22, null);
+    Channel c = pool.openChannel("session", "user", "host", 22, null);
+
+    assertSame(a.getSession(), b.getSession());
+    assertNotSame(a.getSession(), c.getSession());
+    assertEquals(2, pool.getSessionCount());
+
+    a.disconnect();
+    Channel d = pool.openChannel("session", "user", "host", 22, null);
+    assertSame(b.getSession(), d.getSession());
+    assertEquals(2, pool.getSessionCount());
+  }
+
+  @Test
+  void evictsIdleSessions() throws Exception {
+    pool.setIdleTimeout(50);
+    Channel busy = pool.openChannel("session", "user", "busy", 22, null);
+    Channel idle = pool.openChannel("session", "user", "idle", 22, null);
+    idle.disconnect();
+
+    long deadline = System.currentTimeMillis() + 10000;
+    while (pool.getSessionCount() > 1 && System.currentTimeMillis() < deadline) {
+      Thread.sleep(10);
+    }
+    assertEquals(1, pool.getSessionCount());
+    assertFalse(idle.getSession().isConnected());
+    assertTrue(busy.getSession().isConnected());
+  }
+
+  @Test
+  void replacesDeadIdleSession() throws Exception {
+    Channel channel = pool.openChannel("session", "user", "host", 22, null);
+    Session dead = channel.getSession();
+    channel.disconnect();
+    pool.streams.get(0).broken = true;
+
+    Channel next = pool.openChannel("session", "user", "host", 22, null);
+    assertNotSame(dead, next.getSession());
+    assertFalse(dead.isConnected());
+    assertEquals(1, pool.getSessionCount());
+  }
+
+  @Test
+  void replacesIdleSessionWhichDoesNotAnswer() throws Exception {
+    pool.setKeepAliveTimeout(100);
+    Channel channel = pool.openChannel("session", "user", "host", 22, null);
+    Session silent = channel.getSession();
+    channel.disconnect();
+
+    Channel next = pool.openChannel("session", "user", "host", 22, null);
+    assertNotSame(silent, next.getSession());
+    assertFalse(silent.isConnected());
+    assertEquals(1, pool.getSessionCount());
+  }
+
+  @Test
+  void keepsIdleSessionWhichAnswers() throws Exception {
+    pool.setKeepAliveTimeout(100);
+    Channel channel = pool.openChannel("session", "user", "host", 22, null);
+    Session session = channel.getSession();
+    channel.disconnect();
+    // the server declines keepalive@jcraft.com, which is an answer all the same
+    pool.streams.get(0).answer = session;
+
+    Channel next = pool.openChannel("session", "user", "host", 22, null);
+    assertSame(session, next.getSession());
+    assertTrue(session.isConnected());
+  }
+
+  @Test
+  void jschReturnsNewPoolOnceClosed() {
+    SessionPool first = jsch.getSessionPool();
+    assertSame(first, jsch.getSessionPool());
+    first.close();
+    assertNotSame(first, jsch.getSessionPool());
+  }
+
+  /** Hands out sessions which look connected, without connecting anything. */
+  private static class FakePool extends SessionPool {
+    final List<Session> connected = new ArrayList<>();
+    final List<BreakableStream> streams = new ArrayList<>();
+
+    FakePool(JSch jsch) {
+      super(jsch);
+    }
+
+    @Override
+      Session connect(String username, String host, int port, Properties config)
+        throws JSchException {
+      BreakableStream out = new BreakableStream();
+      Session session = TestSessions.connected(new JSch(), username, host, port, out);
+      connected.add(session);
+      streams.add(out);
+      return session;
+    }
+  }
+
+  private static class BreakableStream extends OutputStream {
+    volatile boolean broken = false;
+    // answers the global requests written to the stream with SSH_MSG_REQUEST_FAILURE
+    volatile Session answer = null;
+    private final ByteArrayOutputStream out = new ByteArrayOutputStream();
+
+    @Override
+    public void write(int b) throws IOException {
+      write(new byte[] {(byte) b}, 0, 1);
+    }
+
+    @Override
+    public void write(byte[] b, int off, int len) throws IOException {
+      if (broken) {
+        throw new IOException("broken pipe");
+      }
+      out.write(b, off, len);
+      Session session = answer;
+      // the packets are not encrypted: uint32 packet_length, byte padding_length, payload
+      if (session != null && len > 5 && b[off + 5] == Session.SSH_MSG_GLOBAL_REQUEST) {
+        session.receiveGlobalReply(false, new Buffer(0));
+      }
+    }
+  }
+}
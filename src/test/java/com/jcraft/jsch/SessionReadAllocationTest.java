@@ -0,0 +1,380 @@
+package com.jcraft.jsch;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.junit.jupiter.api.Assumptions.assumeTrue;
+import static org.junit.jupiter.api.condition.JRE.JAVA_17;
+
+import com.jcraft.jsch.annotations.SuppressForbiddenApi;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.lang.management.ManagementFactory;
+import java.util.Arrays;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.EnabledForJreRange;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.CsvSource;
+import org.junit.jupiter.params.provider.ValueSource;
+
+/**
+ * Verifies that Session.read(Buffer) does not allocate once it has been warmed up. The ciphers and
+ * MACs of {@link #readDoesNotAllocate} are trivial and allocation free, so that anything allocated
+ * during the measured reads can only come from the session itself; the real ones are checked too.
+ */
+class SessionReadAllocationTest {
+
+  private static final int PACKETS = 100;
+  private static final int PAYLOAD_SIZE = 32768;
+  // a single small allocation per packet would already exceed this
+  private static final long MAX_ALLOCATED_BYTES = 1024;
+
+  @ParameterizedTest
+  @ValueSource(strings = {"test-cipher/test-mac", "test-cipher/test-mac-etm", "test-aead/none",
+      "test-chacha20/none"})
+  void readDoesNotAllocate(String algorithms) throws Exception {
+    long allocated = measureReads(algorithms);
+    assertTrue(allocated < MAX_ALLOCATED_BYTES,
+        "read allocated " + allocated + " bytes for " + PACKETS + " packets");
+  }
+
+  /**
+   * The JCE leaves some allocations per packet: Mac.doFinal(byte[], int) computes the MAC into a
+   * new array, and every AES-GCM packet needs Cipher.init() with a new GCMParameterSpec. They must
+   * stay far below the size of a packet, which a copy of the payload would not.
+   */
+  @ParameterizedTest
+  @CsvSource({"aes128-ctr/hmac-sha2-256, 128", "aes128-ctr/hmac-sha2-256-etm@openssh.com, 128",
+      "chacha20-poly1305@openssh.com/none, 0"})
+  void readAllocatesLittleWithRealAlgorithms(String algorithms, int perPacket) throws Exception {
+    long allocated = measureReads(algorithms);
+    assertTrue(allocated < MAX_ALLOCATED_BYTES + (long) perPacket * PACKETS,
+        algorithms + " read allocated " + allocated + " bytes for " + PACKETS + " packets");
+  }
+
+  /** Before Java 17, the AES-GCM of the JDK buffers each packet it decrypts in a new array. */
+  @Test
+  @EnabledForJreRange(min = JAVA_17)
+  void readAllocatesLittleWithAesGcm() throws Exception {
+    readAllocatesLittleWithRealAlgorithms("aes128-gcm@openssh.com/none", 2048);
+  }
+
+  @SuppressForbiddenApi("jdk-non-portable")
+  private static long measureReads(String algorithms) throws Exception {
+    java.lang.management.ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+    assumeTrue(bean instanceof com.sun.management.ThreadMXBean);
+    com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) bean;
+    assumeTrue(threads.isThreadAllocatedMemorySupported());
+    threads.setThreadAllocatedMemoryEnabled(true);
+    long tid = JavaThreadId.get();
+
+    Packet.setRandom(new com.jcraft.jsch.jce.Random());
+    String[] pair = algorithms.split("/", 2);
+    Loopback loopback = new Loopback((PAYLOAD_SIZE + 256) * PACKETS * 2);
+    Session writer = newSession(pair[0], pair[1]);
+    Session reader = newSession(pair[0], pair[1]);
+    writer.io.setOutputStream(loopback.out);
+    reader.io.setInputStream(loopback.in);
+
+    byte[] payload = new byte[PAYLOAD_SIZE];
+    Arrays.fill(payload, (byte) 'x');
+    Buffer wbuf = new Buffer(PAYLOAD_SIZE + 128);
+    Packet wpacket = new Packet(wbuf);
+    // start small, so that the first packets have to grow the buffer
+    Buffer rbuf = new Buffer(64);
+
+    // warm up
+    for (int i = 0; i < PACKETS; i++) {
+      writePacket(writer, wpacket, wbuf, payload);
+    }
+    for (int i = 0; i < PACKETS; i++) {
+      reader.read(rbuf);
+    }
+
+    for (int i = 0; i < PACKETS; i++) {
+      writePacket(writer, wpacket, wbuf, payload);
+    }
+    long before = threads.getThreadAllocatedBytes(tid);
+    for (int i = 0; i < PACKETS; i++) {
+      reader.read(rbuf);
+    }
+    long allocated = threads.getThreadAllocatedBytes(tid) - before;
+
+    assertEquals(0, loopback.available());
+    rbuf.rewind();
+    assertEquals(Session.SSH_MSG_CHANNEL_DATA, rbuf.getCommand() & 0xff);
+    return allocated;
+  }
+
+  private static void writePacket(Session session, Packet packet, Buffer buf, byte[] payload)
+      throws Exception {
+    packet.reset();
+    buf.putByte((byte) Session.SSH_MSG_CHANNEL_DATA);
+    buf.putInt(0);
+    buf.putString(payload);
+    session.write(packet);
+  }
+
+  private static Session newSession(String cipher, String mac) throws Exception {
+    Session session = new Session(new JSch(), null, null, 0);
+    session.setConfig("test-cipher", XorCipher.class.getName());
+    session.setConfig("test-aead", XorAEAD.class.getName());
+    session.setConfig("test-chacha20", XorChaCha20.class.getName());
+    session.setConfig("test-mac", SumMAC.class.getName());
+    session.setConfig("test-mac-etm", SumEtMMAC.class.getName());
+    String[] guess = new String[KeyExchange.PROPOSAL_MAX];
+    Arrays.fill(guess, "");
+    guess[KeyExchange.PROPOSAL_ENC_ALGS_CTOS] = cipher;
+    guess[KeyExchange.PROPOSAL_ENC_ALGS_STOC] = cipher;
+    guess[KeyExchange.PROPOSAL_MAC_ALGS_CTOS] = mac;
+    guess[KeyExchange.PROPOSAL_MAC_ALGS_STOC] = mac;
+    guess[KeyExchange.PROPOSAL_COMP_ALGS_CTOS] = "none";
+    guess[KeyExchange.PROPOSAL_COMP_ALGS_STOC] = "none";
+    session.guess = guess;
+    session.io = new IO();
+    session.updateKeys(new FixedKeyExchange());
+    return session;
+  }
+
+  private static class FixedKeyExchange extends KeyExchange {
+    FixedKeyExchange() {
+      K = new byte[32];
+      H = new byte[32];
+      sha = new ZeroHash();
+    }
+
+    @Override
+    public void init(Session session, byte[] V_S, byte[] V_C, byte[] I_S, byte[] I_C) {}
+
+    @Override
+    public boolean next(Buffer buf) {
+      return false;
+    }
+
+    @Override
+    public int getState() {
+      return STATE_END;
+    }
+  }
+
+  private static class ZeroHash implements HASH {
+    @Override
+    public void init() {}
+
+    @Override
+    public int getBlockSize() {
+      return 32;
+    }
+
+    @Override
+    public void update(byte[] foo, int start, int len) {}
+
+    @Override
+    public byte[] digest() {
+      return new byte[32];
+    }
+  }
+
+  private static void xor(byte[] foo, int s1, int len, byte[] bar, int s2) {
+    for (int i = 0; i < len; i++) {
+      bar[s2 + i] = (byte) (foo[s1 + i] ^ 0x5a);
+    }
+  }
+
+  public static class XorCipher implements Cipher {
+    @Override
+    public int getIVSize() {
+      return 16;
+    }
+
+    @Override
+    public int getBlockSize() {
+      return 16;
+    }
+
+    @Override
+    public void init(int mode, byte[] key, byte[] iv) {}
+
+    @Override
+    public void update(byte[] foo, int s1, int len, byte[] bar, int s2) {
+      xor(foo, s1, len, bar, s2);
+    }
+
+    @Override
+    public boolean isCBC() {
+      return false;
+    }
+  }
+
+  public static class XorAEAD extends XorCipher {
+    private int mode;
+
+    @Override
+    public int getTagSize() {
+      return 16;
+    }
+
+    @Override
+    public void init(int mode, byte[] key, byte[] iv) {
+      this.mode = mode;
+    }
+
+    @Override
+    public void doFinal(byte[] foo, int s1, int len, byte[] bar, int s2) {
+      if (mode == ENCRYPT_MODE) {
+        xor(foo, s1, len, bar, s2);
+        Arrays.fill(bar, s2 + len, s2 + len + getTagSize(), (byte) 0);
+      } else {
+        xor(foo, s1, len - getTagSize(), bar, s2);
+      }
+    }
+
+    @Override
+    public boolean isAEAD() {
+      return true;
+    }
+  }
+
+  public static class XorChaCha20 extends XorCipher {
+    private int mode;
+
+    @Override
+    public int getIVSize() {
+      return 8;
+    }
+
+    @Override
+    public int getBlockSize() {
+      return 64;
+    }
+
+    @Override
+    public int getTagSize() {
+      return 16;
+    }
+
+    @Override
+    public void init(int mode, byte[] key, byte[] iv) {
+      this.mode = mode;
+    }
+
+    @Override
+    public void doFinal(byte[] foo, int s1, int len, byte[] bar, int s2) {
+      xor(foo, s1 + 4, len - 4, bar, s2 + 4);
+      if (mode == ENCRYPT_MODE) {
+        Arrays.fill(bar, s2 + len, s2 + len + getTagSize(), (byte) 0);
+      }
+    }
+
+    @Override
+    public boolean isAEAD() {
+      return true;
+    }
+
+    @Override
+    public boolean isChaCha20() {
+      return true;
+    }
+  }
+
+  public static class SumMAC implements MAC {
+    private final byte[] sum = new byte[16];
+    private int pos;
+
+    @Override
+    public String getName() {
+      return "test-mac";
+    }
+
+    @Override
+    public int getBlockSize() {
+      return sum.length;
+    }
+
+    @Override
+    public void init(byte[] key) {}
+
+    @Override
+    public void update(byte[] foo, int start, int len) {
+      for (int i = 0; i < len; i++) {
+        sum[pos++ % sum.length] += foo[start + i];
+      }
+    }
+
+    @Override
+    public void update(int foo) {
+      sum[0] += (byte) foo;
+    }
+
+    @Override
+    public void doFinal(byte[] buf, int offset) {
+      System.arraycopy(sum, 0, buf, offset, sum.length);
+      Arrays.fill(sum, (byte) 0);
+      pos = 0;
+    }
+  }
+
+  public static class SumEtMMAC extends SumMAC {
+    @Override
+    public String getName() {
+      return "test-mac-etm";
+    }
+
+    @Override
+    public boolean isEtM() {
+      return true;
+    }
+  }
+
+  /** A single threaded pipe with a fixed capacity: written bytes can be read back from in. */
+  private static class Loopback {
+    private final byte[] buf;
+    private int r = 0;
+    private int w = 0;
+
+    Loopback(int size) {
+      buf = new byte[size];
+    }
+
+    final OutputStream out = new OutputStream() {
+      @Override
+      public void write(int b) {
+        buf[w++] = (byte) b;
+      }
+
+      @Override
+      public void write(byte[] b, int off, int len) {
+        System.arraycopy(b, off, buf, w, len);
+        w += len;
+      }
+    };
+
+    final InputStream in = new InputStream() {
+      @Override
+      public int read() {
+        if (r == w) {
+          return -1;
+        }
+        return buf[r++] & 0xff;
+      }
+
+      @Override
+      public int read(byte[] b, int off, int len) {
+        if (r == w) {
+          return -1;
+        }
+        int n = Math.min(len, w - r);
+        System.arraycopy(buf, r, b, off, n);
+        r += n;
+        if (r == w) {
+          r = 0;
+          w = 0;
+        }
+        return n;
+      }
+    };
+
+    int available() {
+      return w - r;
+    }
+  }
+}
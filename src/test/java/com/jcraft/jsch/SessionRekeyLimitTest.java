@@ -0,0 +1,156 @@
+package com.jcraft.jsch;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.ByteArrayOutputStream;
+import java.util.Arrays;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.junit.jupiter.api.Test;
+
+class SessionRekeyLimitTest {
+
+  @Test
+  void parsesSizes() {
+    assertEquals(1000L, Session.parseSize("1000"));
+    assertEquals(512L * 1024L, Session.parseSize("512K"));
+    assertEquals(100L * 1024L * 1024L, Session.parseSize("100m"));
+    assertEquals(4L * 1024L * 1024L * 1024L, Session.parseSize("4G"));
+    assertThrows(NumberFormatException.class, () -> Session.parseSize(""));
+    assertThrows(NumberFormatException.class, () -> Session.parseSize("G"));
+    assertThrows(NumberFormatException.class, () -> Session.parseSize("1T"));
+    assertThrows(NumberFormatException.class, () -> Session.parseSize("-1"));
+  }
+
+  @Test
+  void parsesTimes() {
+    assertEquals(600L, Session.parseTime("600"));
+    assertEquals(600L, Session.parseTime("600s"));
+    assertEquals(600L, Session.parseTime("10m"));
+    assertEquals(5400L, Session.parseTime("1h30m"));
+    assertEquals(90061L, Session.parseTime("1d1h1m1"));
+    assertEquals(604800L, Session.parseTime("1W"));
+    assertThrows(NumberFormatException.class, () -> Session.parseTime(""));
+    assertThrows(NumberFormatException.class, () -> Session.parseTime("h"));
+    assertThrows(NumberFormatException.class, () -> Session.parseTime("1x"));
+  }
+
+  @Test
+  void readsRekeyLimitFromOpenSSHConfig() throws Exception {
+    OpenSSHConfig config = OpenSSHConfig.parse("Host foo\n  RekeyLimit 1G 1h\n");
+    assertEquals("1G 1h", config.getConfig("foo").getValue("RekeyLimit"));
+  }
+
+  @Test
+  void startsKeyExchangeOnceAfterByteLimit() throws Exception {
+    RekeyingSession session = newSession("1K");
+    writePackets(session, 4);
+    assertTrue(session.started.await(5, TimeUnit.SECONDS));
+
+    writePackets(session, 4);
+    Thread.sleep(100);
+    assertEquals(1, session.rekeys.get());
+  }
+
+  @Test
+  void startsKeyExchangeAfterTimeLimit() throws Exception {
+    RekeyingSession session = newSession("default 1");
+    writePackets(session, 1);
+    Thread.sleep(100);
+    assertEquals(0, session.rekeys.get());
+
+    Thread.sleep(1000);
+    writePackets(session, 2);
+    assertTrue(session.started.await(5, TimeUnit.SECONDS));
+    Thread.sleep(100);
+    assertEquals(1, session.rekeys.get());
+  }
+
+  @Test
+  void waitsForAuthentication() throws Exception {
+    RekeyingSession session = newSession("1K");
+    session.setAuthed(false);
+    writePackets(session, 4);
+    assertFalse(session.started.await(100, TimeUnit.MILLISECONDS));
+
+    session.setAuthed(true);
+    writePackets(session, 1);
+    assertTrue(session.started.await(5, TimeUnit.SECONDS));
+    assertEquals(1, session.rekeys.get());
+  }
+
+  private static void writePackets(Session session, int count) throws Exception {
+    Buffer buf = new Buffer(512);
+    Packet packet = new Packet(buf);
+    for (int i = 0; i < count; i++) {
+      packet.reset();
+      buf.putByte((byte) Session.SSH_MSG_IGNORE);
+      buf.putString(new byte[256]);
+      session.write(packet);
+    }
+  }
+
+  private static RekeyingSession newSession(String rekeyLimit) throws Exception {
+    Packet.setRandom(new com.jcraft.jsch.jce.Random());
+    RekeyingSession session = new RekeyingSession();
+    session.setConfig("RekeyLimit", rekeyLimit);
+    session.initRekeyLimit();
+    String[] guess = new String[KeyExchange.PROPOSAL_MAX];
+    Arrays.fill(guess, "");
+    guess[KeyExchange.PROPOSAL_ENC_ALGS_CTOS] = "aes128-ctr";
+    guess[KeyExchange.PROPOSAL_ENC_ALGS_STOC] = "aes128-ctr";
+    guess[KeyExchange.PROPOSAL_MAC_ALGS_CTOS] = "hmac-sha2-256";
+    guess[KeyExchange.PROPOSAL_MAC_ALGS_STOC] = "hmac-sha2-256";
+    guess[KeyExchange.PROPOSAL_COMP_ALGS_CTOS] = "none";
+    guess[KeyExchange.PROPOSAL_COMP_ALGS_STOC] = "none";
+    session.guess = guess;
+    session.io = new IO();
+    session.io.setOutputStream(new ByteArrayOutputStream());
+    session.setConnected(true);
+    session.setAuthed(true);
+    session.updateKeys(new FixedKeyExchange());
+    return session;
+  }
+
+  /** Records the key exchanges started by the RekeyLimit instead of sending SSH_MSG_KEXINIT. */
+  private static class RekeyingSession extends Session {
+    final AtomicInteger rekeys = new AtomicInteger();
+    final CountDownLatch started = new CountDownLatch(1);
+
+    RekeyingSession() throws JSchException {
+      super(new JSch(), null, null, 0);
+    }
+
+    @Override
+    public void rekey() {
+      rekeys.incrementAndGet();
+      started.countDown();
+    }
+  }
+
+  private static class FixedKeyExchange extends KeyExchange {
+    FixedKeyExchange() throws Exception {
+      K = new byte[32];
+      H = new byte[32];
+      sha = new com.jcraft.jsch.jce.SHA256();
+      sha.init();
+    }
+
+    @Override
+    public void init(Session session, byte[] V_S, byte[] V_C, byte[] I_S, byte[] I_C) {}
+
+    @Override
+    public boolean next(Buffer buf) {
+      return false;
+    }
+
+    @Override
+    public int getState() {
+      return STATE_END;
+    }
+  }
+}
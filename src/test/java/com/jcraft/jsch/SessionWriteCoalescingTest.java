@@ -0,0 +1,175 @@
+package com.jcraft.jsch;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+class SessionWriteCoalescingTest {
+
+  private static final int ADJUST_SIZE = padded(5 + 1 + 4 + 4);
+
+  private Session session;
+  private RecordingOutputStream out;
+
+  @BeforeEach
+  void setUp() throws Exception {
+    Packet.setRandom(new com.jcraft.jsch.jce.Random());
+    session = new Session(new JSch(), null, null, 0);
+    out = new RecordingOutputStream();
+    session.io = new IO();
+    session.io.setOutputStream(out);
+  }
+
+  @AfterEach
+  void tearDown() {
+    session.stopWriteFlusher();
+  }
+
+  @Test
+  void writesEveryPacketByDefault() throws Exception {
+    session.initWriteCoalescing();
+    for (int i = 0; i < 3; i++) {
+      session.write(dataPacket(1024));
+    }
+    assertEquals(3, out.writes());
+  }
+
+  @Test
+  void coalescesPacketsOfQueuedWriters() throws Exception {
+    session.setConfig("write_buffer_size", "65536");
+    session.initWriteCoalescing();
+
+    out.block = new CountDownLatch(1);
+    Thread first = new Thread(() -> write(dataPacket(1024)));
+    first.start();
+    while (out.blocked.getCount() > 0) {
+      Thread.sleep(10);
+    }
+
+    // these have to wait for the lock, as the first writer is stuck in flush
+    List<Thread> writers = new ArrayList<>();
+    for (int i = 0; i < 10; i++) {
+      Thread t = new Thread(() -> write(dataPacket(1024)));
+      t.start();
+      writers.add(t);
+    }
+    long deadline = System.currentTimeMillis() + 10000;
+    while (!allWaiting(writers) && System.currentTimeMillis() < deadline) {
+      Thread.sleep(10);
+    }
+    out.block.countDown();
+    first.join(10000);
+    for (Thread t : writers) {
+      t.join(10000);
+    }
+
+    assertEquals(11 * packetSize(1024), out.size());
+    assertEquals(2, out.writes());
+  }
+
+  @Test
+  void delaysBulkDataButNotUrgentPackets() throws Exception {
+    session.setConfig("write_buffer_size", "65536");
+    session.setConfig("write_coalesce_delay", "1000000");
+    session.initWriteCoalescing();
+
+    session.write(dataPacket(1024));
+    assertEquals(0, out.size());
+
+    // keystrokes go out immediately, together with what has been buffered before
+    session.write(dataPacket(1));
+    assertEquals(packetSize(1024) + packetSize(1), out.size());
+
+    session.write(dataPacket(1024));
+    assertEquals(packetSize(1024) + packetSize(1), out.size());
+    Packet adjust = new Packet(new Buffer(64));
+    adjust.reset();
+    adjust.buffer.putByte((byte) Session.SSH_MSG_CHANNEL_WINDOW_ADJUST);
+    adjust.buffer.putInt(0);
+    adjust.buffer.putInt(1024);
+    session.write(adjust);
+    assertEquals(2 * packetSize(1024) + packetSize(1) + ADJUST_SIZE, out.size());
+
+    // the flusher sends buffered data once the delay has passed
+    session.write(dataPacket(1024));
+    long deadline = System.currentTimeMillis() + 10000;
+    while (out.size() < 3 * packetSize(1024) + packetSize(1) + ADJUST_SIZE
+        && System.currentTimeMillis() < deadline) {
+      Thread.sleep(10);
+    }
+    assertEquals(3 * packetSize(1024) + packetSize(1) + ADJUST_SIZE, out.size());
+  }
+
+  private void write(Packet packet) {
+    try {
+      session.write(packet);
+    } catch (Exception e) {
+      throw new RuntimeException(e);
+    }
+  }
+
+  private static boolean allWaiting(List<Thread> threads) {
+    for (Thread t : threads) {
+      if (t.getState() != Thread.State.BLOCKED) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  private static Packet dataPacket(int size) {
+    Packet packet = new Packet(new Buffer(size + 64));
+    packet.reset();
+    packet.buffer.putByte((byte) Session.SSH_MSG_CHANNEL_DATA);
+    packet.buffer.putInt(0);
+    packet.buffer.putString(new byte[size]);
+    return packet;
+  }
+
+  /** Size of an unencrypted data packet, see Packet.padding(int, boolean). */
+  private static int packetSize(int size) {
+    return padded(5 + 1 + 4 + 4 + size);
+  }
+
+  private static int padded(int len) {
+    return len + ((-len) & 7) + 8;
+  }
+
+  private static class RecordingOutputStream extends ByteArrayOutputStream {
+    private int writes;
+    volatile CountDownLatch block;
+    final CountDownLatch blocked = new CountDownLatch(1);
+
+    @Override
+    public void write(byte[] b, int off, int len) {
+      CountDownLatch latch = block;
+      if (latch != null) {
+        blocked.countDown();
+        try {
+          latch.await(10, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+          throw new RuntimeException(e);
+        }
+      }
+      synchronized (this) {
+        writes++;
+        super.write(b, off, len);
+      }
+    }
+
+    @Override
+    public void flush() throws IOException {}
+
+    synchronized int writes() {
+      return writes;
+    }
+  }
+}
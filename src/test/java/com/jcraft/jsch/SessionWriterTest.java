@@ -0,0 +1,146 @@
+package com.jcraft.jsch;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.List;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+class SessionWriterTest {
+
+  private Session session;
+  private SessionWriter writer;
+
+  @BeforeEach
+  void setUp() throws Exception {
+    Packet.setRandom(new com.jcraft.jsch.jce.Random());
+    session = new Session(new JSch(), null, null, 0);
+    session.io = new IO();
+  }
+
+  @AfterEach
+  void tearDown() {
+    if (writer != null) {
+      writer.close();
+    }
+  }
+
+  @Test
+  void sendsPacketsOfEachWriterInOrder() throws Exception {
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    session.io.setOutputStream(out);
+    startWriter();
+
+    int threads = 4;
+    int packets = 500;
+    List<Thread> writers = new ArrayList<>();
+    for (int i = 0; i < threads; i++) {
+      int recipient = i;
+      Thread t = new Thread(() -> {
+        // the packet is reused, as channels do
+        Packet packet = new Packet(new Buffer(1024));
+        byte[] data = new byte[512];
+        for (int j = 0; j < packets; j++) {
+          data[0] = (byte) (j >>> 8);
+          data[1] = (byte) j;
+          packet.reset();
+          packet.buffer.putByte((byte) Session.SSH_MSG_CHANNEL_DATA);
+          packet.buffer.putInt(recipient);
+          packet.buffer.putString(data);
+          try {
+            session.write(packet);
+          } catch (Exception e) {
+            throw new RuntimeException(e);
+          }
+        }
+      });
+      t.start();
+      writers.add(t);
+    }
+    for (Thread t : writers) {
+      t.join(10000);
+    }
+
+    // returns once this and all packets queued before it have been sent
+    Packet ignore = new Packet(new Buffer(64));
+    ignore.reset();
+    ignore.buffer.putByte((byte) Session.SSH_MSG_IGNORE);
+    ignore.buffer.putString(new byte[0]);
+    session.write(ignore);
+
+    Buffer buf = new Buffer(out.toByteArray());
+    buf.index = buf.buffer.length;
+    int[] next = new int[threads];
+    int count = 0;
+    while (buf.getLength() > 0) {
+      int start = buf.s;
+      int len = buf.getInt();
+      buf.getByte(); // padding length
+      int command = buf.getByte();
+      if (command == Session.SSH_MSG_CHANNEL_DATA) {
+        int recipient = buf.getInt();
+        byte[] data = buf.getString();
+        int j = ((data[0] & 0xff) << 8) | (data[1] & 0xff);
+        assertEquals(next[recipient]++, j);
+        count++;
+      } else {
+        assertEquals(Session.SSH_MSG_IGNORE, command);
+      }
+      buf.s = start + 4 + len;
+    }
+    assertEquals(threads * packets, count);
+  }
+
+  @Test
+  void reportsFailedWrites() throws Exception {
+    session.io.setOutputStream(new OutputStream() {
+      @Override
+      public void write(int b) throws IOException {
+        throw new IOException("broken pipe");
+      }
+
+      @Override
+      public void write(byte[] b, int off, int len) throws IOException {
+        throw new IOException("broken pipe");
+      }
+    });
+    startWriter();
+
+    Packet packet = new Packet(new Buffer(64));
+    packet.reset();
+    packet.buffer.putByte((byte) Session.SSH_MSG_IGNORE);
+    packet.buffer.putString(new byte[0]);
+    IOException e = assertThrows(IOException.class, () -> session.write(packet));
+    assertEquals("broken pipe", e.getCause().getMessage());
+
+    packet.reset();
+    packet.buffer.putByte((byte) Session.SSH_MSG_IGNORE);
+    packet.buffer.putString(new byte[0]);
+    assertThrows(IOException.class, () -> session.write(packet));
+  }
+
+  @Test
+  void rejectsWritesOnceClosed() throws Exception {
+    session.io.setOutputStream(new ByteArrayOutputStream());
+    startWriter();
+    writer.close();
+
+    Packet packet = new Packet(new Buffer(64));
+    packet.reset();
+    packet.buffer.putByte((byte) Session.SSH_MSG_IGNORE);
+    packet.buffer.putString(new byte[0]);
+    assertThrows(JSchException.class, () -> session.write(packet));
+  }
+
+  private void startWriter() {
+    writer = new SessionWriter(session);
+    session.writer = writer;
+    writer.start();
+  }
+}
@@ -0,0 +1,112 @@
+package com.jcraft.jsch;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.SocketTimeoutException;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.SocketChannel;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+class SocketChannelIOTest {
+
+  private ServerSocket server;
+  private Socket peer;
+  private SocketChannel channel;
+  private SocketChannelIO io;
+
+  @BeforeEach
+  void setUp() throws Exception {
+    InetAddress loopback = InetAddress.getLoopbackAddress();
+    server = new ServerSocket(0, 1, loopback);
+    channel = SocketChannel.open(new InetSocketAddress(loopback, server.getLocalPort()));
+    peer = server.accept();
+    io = new SocketChannelIO(channel);
+  }
+
+  @AfterEach
+  void tearDown() throws Exception {
+    io.close();
+    peer.close();
+    server.close();
+  }
+
+  @Test
+  void writesAndReadsMoreThanOneBuffer() throws Exception {
+    byte[] data = new byte[300 * 1024];
+    for (int i = 0; i < data.length; i++) {
+      data[i] = (byte) i;
+    }
+
+    CompletableFuture<byte[]> received = CompletableFuture.supplyAsync(() -> {
+      try {
+        byte[] foo = new byte[data.length];
+        new DataInputStream(peer.getInputStream()).readFully(foo);
+        OutputStream out = peer.getOutputStream();
+        out.write(foo);
+        out.flush();
+        return foo;
+      } catch (IOException e) {
+        throw new RuntimeException(e);
+      }
+    });
+
+    io.put(data, 0, data.length);
+    assertArrayEquals(data, received.get(10, TimeUnit.SECONDS));
+
+    byte[] echo = new byte[data.length];
+    echo[0] = (byte) io.getByte();
+    io.getByte(echo, 1, echo.length - 1);
+    assertArrayEquals(data, echo);
+  }
+
+  @Test
+  void readTimesOut() throws Exception {
+    peer.getOutputStream().write(1);
+    peer.getOutputStream().flush();
+    io.getByte(new byte[1], 0, 1);
+
+    channel.socket().setSoTimeout(200);
+    assertThrows(SocketTimeoutException.class, () -> io.getByte());
+  }
+
+  @Test
+  void readsEndOfStream() throws Exception {
+    peer.getOutputStream().write(42);
+    peer.close();
+
+    assertEquals(42, io.getByte());
+    assertEquals(-1, io.getByte());
+    assertThrows(IOException.class, () -> io.getByte(new byte[1], 0, 1));
+  }
+
+  @Test
+  void closeWakesUpReader() throws Exception {
+    CompletableFuture<Integer> read = CompletableFuture.supplyAsync(() -> {
+      try {
+        return io.getByte();
+      } catch (IOException e) {
+        throw new RuntimeException(e);
+      }
+    });
+
+    Thread.sleep(200);
+    io.close();
+    ExecutionException e =
+        assertThrows(ExecutionException.class, () -> read.get(10, TimeUnit.SECONDS));
+    assertEquals(ClosedChannelException.class, e.getCause().getCause().getClass());
+  }
+}
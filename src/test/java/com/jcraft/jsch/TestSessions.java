@@ -0,0 +1,26 @@
+package com.jcraft.jsch;
+
+import java.io.OutputStream;
+
+/** Creates sessions which act as connected without a server, for tests of the transport. */
+final class TestSessions {
+
+  private TestSessions() {}
+
+  /** Returns a connected session which writes its packets to out. */
+  static Session connected(OutputStream out) throws JSchException {
+    return connected(new JSch(), null, null, 0, out);
+  }
+
+  /** Returns a connected session to host which writes its packets to out. */
+  static Session connected(JSch jsch, String username, String host, int port, OutputStream out)
+      throws JSchException {
+    Session.random = new com.jcraft.jsch.jce.Random();
+    Packet.setRandom(Session.random);
+    Session session = new Session(jsch, username, host, port);
+    session.io = new IO();
+    session.io.setOutputStream(out);
+    session.setConnected(true);
+    return session;
+  }
+}
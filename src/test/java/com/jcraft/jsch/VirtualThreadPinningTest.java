@@ -0,0 +1,145 @@
+package com.jcraft.jsch;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.junit.jupiter.api.Assumptions.assumeTrue;
+import static org.junit.jupiter.api.condition.JRE.JAVA_21;
+import static org.junit.jupiter.api.condition.JRE.JAVA_23;
+
+import java.io.ByteArrayOutputStream;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicReference;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.EnabledForJreRange;
+
+/**
+ * Runs the places where a session or a channel waits for another thread on virtual threads, and
+ * checks that none of them pins its carrier; which the JVM reports on the standard output if
+ * started with {@code -Djdk.tracePinnedThreads}. Java 24 and later neither pin on monitors nor
+ * know that property.
+ */
+@EnabledForJreRange(min = JAVA_21, max = JAVA_23)
+class VirtualThreadPinningTest {
+
+  private ThreadFactory factory;
+  private Session session;
+  private PrintStream stdout;
+  private ByteArrayOutputStream trace;
+  private final AtomicReference<Throwable> failure = new AtomicReference<>();
+
+  @BeforeEach
+  void setUp() throws Exception {
+    assumeTrue(System.getProperty("jdk.tracePinnedThreads") != null);
+    Object builder = Thread.class.getMethod("ofVirtual").invoke(null);
+    factory = (ThreadFactory) Class.forName("java.lang.Thread$Builder").getMethod("factory")
+        .invoke(builder);
+
+    Session.random = new com.jcraft.jsch.jce.Random();
+    Packet.setRandom(Session.random);
+    session = new Session(new JSch(), null, null, 0);
+    session.io = new IO();
+    session.io.setOutputStream(new ByteArrayOutputStream());
+
+    stdout = System.out;
+    trace = new ByteArrayOutputStream();
+    System.setOut(new PrintStream(trace, true, "UTF-8"));
+  }
+
+  @AfterEach
+  void tearDown() {
+    if (stdout != null) {
+      System.setOut(stdout);
+    }
+  }
+
+  @Test
+  void waitsForRemoteWindowWithoutPinning() throws Exception {
+    Channel channel = new ChannelSession() {
+      @Override
+      public boolean isConnected() {
+        return true;
+      }
+    };
+    channel.setSession(session);
+    Packet packet = new Packet(new Buffer(256));
+    packet.reset();
+    packet.buffer.putByte((byte) Session.SSH_MSG_CHANNEL_DATA);
+    packet.buffer.putInt(channel.getRecipient());
+    packet.buffer.putString(new byte[64]);
+
+    Thread writer = start(() -> session.write(packet, channel, 64));
+    awaitWaiting(writer);
+    channel.addRemoteWindowSize(1024);
+    join(writer);
+  }
+
+  @Test
+  void waitsForKeyExchangeWithoutPinning() throws Exception {
+    session.rekey();
+    Packet packet = new Packet(new Buffer(64));
+    packet.reset();
+    packet.buffer.putByte((byte) Session.SSH_MSG_IGNORE);
+    packet.buffer.putString(new byte[0]);
+
+    Thread writer = start(() -> session.write(packet));
+    awaitWaiting(writer);
+    session.setInKex(false);
+    join(writer);
+  }
+
+  @Test
+  void waitsForChannelDataWithoutPinning() throws Exception {
+    RingBufferInputStream in = new RingBufferInputStream(1024);
+    OutputStream out = in.getOutputStream();
+
+    Thread reader = start(() -> assertEquals(1, in.read()));
+    awaitWaiting(reader);
+    out.write(1);
+    join(reader);
+
+    out.write(new byte[1024]);
+    Thread writer = start(() -> out.write(2));
+    awaitWaiting(writer);
+    assertEquals(1024, in.read(new byte[1024], 0, 1024));
+    join(writer);
+  }
+
+  private Thread start(Task task) {
+    Thread thread = factory.newThread(() -> {
+      try {
+        task.run();
+      } catch (Throwable e) {
+        failure.set(e);
+      }
+    });
+    thread.start();
+    return thread;
+  }
+
+  private static void awaitWaiting(Thread thread) throws InterruptedException {
+    long deadline = System.currentTimeMillis() + 10000;
+    while (thread.getState() != Thread.State.WAITING && System.currentTimeMillis() < deadline) {
+      Thread.sleep(10);
+    }
+    assertEquals(Thread.State.WAITING, thread.getState());
+  }
+
+  private void join(Thread thread) throws InterruptedException {
+    thread.join(10000);
+    assertTrue(!thread.isAlive(), "thread has not finished");
+    if (failure.get() != null) {
+      throw new AssertionError(failure.get());
+    }
+    String pinned = new String(trace.toByteArray(), StandardCharsets.UTF_8);
+    assertTrue(pinned.isEmpty(), pinned);
+  }
+
+  private interface Task {
+    void run() throws Exception;
+  }
+}